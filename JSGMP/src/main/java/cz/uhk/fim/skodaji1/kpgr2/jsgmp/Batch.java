@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller.BatchController;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.EffectChain;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Class of program which applies effects on all images in directory without graphical interface
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class Batch
+{
+    /**
+     * Main function of batch processing
+     * @param args Arguments of program: file with settings of effects (JSON), input directory,
+     *             output directory and optionally format of written images
+     */
+    public static void main(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 3 || args.length > 4)
+        {
+            System.err.println("Usage: --batch <settings.json> <input directory> <output directory> [format]");
+            System.exit(1);
+        }
+        File input = new File(args[1]);
+        File output = new File(args[2]);
+        String format = args.length > 3 ? args[3] : null;
+        if (input.isDirectory() == false)
+        {
+            System.err.println("Input directory does not exist: " + input.getPath());
+            System.exit(1);
+        }
+        if (output.isDirectory() == false && output.mkdirs() == false)
+        {
+            System.err.println("Output directory cannot be created: " + output.getPath());
+            System.exit(1);
+        }
+        try
+        {
+            EffectChain chain = BatchController.loadChain(new File(args[0]));
+            Set<String> suffixes = new HashSet<>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+            File[] all = input.listFiles();
+            List<File> files = Arrays.stream(Objects.nonNull(all) ? all : new File[0])
+                    .filter((File f) -> f.isFile() && suffixes.contains(FilenameUtils.getExtension(f.getName()).toLowerCase()))
+                    .sorted()
+                    .collect(Collectors.toList());
+            BatchController controller = new BatchController(chain, output, format, Globals.EFFECTS_WORKERS);
+            BatchController.Statistics stats = controller.process(files);
+            System.out.println(String.format(
+                    "Processed %d images (%d failed), %.1f MP in %.2f s: %.2f images/s, %.2f MP/s",
+                    stats.getImages(), stats.getFailed(), stats.getMegapixels(), stats.getSeconds(),
+                    stats.getImagesPerSecond(), stats.getMegapixelsPerSecond()
+            ));
+            System.exit(stats.getFailed() > 0 ? 2 : 0);
+        }
+        catch (IOException | InterruptedException ex)
+        {
+            Logger.getLogger(Batch.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        }
+    }
+}
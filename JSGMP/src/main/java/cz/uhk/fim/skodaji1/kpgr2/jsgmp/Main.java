@@ -17,6 +17,8 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp;
 
+import java.util.Arrays;
+
 /**
  * Main class of program
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
@@ -24,9 +26,16 @@ package cz.uhk.fim.skodaji1.kpgr2.jsgmp;
 public class Main {
     /**
      * Main function of program
-     * @param args Arguments of program
+     * @param args Arguments of program (when first argument is --batch, images are processed without graphical interface)
      */
     public static void main(String[] args) {
-        JSGMP.main(args);
+        if (args.length > 0 && args[0].equals("--batch"))
+        {
+            Batch.main(Arrays.copyOfRange(args, 1, args.length));
+        }
+        else
+        {
+            JSGMP.main(args);
+        }
     }
 }
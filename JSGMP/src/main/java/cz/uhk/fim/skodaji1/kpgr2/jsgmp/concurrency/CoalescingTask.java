@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class representing task which runs on shared executor whenever it is requested;
+ * all requests made before task starts are merged into one run
+ * and task never runs more than once at the same time
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class CoalescingTask
+{
+    /**
+     * Action performed by task
+     */
+    private final Runnable action;
+    
+    /**
+     * Executor on which task runs
+     */
+    private final Executor executor;
+    
+    /**
+     * Flag, whether task has been requested since its last run
+     */
+    private final AtomicBoolean requested;
+    
+    /**
+     * Flag, whether task is scheduled or running
+     */
+    private final AtomicBoolean scheduled;
+    
+    /**
+     * Flag, whether task has been cancelled
+     */
+    private volatile boolean cancelled;
+    
+    /**
+     * Creates new task
+     * @param action Action performed by task
+     * @param executor Executor on which task runs
+     */
+    public CoalescingTask(Runnable action, Executor executor)
+    {
+        this.action = action;
+        this.executor = executor;
+        this.requested = new AtomicBoolean(false);
+        this.scheduled = new AtomicBoolean(false);
+        this.cancelled = false;
+    }
+    
+    /**
+     * Requests run of task (if task is already running, it will run once more after it finishes)
+     */
+    public void request()
+    {
+        if (this.cancelled == false)
+        {
+            this.requested.set(true);
+            this.schedule();
+        }
+    }
+    
+    /**
+     * Cancels task (running action is not interrupted, but task will not run anymore)
+     */
+    public void cancel()
+    {
+        this.cancelled = true;
+        this.requested.set(false);
+    }
+    
+    /**
+     * Checks, whether task has been cancelled
+     * @return TRUE if task has been cancelled, FALSE otherwise
+     */
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+    
+    /**
+     * Checks, whether task has been requested again since its actual run started
+     * @return TRUE if there is pending request of task, FALSE otherwise
+     */
+    public boolean isRequested()
+    {
+        return this.requested.get();
+    }
+    
+    /**
+     * Schedules task on executor, if it is not scheduled yet
+     */
+    private void schedule()
+    {
+        if (this.scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                this.executor.execute(this::execute);
+            }
+            catch (RejectedExecutionException ex)
+            {
+                this.scheduled.set(false);
+                this.cancelled = true;
+            }
+        }
+    }
+    
+    /**
+     * Runs action of task once and schedules it again, if it has been requested meanwhile
+     */
+    private void execute()
+    {
+        if (this.cancelled == false && this.requested.getAndSet(false) == true)
+        {
+            try
+            {
+                this.action.run();
+            }
+            catch (RuntimeException ex)
+            {
+                Logger.getLogger(CoalescingTask.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        this.scheduled.set(false);
+        if (this.cancelled == false && this.requested.get() == true)
+        {
+            this.schedule();
+        }
+    }
+}
@@ -18,20 +18,19 @@
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency;
 
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
-import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.BitmapSnapshot;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Metrics;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.application.Platform;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.paint.Color;
 
 /**
  * Class which represents bitmap which can work across multiple threads
@@ -40,54 +39,89 @@ import javafx.scene.paint.Color;
 public class ConcurrentBitmap extends Bitmap implements Threadable
 {
     /**
-     * Class representing transaction which works across multiple threads
+     * Class representing transaction which works across multiple threads;
+     * each thread writes into its own builder without any locking,
+     * all builders are merged into transaction when it is committed
+     * (builders are merged in order in which their threads wrote first operation,
+     * so threads should write into disjoint regions of bitmap)
      */
     public static class ConcurrentBitmapTransaction extends Bitmap.BitmapTransaction
     {
         /**
-         * List of all transaction items
+         * Builders of transaction used by all threads (in order in which they were created)
          */
-        private final List<TransactionItem> concurrentItems;
+        private final Queue<Bitmap.BitmapTransaction> builders;
+        
+        /**
+         * Builder of transaction used by actual thread
+         * (replaced after each commit, so operations written after commit are not lost)
+         */
+        private volatile ThreadLocal<Bitmap.BitmapTransaction> builder;
         
         /**
          * Creates new transaction over bitmap which works across multiple threads
          */
         public ConcurrentBitmapTransaction()
         {
-            this.concurrentItems = Collections.synchronizedList(new ArrayList<>());
+            this.builders = new ConcurrentLinkedQueue<>();
+            this.builder = this.createBuilder();
+        }
+        
+        /**
+         * Creates new builders of transaction for all threads
+         * @return Provider of builder of transaction for actual thread
+         */
+        private ThreadLocal<Bitmap.BitmapTransaction> createBuilder()
+        {
+            return ThreadLocal.withInitial(() ->
+            {
+                Bitmap.BitmapTransaction reti = new Bitmap.BitmapTransaction();
+                this.builders.add(reti);
+                return reti;
+            });
         }
 
         @Override
-        public List<TransactionItem> getItems()
+        public void setPixel(int x, int y, int argb)
         {
-            synchronized(this.concurrentItems)
-            {
-                return this.concurrentItems;
-            }
-            
+            this.builder.get().setPixel(x, y, argb);
+        }
+
+        @Override
+        public void writeSpan(int x, int y, int[] src, int offset, int length)
+        {
+            this.builder.get().writeSpan(x, y, src, offset, length);
+        }
+
+        @Override
+        public void fillRectangle(int x, int y, int width, int height, int argb)
+        {
+            this.builder.get().fillRectangle(x, y, width, height, argb);
         }
 
         @Override
-        public void setPixel(int x, int y, Pixel px)
+        public void writeRegion(int x, int y, int width, int height, int[] values)
         {
-            synchronized(this.concurrentItems)
+            this.builder.get().writeRegion(x, y, width, height, values);
+        }
+
+        /**
+         * Merges builders of all threads into transaction
+         * (all threads must finish their operations before transaction is committed)
+         */
+        @Override
+        public synchronized void commit()
+        {
+            this.builder = this.createBuilder();
+            Bitmap.BitmapTransaction merged = this.builders.poll();
+            while (Objects.nonNull(merged))
             {
-                this.concurrentItems.add(new Bitmap.BitmapTransaction.TransactionItem(x, y, px));
-            }            
-        }        
-        
+                this.append(merged);
+                merged = this.builders.poll();
+            }
+        }
     }
     
-    /**
-     * Counter of created bitmaps
-     */
-    private static long counter = 0;
-    
-    /**
-     * Timeout for polling actions from queue (in microseconds)
-     */
-    private static final long POLL_TIMEOUT = 1;
-        
     /**
      * Class which represents 'set pixel' action
      */
@@ -135,6 +169,26 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
          */
         private final boolean isTransaction;
         
+        /**
+         * Width of written region
+         */
+        private final int width;
+        
+        /**
+         * Height of written region
+         */
+        private final int height;
+        
+        /**
+         * New ARGB values of pixels in written region (row-major, without any gaps between rows)
+         */
+        private final int[] region;
+        
+        /**
+         * Snapshot which content replaces whole content of bitmap
+         */
+        private final BitmapSnapshot restored;
+        
         /**
          * Creates new set pixel action
          * @param x X coordinate of pixel
@@ -148,6 +202,10 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
             this.px = px;
             this.transaction = null;
             this.isTransaction = false;
+            this.width = 1;
+            this.height = 1;
+            this.region = null;
+            this.restored = null;
         }
         
         /**
@@ -161,6 +219,102 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
             this.px = new Pixel((short)0, (short)0, (short)0);
             this.transaction = transaction;
             this.isTransaction = true;
+            this.width = 0;
+            this.height = 0;
+            this.region = null;
+            this.restored = null;
+        }
+        
+        /**
+         * Creates new write region action
+         * @param x X coordinate of top left pixel of region
+         * @param y Y coordinate of top left pixel of region
+         * @param width Width of region
+         * @param height Height of region
+         * @param region New ARGB values of pixels in region (row-major, without any gaps between rows)
+         */
+        public BitmapSetter(int x, int y, int width, int height, int[] region)
+        {
+            this.x = x;
+            this.y = y;
+            this.px = null;
+            this.transaction = null;
+            this.isTransaction = false;
+            this.width = width;
+            this.height = height;
+            this.region = region;
+            this.restored = null;
+        }
+        
+        /**
+         * Creates new restore action
+         * @param restored Snapshot which content replaces whole content of bitmap
+         */
+        public BitmapSetter(BitmapSnapshot restored)
+        {
+            this.x = 0;
+            this.y = 0;
+            this.px = null;
+            this.transaction = null;
+            this.isTransaction = false;
+            this.width = restored.getWidth();
+            this.height = restored.getHeight();
+            this.region = null;
+            this.restored = restored;
+        }
+        
+        /**
+         * Checks, whether setter replaces whole content of bitmap
+         * @return TRUE if setter contains snapshot which replaces content of bitmap, FALSE otherwise
+         */
+        public boolean isRestore()
+        {
+            return this.restored != null;
+        }
+        
+        /**
+         * Gets snapshot which content replaces whole content of bitmap
+         * @return Snapshot which replaces content of bitmap
+         */
+        public BitmapSnapshot getRestored()
+        {
+            return this.restored;
+        }
+        
+        /**
+         * Checks, whether setter contains whole region of pixels
+         * @return TRUE if setter contains region of pixels, FALSE otherwise
+         */
+        public boolean isRegion()
+        {
+            return this.region != null;
+        }
+        
+        /**
+         * Gets width of written region
+         * @return Width of written region
+         */
+        public int getWidth()
+        {
+            return this.width;
+        }
+        
+        /**
+         * Gets height of written region
+         * @return Height of written region
+         */
+        public int getHeight()
+        {
+            return this.height;
+        }
+        
+        /**
+         * Gets new ARGB values of pixels in written region
+         * @return Array with new values of pixels (row-major, without any gaps between rows)
+         */
+        public int[] getRegion()
+        {
+            return this.region;
         }
         
         /**
@@ -210,14 +364,9 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
     }
     
     /**
-     * Thread which handles all actions over bitmap
+     * Task which handles all actions over bitmap
      */
-    private final Thread thread;
-    
-    /**
-     * Flag, whether bitmap thread is running or not
-     */
-    private boolean running = false;
+    private final CoalescingTask task;
     
     /**
      * Queue with all setting actions
@@ -228,6 +377,27 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
      * List of listeners on bitmap change action
      */
     private final List<Bitmap.BitmapChangedActionListener> changeListeners;
+    
+    /**
+     * Last published snapshot of content of bitmap (replaced by writer after each change);
+     * bitmap has no other copy of its pixels, snapshot is its only storage
+     */
+    private volatile BitmapSnapshot snapshot;
+    
+    /**
+     * Snapshot of original state of bitmap
+     */
+    private volatile BitmapSnapshot originalSnapshot;
+    
+    /**
+     * Editor of next version of snapshot (used by writer only while it holds lock)
+     */
+    private BitmapSnapshot.Editor editor;
+    
+    /**
+     * Lock held by writer of bitmap
+     */
+    private final Object lock;
         
     /**
      * Creates new bitmap which works across threads
@@ -236,48 +406,67 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
      */
     public ConcurrentBitmap(int width, int height)
     {
-        super(width, height);
-        this.thread = new Thread(this, String.format("JSGMP:Bitmap-%d", ConcurrentBitmap.counter));
-        ConcurrentBitmap.counter++;
+        super(width, height, false);
+        this.lock = new Object();
+        this.originalSnapshot = null;
+        this.editor = null;
+        this.task = ThreadManager.createTask(this);
         this.setQueue = new LinkedBlockingDeque();
         this.changeListeners = Collections.synchronizedList(new ArrayList<>());
+        this.snapshot = BitmapSnapshot.empty(width, height);
     }
 
     @Override
     public void setOriginal()
     {
-        synchronized(this.original)
+        synchronized(this.lock)
         {
-            if (this.originalSet == false)
-            {
-                this.originalSet = true;
-                for (int y = 0; y < this.height; y++)
-                {
-                    System.arraycopy(this.data[y], 0, this.original[y], 0, this.width);
-                }
-                this.invokeChange();
-            }
-            else
+            if (this.originalSet == true)
             {
                 throw new IllegalStateException("Cannot set original state of bitmap: original state already set!");
             }
+            this.originalSet = true;
+            this.originalSnapshot = this.snapshot;
         }
+        this.invokeChange();
+    }
+    
+    @Override
+    public int getOriginalARGB(int x, int y)
+    {
+        return this.getOriginalSnapshot().getARGB(x, y);
+    }
+
+    @Override
+    public void readOriginalRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.getOriginalSnapshot().readRegion(x, y, width, height, dst, offset, stride);
     }
     
     @Override
-    public Pixel getOriginal(int x, int y)
+    public void removeChanges()
     {
-        Pixel reti = null;
-        synchronized(this.original)
+        try
         {
-            if (this.originalSet == false)
-            {
-                throw new IllegalStateException("Cannot get original state of bitmap: original state has not been set!");
-            }
-            else
-            {
-                reti = new Pixel(this.original[y][x]);
-            }
+            this.setQueue.put(new ConcurrentBitmap.BitmapSetter(this.getOriginalSnapshot()));
+            this.task.request();
+        }
+        catch (InterruptedException ex)
+        {
+            Logger.getLogger(ConcurrentBitmap.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Gets snapshot of original state of bitmap
+     * @return Snapshot of original state of bitmap
+     */
+    private BitmapSnapshot getOriginalSnapshot()
+    {
+        BitmapSnapshot reti = this.originalSnapshot;
+        if (Objects.isNull(reti))
+        {
+            throw new IllegalStateException("Cannot get original state of bitmap: original state has not been set!");
         }
         return reti;
     }
@@ -288,12 +477,12 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
     }
 
     @Override
-    protected void invokeChange() {
+    protected void invokeChange(Bitmap.BitmapChange change) {
         synchronized(this.changeListeners)
         {
             this.changeListeners.forEach((action) ->
             {
-                action.onChange(this);
+                action.onChange(this, change);
             });
         }
     }
@@ -303,8 +492,10 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
     {
         try
         {
+            transaction.commit();
             ConcurrentBitmap.BitmapSetter setter = new ConcurrentBitmap.BitmapSetter(transaction);
             this.setQueue.put(setter);
+            this.task.request();
         }
         catch (InterruptedException ex)
         {
@@ -319,6 +510,7 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
         {
             ConcurrentBitmap.BitmapSetter setter = new ConcurrentBitmap.BitmapSetter(x, y, px);
             this.setQueue.put(setter);
+            this.task.request();
         }
         catch (InterruptedException ex)
         {
@@ -327,98 +519,267 @@ public class ConcurrentBitmap extends Bitmap implements Threadable
     }    
 
     @Override
-    public Pixel getPixel(int x, int y)
+    public void writeRegion(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.checkRegion(x, y, width, height);
+        int[] region = src;
+        if (offset != 0 || stride != width || src.length != width * height)
+        {
+            region = new int[width * height];
+            for (int row = 0; row < height; row++)
+            {
+                System.arraycopy(src, offset + row * stride, region, row * width, width);
+            }
+        }
+        try
+        {
+            this.setQueue.put(new ConcurrentBitmap.BitmapSetter(x, y, width, height, region));
+            this.task.request();
+        }
+        catch (InterruptedException ex)
+        {
+            Logger.getLogger(ConcurrentBitmap.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void writeRegionNow(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.checkRegion(x, y, width, height);
+        int[] oldValues = null;
+        int[] newValues = null;
+        long version;
+        synchronized(this.lock)
+        {
+            if (this.isIncremental(width, height))
+            {
+                oldValues = new int[width * height];
+                newValues = new int[width * height];
+                this.snapshot.readRegion(x, y, width, height, oldValues, 0, width);
+            }
+            this.editor = this.snapshot.edit();
+            this.storeRegion(x, y, width, height, src, offset, stride);
+            this.snapshot = this.editor.build();
+            this.editor = null;
+            if (Objects.nonNull(newValues))
+            {
+                this.snapshot.readRegion(x, y, width, height, newValues, 0, width);
+            }
+            version = this.snapshot.getVersion();
+        }
+        this.markDirty(x, y, width, height);
+        this.invokeChange(new Bitmap.BitmapChange(x, y, width, height, oldValues, newValues, version));
+    }
+
+    @Override
+    public void loadPixels(int[] src, int offset, int stride)
     {
-        synchronized(this.data)
+        synchronized(this.lock)
         {
-            return new Pixel(this.data[y][x]);
+            this.editor = this.snapshot.edit();
+            this.storeRegion(0, 0, this.width, this.height, src, offset, stride);
+            this.snapshot = this.editor.build();
+            this.editor = null;
         }
+        this.markDirty(0, 0, this.width, this.height);
+        this.invokeChange();
+    }
+
+    @Override
+    public int getARGB(int x, int y)
+    {
+        return this.snapshot.getARGB(x, y);
+    }
+
+    @Override
+    public void readRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.snapshot.readRegion(x, y, width, height, dst, offset, stride);
+    }
+
+    @Override
+    public BitmapSnapshot getSnapshot()
+    {
+        return this.snapshot;
+    }
+    
+    /**
+     * Writes one setter into data of bitmap
+     * (caller must hold lock of writer and edit snapshot)
+     * @param item Setter which will be written into data of bitmap
+     * @param dirty Bounds of changed area [minX, minY, maxX, maxY] which will be extended by written pixels
+     */
+    private void applySetter(ConcurrentBitmap.BitmapSetter item, int[] dirty)
+    {
+        if (item.isRegion())
+        {
+            this.storeRegion(item.getX(), item.getY(), item.getWidth(), item.getHeight(), item.getRegion(), 0, item.getWidth());
+            this.extendDirty(dirty, item.getX(), item.getY(), item.getWidth(), item.getHeight());
+        }
+        else if (item.isRestore())
+        {
+            this.editor.restore(item.getRestored());
+            this.extendDirty(dirty, 0, 0, this.width, this.height);
+        }
+        else if (item.isTransaction() == false)
+        {
+            this.storePixel(item.getX(), item.getY(), item.getPixel().toARGB(), dirty);
+        }
+        else
+        {
+            this.storeTransaction(item.getTransaction());
+            int[] region = this.getTransactionRegion(item.getTransaction());
+            this.extendDirty(dirty, region[0], region[1], region[2], region[3]);
+        }
+    }
+    
+    /**
+     * Extends bounds of changed area by area which will be changed by setter
+     * @param item Setter which changes bitmap
+     * @param bounds Bounds of changed area [minX, minY, maxX, maxY] which will be extended
+     */
+    private void extendBounds(ConcurrentBitmap.BitmapSetter item, int[] bounds)
+    {
+        if (item.isRegion() || item.isRestore())
+        {
+            this.extendDirty(bounds, item.getX(), item.getY(), item.getWidth(), item.getHeight());
+        }
+        else if (item.isTransaction() == false)
+        {
+            if (this.isInBitmap(item.getX(), item.getY()))
+            {
+                this.extendDirty(bounds, item.getX(), item.getY(), 1, 1);
+            }
+        }
+        else
+        {
+            int[] region = this.getTransactionRegion(item.getTransaction());
+            this.extendDirty(bounds, region[0], region[1], region[2], region[3]);
+        }
+    }
+    
+    /**
+     * Writes one pixel into data of bitmap
+     * (caller must hold lock of writer and edit snapshot)
+     * @param x X coordinate of pixel
+     * @param y Y coordinate of pixel
+     * @param argb New ARGB value of pixel
+     * @param dirty Bounds of changed area [minX, minY, maxX, maxY] which will be extended by written pixel
+     */
+    private void storePixel(int x, int y, int argb, int[] dirty)
+    {
+        if (this.isInBitmap(x, y))
+        {
+            this.storeFill(x, y, 1, 1, argb);
+            this.extendDirty(dirty, x, y, 1, 1);
+        }
+    }
+    
+    /**
+     * Extends bounds of changed area by rectangle
+     * @param dirty Bounds of changed area [minX, minY, maxX, maxY]
+     * @param x X coordinate of top left pixel of rectangle
+     * @param y Y coordinate of top left pixel of rectangle
+     * @param width Width of rectangle
+     * @param height Height of rectangle
+     */
+    private void extendDirty(int[] dirty, int x, int y, int width, int height)
+    {
+        if (width > 0 && height > 0)
+        {
+            dirty[0] = Math.min(dirty[0], x);
+            dirty[1] = Math.min(dirty[1], y);
+            dirty[2] = Math.max(dirty[2], x + width - 1);
+            dirty[3] = Math.max(dirty[3], y + height - 1);
+        }
+    }
+    
+    @Override
+    protected void storeRegion(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.editor.write(x, y, width, height, src, offset, stride);
+        this.updateIntensity(width, height, src, offset, stride);
+    }
+
+    @Override
+    protected void storeFill(int x, int y, int width, int height, int argb)
+    {
+        this.editor.fill(x, y, width, height, argb);
+        this.updateIntensity(argb);
+    }
+    
+    @Override
+    protected void uploadRegion(int x, int y, int width, int height)
+    {
+        this.snapshot.upload(this.image.getPixelWriter(), x, y, width, height);
     }
     
     @Override
     public void run()
     {
-        while(this.running == true)
+        List<ConcurrentBitmap.BitmapSetter> batch = new ArrayList<>();
+        int[] dirty = new int[4];
+        this.setQueue.drainTo(batch);
+        if (batch.isEmpty() == false)
         {
-            try
+            Metrics.gauge(Metrics.BITMAP_QUEUE).set(batch.size());
+            Metrics.Sample sample = Metrics.start();
+            dirty[0] = Integer.MAX_VALUE;
+            dirty[1] = Integer.MAX_VALUE;
+            dirty[2] = Integer.MIN_VALUE;
+            dirty[3] = Integer.MIN_VALUE;
+            for (ConcurrentBitmap.BitmapSetter item: batch)
             {
-                ConcurrentBitmap.BitmapSetter item = this.setQueue.poll(ConcurrentBitmap.POLL_TIMEOUT, TimeUnit.MICROSECONDS);
-                if (Objects.nonNull(item))
-                {
-                    if (item.isTransaction() == false)
-                    {
-                        if (this.isInBitmap(item.getX(), item.getY()))
-                        {
-                            synchronized(this.data)
-                            {
-                                this.data[item.getY()][item.getX()] = item.getPixel().toARGB();
-                                int intensity = Globals.INTENSITY.apply(item.getPixel());
-                                if (intensity > this.maxIntensity) maxIntensity = intensity;
-                                if (intensity < this.minIntensity) minIntensity = intensity;
-                            }        
-                            Platform.runLater(new Runnable(){
-                                @Override
-                                public void run()
-                                {
-                                    PixelWriter pw = ConcurrentBitmap.this.image.getPixelWriter();
-                                    pw.setColor(item.getX(), item.getY(), Color.rgb(item.getPixel().getRed(), item.getPixel().getGreen(), item.getPixel().getBlue(), (double)item.getPixel().getAlpha() / 255f));
-                                }
-                            });
-                            this.invokeChange();
-                        }
-                    }
-                    else
-                    {
-                        for(Bitmap.BitmapTransaction.TransactionItem t: item.getTransaction().getItems())
-                        {
-                            if (this.isInBitmap(t.getX(), t.getY()))
-                            {
-                                synchronized(this.data)
-                                {
-                                    this.data[t.getY()][t.getX()] = t.getValue().toARGB();
-                                    int intensity = Globals.INTENSITY.apply(t.getValue());
-                                    if (intensity > this.maxIntensity) maxIntensity = intensity;
-                                    if (intensity < this.minIntensity) minIntensity = intensity;
-                                }     
-                            }
-                        }
-                        Platform.runLater(new Runnable(){
-                            @Override
-                            public void run()
-                            {
-                                PixelWriter pw = ConcurrentBitmap.this.image.getPixelWriter();
-                                for(Bitmap.BitmapTransaction.TransactionItem t: item.getTransaction().getItems())
-                                {
-                                    if (ConcurrentBitmap.this.isInBitmap(t.getX(), t.getY()))
-                                    {
-                                        pw.setColor(t.getX(), t.getY(), Color.rgb(t.getValue().getRed(), t.getValue().getGreen(), t.getValue().getBlue(), (double)t.getValue().getAlpha() / 255f));
-                                    }
-                                }
-                            }                        
-                        });
-                        this.invokeChange();
-                    }
-                }
+                this.extendBounds(item, dirty);
+            }
+            if (dirty[2] < dirty[0] || dirty[3] < dirty[1])
+            {
+                return;
             }
-            catch (InterruptedException ex)
+            int x = dirty[0];
+            int y = dirty[1];
+            int w = dirty[2] - dirty[0] + 1;
+            int h = dirty[3] - dirty[1] + 1;
+            int[] oldValues = null;
+            int[] newValues = null;
+            long version;
+            synchronized(this.lock)
             {
-                Logger.getLogger(ConcurrentBitmap.class.getName()).log(Level.SEVERE, null, ex);
+                if (this.isIncremental(w, h))
+                {
+                    oldValues = new int[w * h];
+                    this.snapshot.readRegion(x, y, w, h, oldValues, 0, w);
+                }
+                this.editor = this.snapshot.edit();
+                for (ConcurrentBitmap.BitmapSetter item: batch)
+                {
+                    this.applySetter(item, dirty);
+                }
+                this.snapshot = this.editor.build();
+                this.editor = null;
+                if (Objects.nonNull(oldValues))
+                {
+                    newValues = new int[w * h];
+                    this.snapshot.readRegion(x, y, w, h, newValues, 0, w);
+                }
+                version = this.snapshot.getVersion();
             }
+            Metrics.record(Metrics.BITMAP_APPLY, sample, (long)w * (long)h);
+            this.markDirty(x, y, w, h);
+            this.invokeChange(new Bitmap.BitmapChange(x, y, w, h, oldValues, newValues, version));
         }
-        this.thread.stop();
     }
 
     @Override
     public void start()
     {
-        this.running = true;
-        this.thread.start();
+        this.task.request();
     }
 
     @Override
     public void stop()
     {
-        this.running = false;
+        this.task.cancel();
     }
     
 }
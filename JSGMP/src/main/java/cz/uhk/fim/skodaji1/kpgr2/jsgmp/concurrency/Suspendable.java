@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency;
+
+/**
+ * Interface which abstracts all objects which computation can be paused while their output is not visible
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public interface Suspendable
+{
+    /**
+     * Pauses computation (changes of data are only remembered)
+     */
+    public abstract void suspend();
+    
+    /**
+     * Continues computation (all changes made while suspended are processed at once)
+     */
+    public abstract void resume();
+}
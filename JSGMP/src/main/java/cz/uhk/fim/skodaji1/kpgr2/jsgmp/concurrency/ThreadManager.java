@@ -21,16 +21,25 @@ import cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller.EffectsController;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.BrightnessContrast;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Effect;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
-import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.GrayscaleChart;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.Histogram;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.HistogramEngine;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.ImagePyramid;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.ZoomDiagram;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.Function;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.beans.property.DoubleProperty;
@@ -48,6 +57,74 @@ public class ThreadManager
      */
     private static final List<Threadable> threads = Collections.synchronizedList(new ArrayList<>());
     
+    /**
+     * Counter of created worker threads
+     */
+    private static final AtomicLong workers = new AtomicLong(0);
+    
+    /**
+     * Executor shared by all objects working over multiple threads
+     */
+    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            (Runnable r) ->
+            {
+                Thread reti = new Thread(r, String.format("JSGMP:Worker-%d", ThreadManager.workers.getAndIncrement()));
+                reti.setDaemon(true);
+                return reti;
+            }
+    );
+    
+    /**
+     * Counter of created export threads
+     */
+    private static final AtomicLong exporters = new AtomicLong(0);
+    
+    /**
+     * Executor which exports images into files
+     * (its threads are not daemons, so started exports are finished even when program is closed)
+     */
+    private static final ExecutorService exportExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Globals.EXPORT_WORKERS),
+            (Runnable r) ->
+            {
+                return new Thread(r, String.format("JSGMP:Export-%d", ThreadManager.exporters.getAndIncrement()));
+            }
+    );
+    
+    /**
+     * Engines computing histograms of bitmaps
+     */
+    private static final Map<Bitmap, HistogramEngine> engines = new HashMap<>();
+    
+    /**
+     * Creates new task which runs on executor shared by all objects working over multiple threads
+     * @param action Action performed by task
+     * @return New task running on shared executor
+     */
+    public static final CoalescingTask createTask(Runnable action)
+    {
+        return new CoalescingTask(action, ThreadManager.executor);
+    }
+    
+    /**
+     * Gets executor shared by all objects working over multiple threads
+     * @return Shared executor
+     */
+    public static final ScheduledExecutorService getExecutor()
+    {
+        return ThreadManager.executor;
+    }
+    
+    /**
+     * Gets executor which exports images into files
+     * @return Executor of exports
+     */
+    public static final ExecutorService getExportExecutor()
+    {
+        return ThreadManager.exportExecutor;
+    }
+    
     /**
      * Creates new bitmap which works over multiple threads
      * @param width Width of bitmap
@@ -64,7 +141,7 @@ public class ThreadManager
     
     /**
      * Creates new histogram which works over multiple threads
-     * @param function Function which computes value of histogram for pixel
+     * @param function Function which computes value of histogram from ARGB value of pixel
      * @param source Bitmap which histogram will be computed
      * @param width Width of histogram
      * @param height Height of histogram
@@ -74,7 +151,7 @@ public class ThreadManager
      * @return New histogram which works over multiple threads
      */
     public static final Histogram createHistogram(
-            Function<Pixel, Integer> function,
+            IntUnaryOperator function,
             Bitmap source,
             int width,
             int height,
@@ -88,7 +165,7 @@ public class ThreadManager
     
     /**
      * Creates new histogram which works over multiple threads
-     * @param function Function which computes value of histogram for pixel
+     * @param function Function which computes value of histogram from ARGB value of pixel
      * @param source Bitmap which histogram will be computed
      * @param width Width of histogram
      * @param height Height of histogram
@@ -99,7 +176,7 @@ public class ThreadManager
      * @return New histogram which works over multiple threads
      */
     public static final Histogram createHistogram(
-            Function<Pixel, Integer> function,
+            IntUnaryOperator function,
             Bitmap source,
             int width,
             int height,
@@ -115,6 +192,25 @@ public class ThreadManager
         return reti;
     }
         
+    /**
+     * Gets engine which computes all histograms of bitmap
+     * (engine is created, if there is no engine for bitmap yet)
+     * @param source Bitmap which histograms will be computed
+     * @return Engine computing all histograms of bitmap
+     */
+    public static synchronized final HistogramEngine getHistogramEngine(Bitmap source)
+    {
+        HistogramEngine reti = ThreadManager.engines.get(source);
+        if (Objects.isNull(reti))
+        {
+            reti = new HistogramEngine(source);
+            ThreadManager.engines.put(source, reti);
+            ThreadManager.threads.add(reti);
+            reti.start();
+        }
+        return reti;
+    }
+        
     /**
      * Creates new brightness/contrast effect
      * @param bitmap Bitmap on which histograms will be computed
@@ -173,6 +269,19 @@ public class ThreadManager
         return reti;
     }
     
+    /**
+     * Creates new pyramid of images in multiple resolutions
+     * @param source Bitmap which levels will be computed
+     * @return Pyramid of images
+     */
+    public static final ImagePyramid createImagePyramid(Bitmap source)
+    {
+        ImagePyramid reti = new ImagePyramid(source);
+        ThreadManager.threads.add(reti);
+        reti.start();
+        return reti;
+    }
+    
     /**
      * Creates data provider for grayscale chart
      * @param bitmap Source of data
@@ -195,6 +304,7 @@ public class ThreadManager
         if (ThreadManager.threads.contains(t))
         {
             ThreadManager.threads.remove(t);
+            ThreadManager.engines.values().remove(t);
             t.stop();
         }
         
@@ -218,12 +328,15 @@ public class ThreadManager
             }
         }
         ThreadManager.threads.clear();
+        ThreadManager.engines.clear();
         for(Threadable t: toRemove)
         {
             t.stop();
         }
         toRemove.clear();
         toRemove = null;
+        ThreadManager.executor.shutdown();
+        ThreadManager.exportExecutor.shutdown();
         System.gc();
     }
 }
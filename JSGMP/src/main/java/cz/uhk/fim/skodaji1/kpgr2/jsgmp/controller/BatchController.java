@@ -0,0 +1,665 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.BrightnessContrast;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.ColorEffect;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Effect;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.EffectChain;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.GaussianBlur;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Grayscale;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.SobelEdges;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Temperature;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.UnsharpMask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.ImageFile;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.TiledBitmap;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Class which applies chain of effects on many image files without graphical interface;
+ * images are decoded, processed and encoded in three stages connected by bounded queues
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class BatchController
+{
+    /**
+     * Class describing values of all effects (read from JSON file)
+     */
+    public static class Settings
+    {
+        /**
+         * Value of brightness [-100 100]
+         */
+        public int brightness = 0;
+        
+        /**
+         * Value of contrast [0.9 1.9]
+         */
+        public double contrast = 1f;
+        
+        /**
+         * Value of temperature
+         */
+        public int temperature = 0;
+        
+        /**
+         * Value of red coloring
+         */
+        public int red = 0;
+        
+        /**
+         * Value of green coloring
+         */
+        public int green = 0;
+        
+        /**
+         * Value of blue coloring
+         */
+        public int blue = 0;
+        
+        /**
+         * Value of cyan coloring
+         */
+        public int cyan = 0;
+        
+        /**
+         * Value of magenta coloring
+         */
+        public int magenta = 0;
+        
+        /**
+         * Value of yellow coloring
+         */
+        public int yellow = 0;
+        
+        /**
+         * Percentage of grayscale [0 100]
+         */
+        public double grayscale = 0f;
+        
+        /**
+         * Standard deviation of gaussian blur (in pixels)
+         */
+        public double blur = 0f;
+        
+        /**
+         * Amount of sharpening by unsharp mask (in percent)
+         */
+        public double sharpen = 0f;
+        
+        /**
+         * Standard deviation of blur used by unsharp mask (in pixels)
+         */
+        public double sharpenRadius = 1f;
+        
+        /**
+         * Percentage of edges detected by Sobel operator [0 100]
+         */
+        public double edges = 0f;
+        
+        /**
+         * Creates effects with values defined by settings
+         * @return List of effects in same order as they are applied in graphical interface
+         */
+        public List<Effect> createEffects()
+        {
+            List<Effect> reti = new ArrayList<>();
+            reti.add(BatchController.Settings.color(this.red, true, false, false));
+            reti.add(BatchController.Settings.color(this.green, false, true, false));
+            reti.add(BatchController.Settings.color(this.blue, false, false, true));
+            reti.add(BatchController.Settings.color(this.cyan, false, true, true));
+            reti.add(BatchController.Settings.color(this.magenta, true, false, true));
+            reti.add(BatchController.Settings.color(this.yellow, true, true, false));
+            BrightnessContrast brightnessContrast = new BrightnessContrast();
+            brightnessContrast.setBrightness(this.brightness);
+            brightnessContrast.setContrast(this.contrast);
+            reti.add(brightnessContrast);
+            Temperature temperature = new Temperature();
+            temperature.setTemperature(this.temperature);
+            reti.add(temperature);
+            if (this.grayscale != 0)
+            {
+                Grayscale grayscale = new Grayscale();
+                grayscale.setValue(this.grayscale);
+                reti.add(grayscale);
+            }
+            if (this.blur != 0)
+            {
+                GaussianBlur blur = new GaussianBlur();
+                blur.setSigma(this.blur);
+                reti.add(blur);
+            }
+            if (this.sharpen != 0)
+            {
+                UnsharpMask sharpen = new UnsharpMask();
+                sharpen.setSigma(this.sharpenRadius);
+                sharpen.setAmount(this.sharpen);
+                reti.add(sharpen);
+            }
+            if (this.edges != 0)
+            {
+                SobelEdges edges = new SobelEdges();
+                edges.setValue(this.edges);
+                reti.add(edges);
+            }
+            return reti;
+        }
+        
+        /**
+         * Creates coloring effect
+         * @param value Value of coloring effect
+         * @param red Flag, whether red color channel should be changed
+         * @param green Flag, whether green color channel should be changed
+         * @param blue Flag, whether blue color channel should be changed
+         * @return Coloring effect with defined value
+         */
+        private static ColorEffect color(int value, boolean red, boolean green, boolean blue)
+        {
+            ColorEffect reti = new ColorEffect(red, green, blue);
+            reti.setValue(value);
+            return reti;
+        }
+    }
+    
+    /**
+     * Class holding statistics of processed images
+     */
+    public static class Statistics
+    {
+        /**
+         * Number of successfully processed images
+         */
+        private final long images;
+        
+        /**
+         * Number of images which could not be processed
+         */
+        private final long failed;
+        
+        /**
+         * Number of processed pixels
+         */
+        private final long pixels;
+        
+        /**
+         * Time of processing (in nanoseconds)
+         */
+        private final long time;
+        
+        /**
+         * Creates new statistics of processed images
+         * @param images Number of successfully processed images
+         * @param failed Number of images which could not be processed
+         * @param pixels Number of processed pixels
+         * @param time Time of processing (in nanoseconds)
+         */
+        public Statistics(long images, long failed, long pixels, long time)
+        {
+            this.images = images;
+            this.failed = failed;
+            this.pixels = pixels;
+            this.time = time;
+        }
+        
+        /**
+         * Gets number of successfully processed images
+         * @return Number of processed images
+         */
+        public long getImages()
+        {
+            return this.images;
+        }
+        
+        /**
+         * Gets number of images which could not be processed
+         * @return Number of failed images
+         */
+        public long getFailed()
+        {
+            return this.failed;
+        }
+        
+        /**
+         * Gets number of processed megapixels
+         * @return Number of processed megapixels
+         */
+        public double getMegapixels()
+        {
+            return (double)this.pixels / 1e6;
+        }
+        
+        /**
+         * Gets time of processing
+         * @return Time of processing (in seconds)
+         */
+        public double getSeconds()
+        {
+            return (double)Math.max(this.time, 1) / 1e9;
+        }
+        
+        /**
+         * Gets number of images processed per second
+         * @return Number of images processed per second
+         */
+        public double getImagesPerSecond()
+        {
+            return (double)this.images / this.getSeconds();
+        }
+        
+        /**
+         * Gets number of megapixels processed per second
+         * @return Number of megapixels processed per second
+         */
+        public double getMegapixelsPerSecond()
+        {
+            return this.getMegapixels() / this.getSeconds();
+        }
+    }
+    
+    /**
+     * Class representing one image passing through stages of processing
+     */
+    private static class Item
+    {
+        /**
+         * Item marking end of images
+         */
+        private static final BatchController.Item END = new BatchController.Item(null, null);
+        
+        /**
+         * File from which image has been read
+         */
+        private final File file;
+        
+        /**
+         * Image with pixels stored as integers with ARGB values
+         */
+        private final BufferedImage image;
+        
+        /**
+         * Creates new image passing through stages of processing
+         * @param file File from which image has been read
+         * @param image Image with pixels stored as integers with ARGB values
+         */
+        public Item(File file, BufferedImage image)
+        {
+            this.file = file;
+            this.image = image;
+        }
+    }
+    
+    /**
+     * Chain of effects applied on all images
+     */
+    private final EffectChain chain;
+    
+    /**
+     * Directory into which processed images will be written
+     */
+    private final File output;
+    
+    /**
+     * Name of format of written images (NULL to keep format of input file)
+     */
+    private final String format;
+    
+    /**
+     * Number of worker threads of each stage
+     */
+    private final int workers;
+    
+    /**
+     * Maximal number of images waiting between two stages
+     */
+    private final int capacity;
+    
+    /**
+     * Number of successfully processed images
+     */
+    private final AtomicLong images;
+    
+    /**
+     * Number of images which could not be processed
+     */
+    private final AtomicLong failed;
+    
+    /**
+     * Number of processed pixels
+     */
+    private final AtomicLong pixels;
+    
+    /**
+     * Creates new controller of batch processing
+     * @param chain Chain of effects applied on all images
+     * @param output Directory into which processed images will be written
+     * @param format Name of format of written images (NULL to keep format of input file)
+     * @param workers Number of worker threads of each stage
+     */
+    public BatchController(EffectChain chain, File output, String format, int workers)
+    {
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        this.chain = chain;
+        this.output = output;
+        this.format = format;
+        this.workers = workers;
+        this.capacity = 2 * workers;
+        this.images = new AtomicLong(0);
+        this.failed = new AtomicLong(0);
+        this.pixels = new AtomicLong(0);
+    }
+    
+    /**
+     * Reads settings of effects from JSON file and compiles them into chain
+     * @param file JSON file with settings of effects
+     * @return Compiled chain of effects
+     * @throws IOException File cannot be read or it does not contain valid settings
+     */
+    public static EffectChain loadChain(File file) throws IOException
+    {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+        {
+            BatchController.Settings settings = new Gson().fromJson(reader, BatchController.Settings.class);
+            if (Objects.isNull(settings))
+            {
+                settings = new BatchController.Settings();
+            }
+            return EffectChain.compile(settings.createEffects());
+        }
+        catch (JsonParseException ex)
+        {
+            throw new IOException("Invalid settings of effects in file " + file.getName(), ex);
+        }
+    }
+    
+    /**
+     * Processes all image files
+     * @param files Image files which will be processed
+     * @return Statistics of processing
+     * @throws InterruptedException Processing has been interrupted
+     */
+    public BatchController.Statistics process(List<File> files) throws InterruptedException
+    {
+        Queue<File> inputs = new ConcurrentLinkedQueue<>(files);
+        BlockingQueue<BatchController.Item> decoded = new ArrayBlockingQueue<>(this.capacity);
+        BlockingQueue<BatchController.Item> processed = new ArrayBlockingQueue<>(this.capacity);
+        AtomicInteger decoders = new AtomicInteger(this.workers);
+        AtomicInteger processors = new AtomicInteger(this.workers);
+        ExecutorService executor = Executors.newFixedThreadPool(3 * this.workers);
+        long start = System.nanoTime();
+        for (int i = 0; i < this.workers; i++)
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    this.decode(inputs, decoded);
+                }
+                finally
+                {
+                    this.finish(decoders, decoded);
+                }
+            });
+            executor.execute(() ->
+            {
+                try
+                {
+                    this.process(decoded, processed);
+                }
+                finally
+                {
+                    this.finish(processors, processed);
+                }
+            });
+            executor.execute(() ->
+            {
+                this.encode(processed);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return new BatchController.Statistics(this.images.get(), this.failed.get(), this.pixels.get(), System.nanoTime() - start);
+    }
+    
+    /**
+     * Marks end of work of one worker of stage; last worker informs all workers of next stage about end of images
+     * @param remaining Number of workers of stage which has not finished yet
+     * @param next Queue of next stage
+     */
+    private void finish(AtomicInteger remaining, BlockingQueue<BatchController.Item> next)
+    {
+        if (remaining.decrementAndGet() == 0)
+        {
+            for (int i = 0; i < this.workers; i++)
+            {
+                this.put(next, BatchController.Item.END);
+            }
+        }
+    }
+    
+    /**
+     * Puts item into queue (waits until there is space in queue)
+     * @param queue Queue into which item will be put
+     * @param item Item which will be put into queue
+     */
+    private void put(BlockingQueue<BatchController.Item> queue, BatchController.Item item)
+    {
+        try
+        {
+            queue.put(item);
+        }
+        catch (InterruptedException ex)
+        {
+            Logger.getLogger(BatchController.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Takes item from queue (waits until there is any item in queue)
+     * @param queue Queue from which item will be taken
+     * @return Item taken from queue or end of images, if waiting has been interrupted
+     */
+    private BatchController.Item take(BlockingQueue<BatchController.Item> queue)
+    {
+        BatchController.Item reti = BatchController.Item.END;
+        try
+        {
+            reti = queue.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Logger.getLogger(BatchController.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        return reti;
+    }
+    
+    /**
+     * Decodes image files (first stage)
+     * @param inputs Image files which has not been decoded yet
+     * @param decoded Queue of decoded images
+     */
+    private void decode(Queue<File> inputs, BlockingQueue<BatchController.Item> decoded)
+    {
+        File file = inputs.poll();
+        while (Objects.nonNull(file) && Thread.currentThread().isInterrupted() == false)
+        {
+            try
+            {
+                if (ImageFile.countPixels(file) > Globals.BATCH_TILED_PIXELS)
+                {
+                    this.processTiled(file);
+                }
+                else
+                {
+                    BufferedImage image = ImageIO.read(file);
+                    if (Objects.isNull(image))
+                    {
+                        throw new IOException("Unsupported format of image: " + file.getName());
+                    }
+                    this.put(decoded, new BatchController.Item(file, ImageFile.toARGB(image)));
+                }
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                this.failed.incrementAndGet();
+                Logger.getLogger(BatchController.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            file = inputs.poll();
+        }
+    }
+    
+    /**
+     * Processes image too large to be decoded into memory (image is read, processed and written tile by tile,
+     * only limited number of tiles is held in memory at once)
+     * @param file Image file which will be processed
+     * @throws IOException Image cannot be read or written
+     */
+    private void processTiled(File file) throws IOException
+    {
+        File target = this.getTarget(file);
+        String extension = FilenameUtils.getExtension(target.getName());
+        try (TiledBitmap source = TiledBitmap.read(file, TiledBitmap.DEFAULT_TILE_SIZE, TiledBitmap.DEFAULT_CACHE_SIZE))
+        {
+            boolean written;
+            if (this.chain.getRadius() > 0)
+            {
+                try (TiledBitmap result = new TiledBitmap(source.getWidth(), source.getHeight()))
+                {
+                    this.chain.apply(source, result);
+                    written = result.write(target, extension);
+                }
+            }
+            else
+            {
+                this.chain.apply(source, source);
+                written = source.write(target, extension);
+            }
+            if (written == false)
+            {
+                throw new IOException("Unsupported format of image: " + extension);
+            }
+            this.images.incrementAndGet();
+            this.pixels.addAndGet((long)source.getWidth() * (long)source.getHeight());
+        }
+    }
+    
+    /**
+     * Gets file into which processed image will be written
+     * @param file Original image file
+     * @return File in output directory with name of original file and extension of output format
+     */
+    private File getTarget(File file)
+    {
+        String name = file.getName();
+        String extension = Objects.nonNull(this.format) ? this.format : FilenameUtils.getExtension(name);
+        return new File(this.output, FilenameUtils.getBaseName(name) + "." + extension);
+    }
+    
+    /**
+     * Applies chain of effects on decoded images (second stage)
+     * @param decoded Queue of decoded images
+     * @param processed Queue of processed images
+     */
+    private void process(BlockingQueue<BatchController.Item> decoded, BlockingQueue<BatchController.Item> processed)
+    {
+        BatchController.Item item = this.take(decoded);
+        while (item != BatchController.Item.END)
+        {
+            int[] data = ImageFile.getPixels(item.image);
+            int offset = ImageFile.getOffset(item.image);
+            int stride = ImageFile.getStride(item.image);
+            int width = item.image.getWidth();
+            int height = item.image.getHeight();
+            if (this.chain.getRadius() > 0)
+            {
+                int[] original = new int[width * height];
+                for (int y = 0; y < height; y++)
+                {
+                    System.arraycopy(data, offset + y * stride, original, y * width, width);
+                }
+                this.chain.apply(original, width, height, 0, 0, width, height, data, offset, stride, 1);
+            }
+            else
+            {
+                for (int y = 0; y < height; y++)
+                {
+                    this.chain.apply(data, offset + y * stride, data, offset + y * stride, width);
+                }
+            }
+            this.put(processed, item);
+            item = this.take(decoded);
+        }
+    }
+    
+    /**
+     * Encodes processed images into output directory (third stage)
+     * @param processed Queue of processed images
+     */
+    private void encode(BlockingQueue<BatchController.Item> processed)
+    {
+        BatchController.Item item = this.take(processed);
+        while (item != BatchController.Item.END)
+        {
+            File target = this.getTarget(item.file);
+            String extension = FilenameUtils.getExtension(target.getName());
+            try
+            {
+                if (ImageIO.write(ImageFile.forFormat(item.image, extension), extension, target) == false)
+                {
+                    throw new IOException("Unsupported format of image: " + extension);
+                }
+                this.images.incrementAndGet();
+                this.pixels.addAndGet((long)item.image.getWidth() * (long)item.image.getHeight());
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                this.failed.incrementAndGet();
+                Logger.getLogger(BatchController.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            item = this.take(processed);
+        }
+    }
+}
@@ -17,15 +17,28 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ConcurrentBitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Effect;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.EffectChain;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
-import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Metrics;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
 /**
  * Class which handles all effects applied on bitmap
@@ -34,14 +47,101 @@ import java.util.logging.Logger;
 public class EffectsController implements Threadable, Effect.EffectChangedListener
 {
     /**
-     * Interval between checking, whether any effect has changed (in miliseconds)
+     * Interface abstracting listener of change of preview of effects
      */
-    private static final int SLEEP = 250;
+    public static interface PreviewChangedListener
+    {
+        /**
+         * Function which will be called (on JavaFX application thread) when preview of effects changed
+         * @param preview Downscaled image with applied effects which should be displayed instead of bitmap,
+         *                or NULL if bitmap contains actual result and should be displayed again
+         */
+        public abstract void previewChanged(Image preview);
+    }
     
     /**
-     * Counter of created effect controllers
+     * Task which applies effects on range of tiles of image
      */
-    private static long counter = 0;
+    private static class TileTask extends RecursiveAction
+    {
+        /**
+         * Identifier of version of serialized task
+         */
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Controller which started the task
+         */
+        private final EffectsController controller;
+        
+        /**
+         * Compiled chain of effects which will be applied
+         */
+        private final EffectChain chain;
+        
+        /**
+         * Transaction into which finished tiles will be written
+         */
+        private final Bitmap.BitmapTransaction transaction;
+        
+        /**
+         * Generation of parameters of effects for which task has been started
+         */
+        private final long generation;
+        
+        /**
+         * Index of first tile processed by task
+         */
+        private final int from;
+        
+        /**
+         * Index of first tile which is not processed by task
+         */
+        private final int to;
+        
+        /**
+         * Creates new task which applies effects on range of tiles
+         * @param controller Controller which started the task
+         * @param chain Compiled chain of effects which will be applied
+         * @param transaction Transaction into which finished tiles will be written
+         * @param generation Generation of parameters of effects for which task has been started
+         * @param from Index of first tile processed by task
+         * @param to Index of first tile which is not processed by task
+         */
+        public TileTask(EffectsController controller, EffectChain chain, Bitmap.BitmapTransaction transaction, long generation, int from, int to)
+        {
+            this.controller = controller;
+            this.chain = chain;
+            this.transaction = transaction;
+            this.generation = generation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.controller.isOutdated(this.generation))
+            {
+                return;
+            }
+            if (this.to - this.from <= 1)
+            {
+                for (int i = this.from; i < this.to; i++)
+                {
+                    this.controller.applyTile(this.chain, this.transaction, i);
+                }
+            }
+            else
+            {
+                int middle = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(
+                        new TileTask(this.controller, this.chain, this.transaction, this.generation, this.from, middle),
+                        new TileTask(this.controller, this.chain, this.transaction, this.generation, middle, this.to)
+                );
+            }
+        }
+    }
     
     /**
      * Bitmap on which effects will be applied
@@ -54,19 +154,76 @@ public class EffectsController implements Threadable, Effect.EffectChangedListen
     private final List<Effect> effects;
         
     /**
-     * Thread which handles all effect application
+     * Task which handles all effect application
+     */
+    private final CoalescingTask task;
+    
+    /**
+     * Generation of parameters of effects (increased with each change of any effect)
+     */
+    private final AtomicLong generation;
+    
+    /**
+     * Generation of parameters of effects which has been already applied on bitmap
      */
-    private final Thread thread;
+    private long applied;
     
     /**
-     * Flag, whether thread is running or not
+     * Pool of workers which apply effects on tiles of image
      */
-    private boolean running;
+    private final ForkJoinPool pool;
     
     /**
-     * Flag, whether effects should be applied or not
+     * Size of one square tile of image (in pixels)
      */
-    private boolean apply;
+    private final int tileSize;
+    
+    /**
+     * Number of tiles processed during last application of effects per second
+     */
+    private volatile double tileThroughput;
+    
+    /**
+     * Flag, whether only preview in lower resolution should be computed (for example while slider is dragged)
+     */
+    private volatile boolean preview;
+    
+    /**
+     * Generation of parameters of effects which has been already applied on preview
+     */
+    private long previewed;
+    
+    /**
+     * Generation of parameters of effects for which full resolution should be computed even in preview mode
+     * (parameters has not changed for some time)
+     */
+    private final AtomicLong refine;
+    
+    /**
+     * Number of pixels in each direction represented by one pixel of preview
+     */
+    private final int previewScale;
+    
+    /**
+     * Downscaled copy of original values of pixels used to compute preview
+     */
+    private int[] proxy;
+    
+    /**
+     * Downscaled image with applied effects displayed while preview mode is active
+     */
+    private WritableImage previewImage;
+    
+    /**
+     * Generation of parameters of effects which has been written into bitmap in full resolution
+     * and which preview should be hidden once bitmap is changed (negative if there is no such generation)
+     */
+    private final AtomicLong refined;
+    
+    /**
+     * List of listeners on change of preview of effects
+     */
+    private final List<EffectsController.PreviewChangedListener> previewListeners;
     
     /**
      * Creates new controller of effects applied on bitmap
@@ -74,12 +231,77 @@ public class EffectsController implements Threadable, Effect.EffectChangedListen
      */
     public EffectsController(Bitmap bitmap)
     {
+        this(bitmap, Globals.EFFECTS_WORKERS, Globals.EFFECTS_TILE_SIZE);
+    }
+    
+    /**
+     * Creates new controller of effects applied on bitmap
+     * @param bitmap Bitmap on which effects will be applied
+     * @param workers Number of worker threads which apply effects
+     * @param tileSize Size of one square tile of image processed by one worker at once (in pixels)
+     */
+    public EffectsController(Bitmap bitmap, int workers, int tileSize)
+    {
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        if (tileSize < 1)
+        {
+            throw new IllegalArgumentException("Size of tile must be positive");
+        }
         this.bitmap = bitmap;
+        this.pool = new ForkJoinPool(workers);
+        this.tileSize = tileSize;
+        this.tileThroughput = 0;
         this.effects = Collections.synchronizedList(new ArrayList<>());
-        this.thread = new Thread(this, String.format("JSGMP:EffectsController-%d", EffectsController.counter));
-        EffectsController.counter++;
-        this.running = false;
-        this.apply = false;
+        this.task = ThreadManager.createTask(this);
+        this.generation = new AtomicLong(0);
+        this.applied = 0;
+        this.preview = false;
+        this.previewed = 0;
+        this.refine = new AtomicLong(-1);
+        this.previewScale = Math.max(1, Globals.EFFECTS_PREVIEW_SCALE);
+        this.proxy = null;
+        this.previewImage = null;
+        this.refined = new AtomicLong(-1);
+        this.previewListeners = Collections.synchronizedList(new ArrayList<>());
+        this.bitmap.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        {
+            @Override
+            public void onChange(Bitmap bitmap)
+            {
+                long generation = EffectsController.this.refined.getAndSet(-1);
+                if (generation >= 0 && generation == EffectsController.this.generation.get())
+                {
+                    Platform.runLater(() -> {EffectsController.this.invokePreviewChanged(null);});
+                }
+            }
+        });
+    }
+    
+    /**
+     * Adds listener to change of preview of effects
+     * @param listener Object which will be informed about change of preview
+     */
+    public void addPreviewChangedListener(EffectsController.PreviewChangedListener listener)
+    {
+        this.previewListeners.add(listener);
+    }
+    
+    /**
+     * Informs all listeners about change of preview of effects
+     * @param preview Downscaled image with applied effects, or NULL if bitmap should be displayed again
+     */
+    private void invokePreviewChanged(Image preview)
+    {
+        synchronized (this.previewListeners)
+        {
+            for (EffectsController.PreviewChangedListener listener: this.previewListeners)
+            {
+                listener.previewChanged(preview);
+            }
+        }
     }
     
     /**
@@ -98,69 +320,223 @@ public class EffectsController implements Threadable, Effect.EffectChangedListen
     @Override
     public void start()
     {
-        this.running = true;
-        this.thread.start();
+        this.task.request();
     }
 
     @Override
     public void stop()
     {
-        this.running = false;
+        this.task.cancel();
+        this.pool.shutdown();
+    }
+    
+    /**
+     * Checks, whether parameters of effects has changed since defined generation
+     * @param generation Generation of parameters of effects which will be checked
+     * @return TRUE if there are newer parameters of effects, FALSE otherwise
+     */
+    private boolean isOutdated(long generation)
+    {
+        return this.generation.get() != generation || this.task.isCancelled();
+    }
+    
+    /**
+     * Sets preview mode (while it is active, effects are applied on downscaled image only
+     * and full resolution is computed after preview mode ends or parameters do not change for a while)
+     * @param preview TRUE if preview mode should be activated, FALSE otherwise
+     */
+    public void setPreview(boolean preview)
+    {
+        if (preview == true && this.preview == false)
+        {
+            this.proxy = null;
+        }
+        this.preview = preview;
+        if (preview == false)
+        {
+            this.task.request();
+        }
+    }
+    
+    /**
+     * Gets number of tiles processed per second during last application of effects
+     * @return Number of tiles processed per second
+     */
+    public double getTileThroughput()
+    {
+        return this.tileThroughput;
+    }
+    
+    /**
+     * Gets size of one square tile of image
+     * @return Size of one tile (in pixels)
+     */
+    public int getTileSize()
+    {
+        return this.tileSize;
+    }
+    
+    /**
+     * Gets number of worker threads which apply effects
+     * @return Number of worker threads
+     */
+    public int getWorkers()
+    {
+        return this.pool.getParallelism();
+    }
+    
+    /**
+     * Applies effects on one tile of image (surrounding pixels are read too when chain contains neighbourhood effects)
+     * @param chain Compiled chain of effects which will be applied
+     * @param transaction Transaction into which finished tile will be written
+     * @param index Index of tile (tiles are numbered row by row)
+     */
+    private void applyTile(EffectChain chain, Bitmap.BitmapTransaction transaction, int index)
+    {
+        int width = this.bitmap.getWidth();
+        int height = this.bitmap.getHeight();
+        int columns = (width + this.tileSize - 1) / this.tileSize;
+        int x = (index % columns) * this.tileSize;
+        int y = (index / columns) * this.tileSize;
+        int w = Math.min(this.tileSize, width - x);
+        int h = Math.min(this.tileSize, height - y);
+        Metrics.Sample sample = Metrics.start();
+        int[] tile = new int[w * h];
+        int radius = chain.getRadius();
+        if (radius > 0)
+        {
+            int left = Math.max(x - radius, 0);
+            int top = Math.max(y - radius, 0);
+            int haloWidth = Math.min(x + w + radius, width) - left;
+            int haloHeight = Math.min(y + h + radius, height) - top;
+            int[] halo = new int[haloWidth * haloHeight];
+            this.bitmap.readOriginalRegion(left, top, haloWidth, haloHeight, halo, 0, haloWidth);
+            chain.apply(halo, haloWidth, haloHeight, x - left, y - top, w, h, tile, 0, w, 1);
+        }
+        else
+        {
+            this.bitmap.readOriginalRegion(x, y, w, h, tile, 0, w);
+            chain.apply(tile, 0, tile, 0, tile.length);
+        }
+        transaction.writeRegion(x, y, w, h, tile);
+        Metrics.record(Metrics.EFFECTS_TILE, sample, w * h);
+    }
+
+    /**
+     * Creates downscaled copy of original values of pixels
+     * (each pixel of copy is top left pixel of square block of original image)
+     * @param width Width of downscaled copy
+     * @param height Height of downscaled copy
+     * @return Array with downscaled copy of original values of pixels
+     */
+    private int[] createProxy(int width, int height)
+    {
+        int[] reti = new int[width * height];
+        int[] row = new int[this.bitmap.getWidth()];
+        for (int y = 0; y < height; y++)
+        {
+            this.bitmap.readOriginalRegion(0, y * this.previewScale, row.length, 1, row, 0, row.length);
+            for (int x = 0; x < width; x++)
+            {
+                reti[y * width + x] = row[x * this.previewScale];
+            }
+        }
+        return reti;
+    }
+    
+    /**
+     * Applies effects on downscaled image and displays it instead of bitmap
+     * (bitmap itself is not changed until full resolution is computed)
+     * @param chain Compiled chain of effects which will be applied
+     * @param actual Generation of parameters of effects which is applied
+     * @return TRUE if preview has been displayed, FALSE if it has been outdated before
+     */
+    private boolean applyPreview(EffectChain chain, long actual)
+    {
+        int width = this.bitmap.getWidth();
+        int height = this.bitmap.getHeight();
+        int proxyWidth = (width + this.previewScale - 1) / this.previewScale;
+        int proxyHeight = (height + this.previewScale - 1) / this.previewScale;
+        int[] original = this.proxy;
+        if (Objects.isNull(original))
+        {
+            original = this.createProxy(proxyWidth, proxyHeight);
+            this.proxy = original;
+        }
+        if (Objects.isNull(this.previewImage))
+        {
+            this.previewImage = new WritableImage(proxyWidth, proxyHeight);
+        }
+        int[] applied = new int[original.length];
+        chain.apply(original, proxyWidth, proxyHeight, 0, 0, proxyWidth, proxyHeight, applied, 0, proxyWidth, this.previewScale);
+        if (this.isOutdated(actual))
+        {
+            return false;
+        }
+        WritableImage image = this.previewImage;
+        Platform.runLater(() ->
+        {
+            image.getPixelWriter().setPixels(0, 0, proxyWidth, proxyHeight, PixelFormat.getIntArgbInstance(), applied, 0, proxyWidth);
+            this.invokePreviewChanged(image);
+        });
+        return true;
     }
 
     @Override
     public void run()
     {
-        while (this.running == true)
+        long actual = this.generation.get();
+        boolean full = this.preview == false || this.refine.get() == actual;
+        if ((full == true && actual == this.applied) || (full == false && actual == this.previewed))
+        {
+            return;
+        }
+        EffectChain chain;
+        synchronized (this.effects)
         {
-            if (this.apply)
+            chain = EffectChain.compile(this.effects);
+        }
+        if (full == false)
+        {
+            Metrics.Sample sample = Metrics.startPass();
+            if (this.applyPreview(chain, actual))
             {
-                Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-                for(int y = 0; y < this.bitmap.getHeight(); y++)
+                Metrics.record(Metrics.EFFECTS_PREVIEW, sample, (long)this.proxy.length);
+                this.previewed = actual;
+                ThreadManager.getExecutor().schedule(() ->
                 {
-                    for (int x = 0; x < this.bitmap.getWidth(); x++)
+                    if (this.generation.get() == actual)
                     {
-                        int r = 0;
-                        int g = 0;
-                        int b = 0;
-                        int a = 0;
-                        Pixel px = this.bitmap.getOriginal(x, y);
-                        for(Effect e: this.effects)
-                            {
-                                Pixel applied = e.apply(px);
-                                r += (applied.getRed() - px.getRed());
-                                g += (applied.getGreen() - px.getGreen());
-                                b += (applied.getBlue() - px.getBlue());
-                                a += (applied.getAlpha() - px.getAlpha());
-                            }
-                        r = px.getRed() + r;
-                        g = px.getGreen() + g;
-                        b = px.getBlue() + b;
-                        a = px.getAlpha() + a;
-                        if (r < 0) r = 0; if (r > 255) r = 255;
-                        if (g < 0) g = 0; if (g > 255) g = 255;
-                        if (b < 0) b = 0; if (b > 255) b = 255;
-                        if (a < 0) a = 0; if (a > 255) a = 255;
-                        Pixel newPixel = new Pixel((short)r, (short)g, (short)b, (short)a);
-                        transaction.setPixel(x, y, newPixel);
+                        this.refine.set(actual);
+                        this.task.request();
                     }
-                }
-                this.bitmap.processTransaction(transaction);
-            }
-            try
-            {
-                Thread.sleep(EffectsController.SLEEP);
-            }
-            catch (InterruptedException ex)
-            {
-                Logger.getLogger(EffectsController.class.getName()).log(Level.SEVERE, null, ex);
+                }, Globals.EFFECTS_PREVIEW_IDLE, TimeUnit.MILLISECONDS);
             }
+            return;
+        }
+        int width = this.bitmap.getWidth();
+        int height = this.bitmap.getHeight();
+        int tiles = ((width + this.tileSize - 1) / this.tileSize) * ((height + this.tileSize - 1) / this.tileSize);
+        Metrics.Sample sample = Metrics.startPass();
+        long start = System.nanoTime();
+        Bitmap.BitmapTransaction transaction = new ConcurrentBitmap.ConcurrentBitmapTransaction();
+        this.pool.invoke(new TileTask(this, chain, transaction, actual, 0, tiles));
+        if (this.isOutdated(actual) == false)
+        {
+            long time = System.nanoTime() - start;
+            this.tileThroughput = (double)tiles / ((double)Math.max(time, 1) / 1e9);
+            this.refined.set(actual);
+            this.bitmap.processTransaction(transaction);
+            Metrics.record(Metrics.EFFECTS_FULL, sample, (long)width * (long)height);
+            this.applied = actual;
+            this.previewed = actual;
         }
     }
 
     @Override
     public void effectChanged()
     {
-        this.apply = true;
+        this.generation.incrementAndGet();
+        this.task.request();
     }
 }
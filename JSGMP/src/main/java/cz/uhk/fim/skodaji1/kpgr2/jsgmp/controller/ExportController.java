@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.ImageFile;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Metrics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Class which exports bitmaps into image files in background;
+ * more exports can run at the same time
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class ExportController
+{
+    /**
+     * Interface defining handler of progress of exports
+     */
+    public static interface ExportProgressListener
+    {
+        /**
+         * Function called when progress of any export changes (called from background thread)
+         * @param running Number of unfinished exports
+         * @param progress Average progress of unfinished exports [0 1]
+         */
+        public abstract void onProgress(int running, double progress);
+    }
+    
+    /**
+     * Progress of all unfinished exports (indexed by identifier of export)
+     */
+    private final Map<Long, Double> exports;
+    
+    /**
+     * Counter of identifiers of exports
+     */
+    private final AtomicLong counter;
+    
+    /**
+     * Handler of progress of exports
+     */
+    private final ExportController.ExportProgressListener listener;
+    
+    /**
+     * Creates new controller of exports
+     * @param listener Handler of progress of exports
+     */
+    public ExportController(ExportController.ExportProgressListener listener)
+    {
+        this.exports = new ConcurrentHashMap<>();
+        this.counter = new AtomicLong(0);
+        this.listener = listener;
+    }
+    
+    /**
+     * Exports bitmap into image file; snapshot of bitmap is taken immediately,
+     * image is encoded and written in background
+     * @param bitmap Bitmap which will be exported
+     * @param path Path to image file (format is defined by extension of file)
+     * @return Future result of export
+     */
+    public Future<?> export(Bitmap bitmap, String path)
+    {
+        BufferedImage snapshot = new BufferedImage(bitmap.getWidth(), bitmap.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        bitmap.readRegion(
+                0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                ImageFile.getPixels(snapshot), ImageFile.getOffset(snapshot), ImageFile.getStride(snapshot)
+        );
+        long id = this.counter.getAndIncrement();
+        this.setProgress(id, 0);
+        return ThreadManager.getExportExecutor().submit(() ->
+        {
+            try
+            {
+                this.write(snapshot, new File(path), id);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                Logger.getLogger(ExportController.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            finally
+            {
+                this.exports.remove(id);
+                this.report();
+            }
+        });
+    }
+    
+    /**
+     * Encodes image and writes it into file
+     * @param image Image with pixels stored as integers with ARGB values
+     * @param output File into which image will be written
+     * @param id Identifier of export
+     * @throws IOException Image cannot be written
+     */
+    private void write(BufferedImage image, File output, long id) throws IOException
+    {
+        String format = FilenameUtils.getExtension(output.getName()).toLowerCase();
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+        if (writers.hasNext() == false)
+        {
+            throw new IOException("Unsupported format of image: " + format);
+        }
+        ImageWriter writer = writers.next();
+        writer.addIIOWriteProgressListener(new IIOWriteProgressListener()
+        {
+            @Override
+            public void imageStarted(ImageWriter source, int imageIndex)
+            {
+                ExportController.this.setProgress(id, 0);
+            }
+
+            @Override
+            public void imageProgress(ImageWriter source, float percentageDone)
+            {
+                ExportController.this.setProgress(id, (double)percentageDone / 100f);
+            }
+
+            @Override
+            public void imageComplete(ImageWriter source)
+            {
+                ExportController.this.setProgress(id, 1);
+            }
+
+            @Override
+            public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {}
+
+            @Override
+            public void thumbnailProgress(ImageWriter source, float percentageDone) {}
+
+            @Override
+            public void thumbnailComplete(ImageWriter source) {}
+
+            @Override
+            public void writeAborted(ImageWriter source) {}
+        });
+        if (output.exists())
+        {
+            output.delete();
+        }
+        Metrics.Sample sample = Metrics.startPass();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(output))
+        {
+            writer.setOutput(stream);
+            writer.write(ImageFile.forFormat(image, format));
+        }
+        finally
+        {
+            writer.dispose();
+        }
+        Metrics.record(Metrics.EXPORT, sample, (long)image.getWidth() * (long)image.getHeight());
+    }
+    
+    /**
+     * Sets progress of export and informs handler of progress
+     * @param id Identifier of export
+     * @param progress Progress of export [0 1]
+     */
+    private void setProgress(long id, double progress)
+    {
+        this.exports.put(id, progress);
+        this.report();
+    }
+    
+    /**
+     * Informs handler about progress of all unfinished exports
+     */
+    private void report()
+    {
+        int running = 0;
+        double progress = 0;
+        for (double p: this.exports.values())
+        {
+            running++;
+            progress += p;
+        }
+        this.listener.onProgress(running, running > 0 ? progress / (double)running : 1);
+    }
+}
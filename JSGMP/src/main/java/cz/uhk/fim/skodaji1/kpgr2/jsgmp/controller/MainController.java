@@ -18,21 +18,27 @@
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller;
 
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.JSGMP;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ConcurrentBitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.AutoLevels;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.BoxBlur;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.BrightnessContrast;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.ColorEffect;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.GaussianBlur;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Grayscale;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.SobelEdges;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.Temperature;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.UnsharpMask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Binning;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.History;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.ImageFile;
-import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.FXMLMainWindow;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.GrayscaleChart;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.Histogram;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.Zoom;
-import java.awt.image.BufferedImage;
 import java.io.BufferedOutputStream;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -40,13 +46,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.embed.swing.SwingFXUtils;
+import javafx.application.Platform;
 import javafx.scene.paint.Color;
-import javax.imageio.ImageIO;
-import org.apache.commons.io.FilenameUtils;
 
 /**
  * Class which handles behaviour of main window
@@ -54,6 +60,103 @@ import org.apache.commons.io.FilenameUtils;
  */
 public class MainController
 {
+    /**
+     * Enumeration of all tools which display analysis of image
+     */
+    public enum Tool
+    {
+        /**
+         * Histograms of all colour channels
+         */
+        HISTOGRAM,
+        
+        /**
+         * Red colour channel
+         */
+        RED,
+        
+        /**
+         * Green colour channel
+         */
+        GREEN,
+        
+        /**
+         * Blue colour channel
+         */
+        BLUE,
+        
+        /**
+         * Cyan colour channel
+         */
+        CYAN,
+        
+        /**
+         * Magenta colour channel
+         */
+        MAGENTA,
+        
+        /**
+         * Yellow colour channel
+         */
+        YELLOW,
+        
+        /**
+         * Brightness of image
+         */
+        BRIGHTNESS,
+        
+        /**
+         * Contrast of image
+         */
+        CONTRAST,
+        
+        /**
+         * Temperature of image
+         */
+        TEMPERATURE,
+        
+        /**
+         * Zoom of image
+         */
+        ZOOM,
+        
+        /**
+         * Gray pixels of image
+         */
+        GRAYSCALE
+    }
+    
+    /**
+     * Enumeration of all available filters computed from neighbourhood of pixels
+     */
+    public static enum Filter
+    {
+        /**
+         * No filter is applied
+         */
+        NONE,
+        
+        /**
+         * Average of square neighbourhood of pixel
+         */
+        BLUR,
+        
+        /**
+         * Gaussian blur
+         */
+        GAUSSIAN_BLUR,
+        
+        /**
+         * Sharpening by unsharp mask
+         */
+        SHARPEN,
+        
+        /**
+         * Detection of edges
+         */
+        EDGES
+    }
+    
     /**
      * Reference to main window
      */
@@ -159,6 +262,51 @@ public class MainController
      */
     private Grayscale grayscaleEffect;
     
+    /**
+     * Automatic adjustment of tones
+     */
+    private AutoLevels autoLevels;
+    
+    /**
+     * Blur filter
+     */
+    private BoxBlur blur;
+    
+    /**
+     * Gaussian blur filter
+     */
+    private GaussianBlur gaussianBlur;
+    
+    /**
+     * Sharpen filter
+     */
+    private UnsharpMask sharpen;
+    
+    /**
+     * Edge detection filter
+     */
+    private SobelEdges edges;
+    
+    /**
+     * Actually selected filter
+     */
+    private MainController.Filter filter = MainController.Filter.NONE;
+    
+    /**
+     * Controller of exports of image into files
+     */
+    private final ExportController exports;
+    
+    /**
+     * History of changes of actually processed image
+     */
+    private History history;
+    
+    /**
+     * Tools which are actually displayed (tab is selected or tool is in its own window)
+     */
+    private final Set<MainController.Tool> shownTools;
+    
     /**
      * Creates new controller of main window
      * @param mainWindow Reference to main window
@@ -167,6 +315,14 @@ public class MainController
     {
         this.mainWindow = mainWindow;
         this.initialOpen = true;
+        this.shownTools = EnumSet.noneOf(MainController.Tool.class);
+        this.exports = new ExportController((int running, double progress) ->
+        {
+            Platform.runLater(() ->
+            {
+                this.mainWindow.setExportProgress(running, progress);
+            });
+        });
     }
     
     /**
@@ -228,7 +384,30 @@ public class MainController
             this.grayscaleChart = null;
         }
         
-        this.temperature = null;
+        if (Objects.nonNull(this.history))
+        {
+            try
+            {
+                this.history.close();
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(MainController.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            this.history = null;
+        }
+        
+        if (Objects.nonNull(this.temperature))
+        {
+            ThreadManager.stopOne(this.temperature.getHistogram());
+            this.temperature = null;
+        }
+        
+        if (Objects.nonNull(this.image) && this.image.getBitmap() instanceof ConcurrentBitmap)
+        {
+            ThreadManager.stopOne((ConcurrentBitmap)this.image.getBitmap());
+        }
+        
         this.redColorEffect = null;
         this.greenColorEffect = null;
         this.blueColorEffect = null;
@@ -236,6 +415,12 @@ public class MainController
         this.magentaColorEffect = null;
         this.yellowColorEffect = null;
         this.grayscaleEffect = null;
+        this.autoLevels = null;
+        this.blur = null;
+        this.gaussianBlur = null;
+        this.sharpen = null;
+        this.edges = null;
+        this.filter = MainController.Filter.NONE;
         
         System.gc();
     }
@@ -267,12 +452,13 @@ public class MainController
     {
         this.killUnnecessaryy();
         this.image = new ImageFile(stream);
+        this.history = new History(this.image.getBitmap(), Globals.HISTORY_MEMORY, Globals.HISTORY_ENTRIES);
         this.effects = ThreadManager.createEffectsController(this.image.getBitmap());
         
         this.mainWindow.setImage(this.image.getBitmap());
         
         this.redColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)px.getRed();},
+                new Binning(1f, 0f, 0f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -284,7 +470,7 @@ public class MainController
         this.mainWindow.setRedHistogram(this.redHistogram.getImage());
         
         this.greenColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)px.getGreen();},
+                new Binning(0f, 1f, 0f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -296,7 +482,7 @@ public class MainController
         this.mainWindow.setGreenHistogram(this.greenHistogram.getImage());
         
         this.blueColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)px.getBlue();},
+                new Binning(0f, 0f, 1f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -309,7 +495,7 @@ public class MainController
         
         
         this.cyanColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)Math.round((double)(px.getGreen() + px.getBlue()) / 2f);},
+                new Binning(0f, 0.5f, 0.5f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -321,7 +507,7 @@ public class MainController
         this.mainWindow.setCyanHistogram(this.cyanHistogram.getImage());
         
         this.magentaColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)Math.round((double)(px.getRed() + px.getBlue()) / 2f);},
+                new Binning(0.5f, 0f, 0.5f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -333,7 +519,7 @@ public class MainController
         this.mainWindow.setMagentaHistogram(this.magentaHistogram.getImage());
         
         this.yellowColorEffect = new ColorEffect(ThreadManager.createHistogram(
-                (Pixel px) -> {return (int)Math.round((double)(px.getRed() + px.getGreen()) / 2f);},
+                new Binning(0.5f, 0.5f, 0f, 0),
                 this.image.getBitmap(),
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -366,19 +552,142 @@ public class MainController
         
         this.zoom = new Zoom(this.image.getBitmap());
         this.mainWindow.setZoom(this.zoom);
+        this.effects.addPreviewChangedListener(this.zoom::setPreview);
         
         this.grayscaleEffect = new Grayscale();
         this.grayscaleChart = ThreadManager.createGrayscaleChart(this.image.getBitmap());
         this.mainWindow.setGrayscaleChart(this.grayscaleChart);
         this.effects.addEffect(this.grayscaleEffect);
         
+        this.autoLevels = new AutoLevels(this.image.getBitmap());
+        this.effects.addEffect(this.autoLevels);
+        
+        this.blur = new BoxBlur();
+        this.gaussianBlur = new GaussianBlur();
+        this.sharpen = new UnsharpMask();
+        this.sharpen.setSigma(Globals.FILTER_SHARPEN_SIGMA);
+        this.edges = new SobelEdges();
+        this.filter = MainController.Filter.NONE;
+        this.effects.addEffect(this.blur);
+        this.effects.addEffect(this.gaussianBlur);
+        this.effects.addEffect(this.sharpen);
+        this.effects.addEffect(this.edges);
+        
         this.image.getBitmap().setOriginal();
         if (this.initialOpen == false)
         {            
             this.mainWindow.disableMenu(false);
             this.mainWindow.resetValues();
         }
+        this.history.clear();
         this.initialOpen = false;
+        this.updateTools();
+    }
+    
+    /**
+     * Handles change of visibility of tool
+     * @param tool Tool which visibility has changed
+     * @param shown TRUE if tool is displayed, FALSE otherwise
+     */
+    public void toolShown(MainController.Tool tool, boolean shown)
+    {
+        if (shown == true)
+        {
+            this.shownTools.add(tool);
+        }
+        else
+        {
+            this.shownTools.remove(tool);
+        }
+        this.updateTools();
+    }
+    
+    /**
+     * Resumes computation of analysis displayed by any shown tool and suspends all other analysis
+     */
+    private void updateTools()
+    {
+        this.updateTool(this.redHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.RED);
+        this.updateTool(this.greenHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.GREEN);
+        this.updateTool(this.blueHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.BLUE);
+        this.updateTool(this.cyanHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.CYAN);
+        this.updateTool(this.magentaHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.MAGENTA);
+        this.updateTool(this.yellowHistogram, MainController.Tool.HISTOGRAM, MainController.Tool.YELLOW);
+        this.updateTool(this.brightness, MainController.Tool.BRIGHTNESS, MainController.Tool.CONTRAST);
+        if (Objects.nonNull(this.temperature))
+        {
+            this.updateTool(this.temperature.getHistogram(), MainController.Tool.TEMPERATURE);
+        }
+        this.updateTool(this.zoom, MainController.Tool.ZOOM);
+        this.updateTool(this.grayscaleChart, MainController.Tool.GRAYSCALE);
+    }
+    
+    /**
+     * Resumes or suspends computation of analysis
+     * @param analysis Analysis which computation will be resumed or suspended
+     * @param tools Tools which display analysis (analysis is computed if any of them is shown)
+     */
+    private void updateTool(Suspendable analysis, MainController.Tool... tools)
+    {
+        if (Objects.nonNull(analysis))
+        {
+            boolean shown = false;
+            for (MainController.Tool tool: tools)
+            {
+                shown = shown || this.shownTools.contains(tool);
+            }
+            if (shown == true)
+            {
+                analysis.resume();
+            }
+            else
+            {
+                analysis.suspend();
+            }
+        }
+    }
+    
+    /**
+     * Gets history of changes of actually processed image
+     * @return History of changes of image or NULL if there is no image
+     */
+    public History getHistory()
+    {
+        return this.history;
+    }
+    
+    /**
+     * Handles request to revert last change
+     */
+    public void undo()
+    {
+        if (Objects.nonNull(this.history))
+        {
+            this.history.undo();
+        }
+    }
+    
+    /**
+     * Handles request to perform last reverted change again
+     */
+    public void redo()
+    {
+        if (Objects.nonNull(this.history))
+        {
+            this.history.redo();
+        }
+    }
+    
+    /**
+     * Handles start and end of dragging of slider changing any effect
+     * @param dragging TRUE if slider is being dragged, FALSE otherwise
+     */
+    public void effectsPreview(boolean dragging)
+    {
+        if (Objects.nonNull(this.effects))
+        {
+            this.effects.setPreview(dragging);
+        }
     }
     
     /**
@@ -491,6 +800,46 @@ public class MainController
         this.grayscaleEffect.setValue(newValue);
     }
     
+    /**
+     * Handles change of automatic adjustment of tones
+     * @param mode New automatic adjustment
+     */
+    public void autoLevelsChanged(AutoLevels.Mode mode)
+    {
+        this.autoLevels.setMode(mode);
+    }
+    
+    /**
+     * Gets actually selected automatic adjustment of tones
+     * @return Actually selected automatic adjustment
+     */
+    public AutoLevels.Mode getAutoLevels()
+    {
+        return this.autoLevels.getMode();
+    }
+    
+    /**
+     * Handles change of filter computed from neighbourhood of pixels
+     * @param filter New filter
+     */
+    public void filterChanged(MainController.Filter filter)
+    {
+        this.filter = filter;
+        this.blur.setRadius((filter == MainController.Filter.BLUR) ? Globals.FILTER_BLUR_RADIUS : 0);
+        this.gaussianBlur.setSigma((filter == MainController.Filter.GAUSSIAN_BLUR) ? Globals.FILTER_GAUSSIAN_SIGMA : 0);
+        this.sharpen.setAmount((filter == MainController.Filter.SHARPEN) ? Globals.FILTER_SHARPEN_AMOUNT : 0);
+        this.edges.setValue((filter == MainController.Filter.EDGES) ? Globals.FILTER_EDGES : 0);
+    }
+    
+    /**
+     * Gets actually selected filter computed from neighbourhood of pixels
+     * @return Actually selected filter
+     */
+    public MainController.Filter getFilter()
+    {
+        return this.filter;
+    }
+    
     /**
      * Handles click on save button
      */
@@ -506,16 +855,6 @@ public class MainController
      */
     public void saveClicked(String path)
     {
-        File output = new File(path);
-        BufferedImage bufferedImage = SwingFXUtils.fromFXImage(this.image.getBitmap().toImage(), null);
-        String format = FilenameUtils.getExtension(path);
-        try
-        {
-            ImageIO.write(bufferedImage, format, output);
-        }
-        catch (IOException ex)
-        {
-            Logger.getLogger(MainController.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        this.exports.export(this.image.getBitmap(), path);
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class abstracting neighbourhood effects which change each colour channel independently on other channels
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public abstract class AbstractNeighbourhoodEffect implements NeighbourhoodEffect
+{
+    /**
+     * List of all listeners of effect change
+     */
+    private final List<Effect.EffectChangedListener> listeners;
+    
+    /**
+     * Creates new neighbourhood effect
+     */
+    public AbstractNeighbourhoodEffect()
+    {
+        this.listeners = Collections.synchronizedList(new ArrayList<>());
+    }
+    
+    @Override
+    public void addEffectChangedListener(Effect.EffectChangedListener listener)
+    {
+        this.listeners.add(listener);
+    }
+    
+    /**
+     * Informs all listeners about change of effect
+     */
+    protected void invokeChange()
+    {
+        for(Effect.EffectChangedListener listener: this.listeners)
+        {
+            listener.effectChanged();
+        }
+    }
+    
+    @Override
+    public Pixel apply(Pixel pixel)
+    {
+        return new Pixel(this.applyARGB(pixel.toARGB()));
+    }
+    
+    @Override
+    public int applyARGB(int argb)
+    {
+        return argb;
+    }
+    
+    @Override
+    public void apply(Neighbourhood region, int scale)
+    {
+        int[] temp = new int[region.getWidth() * region.getHeight()];
+        for (PointEffect.Channel channel: PointEffect.Channel.values())
+        {
+            this.apply(region.getChannel(channel), temp, region.getWidth(), region.getHeight(), scale);
+        }
+    }
+    
+    /**
+     * Applies effect on one colour channel of region of image
+     * @param channel Values of colour channel (result is written back, it does not need to be clamped)
+     * @param temp Array which can be used for intermediate results (at least as long as channel)
+     * @param width Width of region (in pixels)
+     * @param height Height of region (in pixels)
+     * @param scale Number of pixels of original image represented by one pixel of region in each direction
+     */
+    protected abstract void apply(int[] channel, int[] temp, int width, int height, int scale);
+}
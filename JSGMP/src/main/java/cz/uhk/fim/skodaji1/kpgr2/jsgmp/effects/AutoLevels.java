@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import java.util.Objects;
+
+/**
+ * Class representing automatic adjustment of tones derived from histogram of original image
+ * (histogram is computed in one pass through image and adjustment is applied as one lookup table per channel)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class AutoLevels extends AbstractEffect implements PointEffect
+{
+    /**
+     * Enumeration of all available automatic adjustments
+     */
+    public enum Mode
+    {
+        /**
+         * Image is not changed
+         */
+        NONE,
+        
+        /**
+         * Range of each colour channel is stretched independently
+         */
+        LEVELS,
+        
+        /**
+         * Range of intensity is stretched (same change of all colour channels)
+         */
+        CONTRAST,
+        
+        /**
+         * Values of each colour channel are distributed uniformly
+         */
+        EQUALISATION
+    }
+    
+    /**
+     * Index of bins of intensity in histogram
+     */
+    private static final int INTENSITY = 3;
+    
+    /**
+     * Identity lookup table
+     */
+    private static final int[] IDENTITY = AutoLevels.identity();
+    
+    /**
+     * Bitmap which histogram is used
+     */
+    private final Bitmap bitmap;
+    
+    /**
+     * Number of pixels of original image with each value of red, green, blue channel and intensity
+     */
+    private volatile int[][] bins;
+    
+    /**
+     * Actually selected adjustment
+     */
+    private volatile AutoLevels.Mode mode;
+    
+    /**
+     * Lookup tables of red, green and blue channel for actually selected adjustment
+     */
+    private volatile int[][] tables;
+    
+    /**
+     * Creates new automatic adjustment of tones
+     * @param bitmap Bitmap which original values of pixels will be used to compute histogram
+     */
+    public AutoLevels(Bitmap bitmap)
+    {
+        super(null);
+        this.bitmap = bitmap;
+        this.bins = null;
+        this.mode = AutoLevels.Mode.NONE;
+        this.tables = new int[][]{AutoLevels.IDENTITY, AutoLevels.IDENTITY, AutoLevels.IDENTITY};
+    }
+    
+    /**
+     * Creates identity lookup table
+     * @return Lookup table which does not change any value
+     */
+    private static int[] identity()
+    {
+        int[] reti = new int[PointEffect.TABLE_SIZE];
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            reti[v] = v;
+        }
+        return reti;
+    }
+    
+    /**
+     * Sets automatic adjustment
+     * (when histogram of original image has not been computed yet, it is computed on shared executor
+     * and adjustment is applied after it is done)
+     * @param mode New automatic adjustment
+     */
+    public void setMode(AutoLevels.Mode mode)
+    {
+        this.mode = mode;
+        if (mode == AutoLevels.Mode.NONE || Objects.nonNull(this.bins))
+        {
+            this.update(mode);
+        }
+        else
+        {
+            ThreadManager.getExecutor().execute(() -> {this.update(mode);});
+        }
+    }
+    
+    /**
+     * Computes lookup tables for adjustment and informs listeners about change
+     * (nothing happens if another adjustment has been selected in the meantime)
+     * @param mode Adjustment which lookup tables will be computed
+     */
+    private void update(AutoLevels.Mode mode)
+    {
+        int[][] computed = this.computeTables(mode);
+        synchronized (this)
+        {
+            if (this.mode != mode)
+            {
+                return;
+            }
+            this.tables = computed;
+        }
+        this.invokeChange();
+    }
+    
+    /**
+     * Gets actually selected automatic adjustment
+     * @return Actually selected automatic adjustment
+     */
+    public AutoLevels.Mode getMode()
+    {
+        return this.mode;
+    }
+    
+    /**
+     * Gets histogram of original image (it is computed when it is needed for the first time)
+     * @return Number of pixels with each value of red, green, blue channel and intensity
+     */
+    private synchronized int[][] getBins()
+    {
+        if (Objects.isNull(this.bins))
+        {
+            int width = this.bitmap.getWidth();
+            int[][] reti = new int[4][PointEffect.TABLE_SIZE];
+            int[] row = new int[width];
+            for (int y = 0; y < this.bitmap.getHeight(); y++)
+            {
+                this.bitmap.readOriginalRegion(0, y, width, 1, row, 0, width);
+                for (int argb: row)
+                {
+                    reti[0][Pixel.red(argb)]++;
+                    reti[1][Pixel.green(argb)]++;
+                    reti[2][Pixel.blue(argb)]++;
+                    reti[AutoLevels.INTENSITY][Globals.intensity(argb)]++;
+                }
+            }
+            this.bins = reti;
+        }
+        return this.bins;
+    }
+    
+    /**
+     * Computes lookup tables for adjustment
+     * @param mode Adjustment which lookup tables will be computed
+     * @return Lookup tables of red, green and blue channel
+     */
+    private int[][] computeTables(AutoLevels.Mode mode)
+    {
+        int[][] reti = new int[][]{AutoLevels.IDENTITY, AutoLevels.IDENTITY, AutoLevels.IDENTITY};
+        if (mode == AutoLevels.Mode.NONE)
+        {
+            return reti;
+        }
+        int[][] histogram = this.getBins();
+        if (mode == AutoLevels.Mode.CONTRAST)
+        {
+            int[] table = AutoLevels.stretch(AutoLevels.cumulate(histogram[AutoLevels.INTENSITY]));
+            reti = new int[][]{table, table, table};
+        }
+        else
+        {
+            for (int c = 0; c < reti.length; c++)
+            {
+                long[] cdf = AutoLevels.cumulate(histogram[c]);
+                reti[c] = (mode == AutoLevels.Mode.LEVELS) ? AutoLevels.stretch(cdf) : AutoLevels.equalise(cdf);
+            }
+        }
+        return reti;
+    }
+    
+    /**
+     * Computes cumulative distribution of values
+     * @param bins Number of pixels with each value
+     * @return Array where value at index v is number of pixels with value less or equal to v
+     */
+    private static long[] cumulate(int[] bins)
+    {
+        long[] reti = new long[bins.length];
+        long sum = 0;
+        for (int v = 0; v < bins.length; v++)
+        {
+            sum += bins[v];
+            reti[v] = sum;
+        }
+        return reti;
+    }
+    
+    /**
+     * Creates lookup table which stretches range of values to whole interval [0 255]
+     * (darkest and brightest values are clipped)
+     * @param cdf Cumulative distribution of values
+     * @return Lookup table stretching range of values
+     */
+    private static int[] stretch(long[] cdf)
+    {
+        long total = cdf[cdf.length - 1];
+        long clip = (long)Math.floor((double)total * Globals.AUTO_LEVELS_CLIP);
+        int low = 0;
+        while (low < cdf.length - 1 && cdf[low] <= clip)
+        {
+            low++;
+        }
+        int high = cdf.length - 1;
+        while (high > 0 && cdf[high - 1] >= total - clip)
+        {
+            high--;
+        }
+        if (high <= low)
+        {
+            return AutoLevels.IDENTITY;
+        }
+        int[] reti = new int[PointEffect.TABLE_SIZE];
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            int value = (int)Math.round((double)(v - low) * 255f / (double)(high - low));
+            if (value < 0) value = 0; if (value > 255) value = 255;
+            reti[v] = value;
+        }
+        return reti;
+    }
+    
+    /**
+     * Creates lookup table which distributes values uniformly
+     * @param cdf Cumulative distribution of values
+     * @return Lookup table equalising histogram
+     */
+    private static int[] equalise(long[] cdf)
+    {
+        long total = cdf[cdf.length - 1];
+        long min = 0;
+        for (int v = 0; v < cdf.length && min == 0; v++)
+        {
+            min = cdf[v];
+        }
+        if (total == min)
+        {
+            return AutoLevels.IDENTITY;
+        }
+        int[] reti = new int[PointEffect.TABLE_SIZE];
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            reti[v] = (int)Math.round((double)Math.max(cdf[v] - min, 0) * 255f / (double)(total - min));
+        }
+        return reti;
+    }
+
+    @Override
+    public int[] getLookupTable(PointEffect.Channel channel)
+    {
+        return this.tables[channel.ordinal()];
+    }
+
+    @Override
+    public int applyARGB(int argb)
+    {
+        int[][] t = this.tables;
+        return Pixel.argb(
+                t[0][Pixel.red(argb)],
+                t[1][Pixel.green(argb)],
+                t[2][Pixel.blue(argb)],
+                Pixel.alpha(argb)
+        );
+    }
+
+    @Override
+    public Pixel apply(Pixel pixel)
+    {
+        return new Pixel(this.applyARGB(pixel.toARGB()));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Class representing box blur (average of square neighbourhood of pixel)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class BoxBlur extends AbstractNeighbourhoodEffect
+{
+    /**
+     * Radius of box (in pixels)
+     */
+    private int radius = 0;
+    
+    /**
+     * Sets radius of box
+     * @param radius New radius of box (in pixels)
+     */
+    public void setRadius(int radius)
+    {
+        this.radius = Math.max(radius, 0);
+        this.invokeChange();
+    }
+    
+    @Override
+    public int getRadius()
+    {
+        return this.radius;
+    }
+
+    @Override
+    protected void apply(int[] channel, int[] temp, int width, int height, int scale)
+    {
+        SeparableKernel.boxBlur(channel, temp, width, height, Math.round((float)this.radius / (float)scale));
+    }
+}
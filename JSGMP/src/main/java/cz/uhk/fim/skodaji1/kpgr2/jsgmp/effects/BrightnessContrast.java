@@ -17,8 +17,12 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ConcurrentBitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Binning;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap.BitmapChangedActionListener;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
@@ -28,10 +32,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javafx.application.Platform;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelWriter;
@@ -42,13 +45,8 @@ import javafx.scene.paint.Color;
  * Class which handles changing of brightness
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class BrightnessContrast implements Effect, Threadable
+public class BrightnessContrast implements PointEffect, Threadable, Suspendable
 {
-    /**
-     * Counter of created brightness/contrast effects
-     */
-    private static long counter = 0;
-    
     /**
      * Size of grid in chart (in pixels)
      */
@@ -64,11 +62,6 @@ public class BrightnessContrast implements Effect, Threadable
      */
     private static final Pixel CHART_COLOR = new Pixel((short)255, (short)255, (short)255);
     
-    /**
-     * Sleep time between checking for refreshing chart (in miliseconds)
-     */
-    private static final int SLEEP = 200;
-    
     /**
      * Histogram of brightness
      */
@@ -110,19 +103,14 @@ public class BrightnessContrast implements Effect, Threadable
     private double contrast = 1f;
         
     /**
-     * Thread which handles update of chart
+     * Lookup table for actual brightness and contrast (same for all colour channels)
      */
-    private final Thread thread;
-    
-    /**
-     * Flag, whether thread is running
-     */
-    private boolean running = false;
-    
+    private volatile int[] table;
+        
     /**
-     * Flag, whether chart should be updated
+     * Task which handles update of chart
      */
-    private boolean update = false;
+    private final CoalescingTask task;
     
     /**
      * Histogram of contrast
@@ -134,6 +122,11 @@ public class BrightnessContrast implements Effect, Threadable
      */
     private final List<Effect.EffectChangedListener> listeners;
     
+    /**
+     * Flag, whether histograms and chart are not displayed and they are not computed
+     */
+    private volatile boolean suspended = true;
+    
     /**
      * Creates new handler of brightness effect
      * @param bitmap Bitmap which brightness will be handled
@@ -141,9 +134,7 @@ public class BrightnessContrast implements Effect, Threadable
     public BrightnessContrast(Bitmap bitmap)
     {
         this.bitmap = bitmap;
-        this.brightnessHistogram = ThreadManager.createHistogram((Pixel px) -> {
-                    return (int)Math.round(BrightnessContrast.R_COEFF * px.getRed() + BrightnessContrast.G_COEFF * px.getGreen() + BrightnessContrast.B_COEFF * px.getBlue());
-                },
+        this.brightnessHistogram = ThreadManager.createHistogram(new Binning(BrightnessContrast.R_COEFF, BrightnessContrast.G_COEFF, BrightnessContrast.B_COEFF, 0),
                 this.bitmap,
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -151,11 +142,11 @@ public class BrightnessContrast implements Effect, Threadable
                 Color.rgb(255, 238, 179),
                 256
         );
-        this.contrastHistogram = ThreadManager.createHistogram((Pixel px) ->
+        this.contrastHistogram = ThreadManager.createHistogram((int argb) ->
         {
             int delta = BrightnessContrast.this.bitmap.getMaxIntensity() - BrightnessContrast.this.bitmap.getMinIntensity();
             double step = 255f / (double)delta;
-            int intensity = Globals.INTENSITY.apply(px);
+            int intensity = Globals.intensity(argb);
             return (int)Math.round((double)intensity * step);
         },
                 this.bitmap,
@@ -167,11 +158,25 @@ public class BrightnessContrast implements Effect, Threadable
                 true
         );
         this.chart = ThreadManager.createBitmap(Globals.HISTOGRAM_WIDTH, Globals.HISTOGRAM_HEIGHT);
-        this.thread = new Thread(this, "JSGMP:BrightnessContrast-" + BrightnessContrast.counter);
-        BrightnessContrast.counter++;
+        this.task = ThreadManager.createTask(this);
         this.listeners = Collections.synchronizedList(new ArrayList<>());
+        this.table = this.computeTable();
     }    
     
+    /**
+     * Creates new brightness/contrast effect without histograms and chart (usable without graphical interface)
+     */
+    public BrightnessContrast()
+    {
+        this.bitmap = null;
+        this.brightnessHistogram = null;
+        this.contrastHistogram = null;
+        this.chart = null;
+        this.task = null;
+        this.listeners = Collections.synchronizedList(new ArrayList<>());
+        this.table = this.computeTable();
+    }
+    
     /**
      * Gets histogram of brightness
      * @return Image containing histogram of brightness
@@ -206,7 +211,8 @@ public class BrightnessContrast implements Effect, Threadable
     public void setBrightness(int brightness)
     {
         this.brightness = brightness;
-        this.update = true;
+        this.table = this.computeTable();
+        this.requestChart();
         this.invokeChange();
     }
     
@@ -217,10 +223,48 @@ public class BrightnessContrast implements Effect, Threadable
     public void setContrast(double contrast)
     {
         this.contrast = contrast;
-        this.update = true;
+        this.table = this.computeTable();
+        this.requestChart();
         this.invokeChange();
     }
     
+    /**
+     * Requests redraw of chart (if effect has any)
+     */
+    private void requestChart()
+    {
+        if (Objects.nonNull(this.task) && this.suspended == false)
+        {
+            this.task.request();
+        }
+    }
+
+    @Override
+    public void suspend()
+    {
+        this.suspended = true;
+        if (Objects.nonNull(this.brightnessHistogram))
+        {
+            this.brightnessHistogram.suspend();
+            this.contrastHistogram.suspend();
+        }
+    }
+
+    @Override
+    public void resume()
+    {
+        if (this.suspended == true)
+        {
+            this.suspended = false;
+            if (Objects.nonNull(this.brightnessHistogram))
+            {
+                this.brightnessHistogram.resume();
+                this.contrastHistogram.resume();
+            }
+            this.requestChart();
+        }
+    }
+    
     /**
      * Computes value of subpixel
      * @param input Subpixel which value will be computed
@@ -234,28 +278,61 @@ public class BrightnessContrast implements Effect, Threadable
         return reti;
     }
     
+    /**
+     * Computes lookup table for actual brightness and contrast (same for all colour channels)
+     * @return Lookup table of brightness and contrast
+     */
+    private int[] computeTable()
+    {
+        int[] reti = new int[PointEffect.TABLE_SIZE];
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            reti[v] = this.computeValue((short)v);
+        }
+        return reti;
+    }
+
+    @Override
+    public int[] getLookupTable(PointEffect.Channel channel)
+    {
+        return this.table;
+    }
+
+    @Override
+    public int applyARGB(int argb)
+    {
+        int[] t = this.table;
+        return Pixel.argb(t[Pixel.red(argb)], t[Pixel.green(argb)], t[Pixel.blue(argb)], Pixel.alpha(argb));
+    }
+    
     @Override
     public Pixel apply(Pixel pixel)
     {
-        return new Pixel(
-                this.computeValue(pixel.getRed()),
-                this.computeValue(pixel.getGreen()),
-                this.computeValue(pixel.getBlue()),
-                pixel.getAlpha()
-        );
+        return new Pixel(this.applyARGB(pixel.toARGB()));
     }
 
     @Override
     public void start()
     {
-        this.running = true;
-        this.thread.start();
+        this.requestChart();
     }
 
     @Override
     public void stop()
     {
-        this.running = false;
+        if (Objects.nonNull(this.task))
+        {
+            this.task.cancel();
+        }
+        if (Objects.nonNull(this.brightnessHistogram))
+        {
+            ThreadManager.stopOne(this.brightnessHistogram);
+            ThreadManager.stopOne(this.contrastHistogram);
+        }
+        if (this.chart instanceof ConcurrentBitmap)
+        {
+            ThreadManager.stopOne((ConcurrentBitmap)this.chart);
+        }
     }
 
     /**
@@ -263,90 +340,73 @@ public class BrightnessContrast implements Effect, Threadable
      */
     private void drawChart()
     {
-        Runnable task = () -> {
-            Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-            int centerX = (int)Math.round((double)this.chart.getWidth() / 2f);
-            int centerY = (int)Math.round((double)this.chart.getHeight() / 2f);
-            int deltaX = centerX % BrightnessContrast.CHART_GRID;
-            int deltaY = centerY % BrightnessContrast.CHART_GRID;
-            // Draw background with grid
-            for (int y = 0; y < this.chart.getHeight(); y++)
-            {
-                for (int x = 0; x < this.chart.getWidth(); x++)
-                {
-                    if ((x - deltaX) % BrightnessContrast.CHART_GRID == 0 || (y - deltaY) % BrightnessContrast.CHART_GRID == 0)
-                    {
-                        transaction.setPixel(x, y, new Pixel(Globals.HISTOGRAM_CLEAR.getRed(), Globals.HISTOGRAM_CLEAR.getGreen(), Globals.HISTOGRAM_CLEAR.getBlue(), (short)0));      
-                    }
-                    else
-                    {
-                        transaction.setPixel(x, y, Globals.HISTOGRAM_CLEAR);
-                    }
-                }
-            }
-            
-            // Draw axis
-            for (int y = 0; y < this.chart.getHeight(); y++)
-            {
-                transaction.setPixel(this.chart.getWidth() / 2, y, BrightnessContrast.CHART_AXIS);
-            }
-            for (int x = 0; x < this.chart.getWidth(); x++)
-            {
-                transaction.setPixel(x, this.chart.getHeight() / 2, BrightnessContrast.CHART_AXIS);
-            }
+        Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
+        int centerX = (int)Math.round((double)this.chart.getWidth() / 2f);
+        int centerY = (int)Math.round((double)this.chart.getHeight() / 2f);
+        int deltaX = centerX % BrightnessContrast.CHART_GRID;
+        int deltaY = centerY % BrightnessContrast.CHART_GRID;
+        // Draw background with grid
+        int clear = Globals.HISTOGRAM_CLEAR.toARGB();
+        int grid = clear & 0x00FFFFFF;
+        transaction.fillRectangle(0, 0, this.chart.getWidth(), this.chart.getHeight(), clear);
+        for (int x = deltaX; x < this.chart.getWidth(); x += BrightnessContrast.CHART_GRID)
+        {
+            transaction.fillRectangle(x, 0, 1, this.chart.getHeight(), grid);
+        }
+        for (int y = deltaY; y < this.chart.getHeight(); y += BrightnessContrast.CHART_GRID)
+        {
+            transaction.fillRectangle(0, y, this.chart.getWidth(), 1, grid);
+        }
+        
+        // Draw axis
+        transaction.fillRectangle(this.chart.getWidth() / 2, 0, 1, this.chart.getHeight(), BrightnessContrast.CHART_AXIS.toARGB());
+        transaction.fillRectangle(0, this.chart.getHeight() / 2, this.chart.getWidth(), 1, BrightnessContrast.CHART_AXIS.toARGB());
 
-            final Function<Integer, Integer> translateX = (inX) -> 
-            {
-                return inX + this.chart.getWidth() / 2;
-            };
+        final Function<Integer, Integer> translateX = (inX) -> 
+        {
+            return inX + this.chart.getWidth() / 2;
+        };
 
-            final Function<Integer, Integer> translateY = (inY) ->
-            {
-                return this.chart.getHeight() / 2 - inY;
-            };
+        final Function<Integer, Integer> translateY = (inY) ->
+        {
+            return this.chart.getHeight() / 2 - inY;
+        };
 
-            // Draw chart
-            int startX = this.chart.getHeight() / (-2);
-            int startY = startX;
-            int endX = this.chart.getHeight() / 2;
-            int endY = endX;
-            startX = (int)Math.round((double)startX * this.contrast);
-            endX = (int)Math.round((double)endX * this.contrast);
-            startX = startX + this.brightness;
-            endX = endX + this.brightness;
-            startX = translateX.apply(startX);
-            startY = translateY.apply(startY);
-            endX = translateX.apply(endX);
-            endY = translateY.apply(endY);
-            int dX = Math.abs(endX - startX);
-            int dY = Math.abs(endY - startY);
-            int counter = 0;
-            if (dX > dY)
+        // Draw chart
+        int startX = this.chart.getHeight() / (-2);
+        int startY = startX;
+        int endX = this.chart.getHeight() / 2;
+        int endY = endX;
+        startX = (int)Math.round((double)startX * this.contrast);
+        endX = (int)Math.round((double)endX * this.contrast);
+        startX = startX + this.brightness;
+        endX = endX + this.brightness;
+        startX = translateX.apply(startX);
+        startY = translateY.apply(startY);
+        endX = translateX.apply(endX);
+        endY = translateY.apply(endY);
+        int dX = Math.abs(endX - startX);
+        int dY = Math.abs(endY - startY);
+        int counter = 0;
+        if (dX > dY)
+        {
+            for (int x = startX; x <= endX; x++)
             {
-                for (int x = startX; x <= endX; x++)
-                {
-                    int y = this.interpolateNumber(startY, endY, counter, dX);
-                    transaction.setPixel(x, y, BrightnessContrast.CHART_COLOR);
-                    transaction.setPixel(x + 1, y, BrightnessContrast.CHART_COLOR);
-                    transaction.setPixel(x - 1, y, BrightnessContrast.CHART_COLOR);
-                    counter++;
-                }
+                int y = this.interpolateNumber(startY, endY, counter, dX);
+                transaction.fillRectangle(x - 1, y, 3, 1, BrightnessContrast.CHART_COLOR.toARGB());
+                counter++;
             }
-            else
+        }
+        else
+        {
+            for (int y = startY; y >= endY; y--)
             {
-                for (int y = startY; y >= endY; y--)
-                {
-                    int x = this.interpolateNumber(startX, endX, counter, dY);
-                    transaction.setPixel(x, y, BrightnessContrast.CHART_COLOR);
-                    transaction.setPixel(x + 1, y, BrightnessContrast.CHART_COLOR);
-                    transaction.setPixel(x - 1, y, BrightnessContrast.CHART_COLOR);
-                    counter++;
-                }
+                int x = this.interpolateNumber(startX, endX, counter, dY);
+                transaction.fillRectangle(x - 1, y, 3, 1, BrightnessContrast.CHART_COLOR.toARGB());
+                counter++;
             }
-            this.chart.processTransaction(transaction);
-        };
-        Thread t = new Thread(task, "JSGMP:DrawBrightnessContrastChart");
-        t.start();
+        }
+        this.chart.processTransaction(transaction);
     }
     
     /**
@@ -368,22 +428,6 @@ public class BrightnessContrast implements Effect, Threadable
     public void run()
     {
         this.drawChart();
-        while(this.running == true)
-        {
-            if (this.update == true)
-            {
-                this.update = false;
-                this.drawChart();
-            }
-            try
-            {
-                Thread.sleep(BrightnessContrast.SLEEP);
-            }
-            catch (InterruptedException ex) 
-            {
-                Logger.getLogger(BrightnessContrast.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
     }
 
     @Override
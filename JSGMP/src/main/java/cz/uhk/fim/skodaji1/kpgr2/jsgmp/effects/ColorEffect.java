@@ -24,7 +24,7 @@ import cz.uhk.fim.skodaji1.kpgr2.jsgmp.view.Histogram;
  * Class representing coloring effect
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class ColorEffect extends AbstractEffect
+public class ColorEffect extends AbstractEffect implements PointEffect
 {
     /**
      * Flag, whether red color channel should be changed
@@ -46,6 +46,11 @@ public class ColorEffect extends AbstractEffect
      */
     private int value;
     
+    /**
+     * Lookup tables of red, green and blue channel for actual value of effect
+     */
+    private volatile int[][] tables;
+    
     /**
      * Creates new coloring effect
      * @param histogram Histogram of effect
@@ -60,6 +65,18 @@ public class ColorEffect extends AbstractEffect
         this.green = green;
         this.blue = blue;
         this.value = 0;
+        this.tables = this.computeTables();
+    }
+    
+    /**
+     * Creates new coloring effect without histogram (usable without graphical interface)
+     * @param red Flag, whether red color channel should be changed
+     * @param green Flag, whether green color channel should be changed
+     * @param blue Flag, whether blue color channel should be changed
+     */
+    public ColorEffect(boolean red, boolean green, boolean blue)
+    {
+        this(null, red, green, blue);
     }
     
     /**
@@ -69,26 +86,53 @@ public class ColorEffect extends AbstractEffect
     public void setValue(int newValue)
     {
         this.value = newValue;
+        this.tables = this.computeTables();
         this.invokeChange();
     }
+    
+    /**
+     * Computes lookup tables for actual value of effect
+     * @return Lookup tables of red, green and blue channel
+     */
+    private int[][] computeTables()
+    {
+        int[][] reti = new int[3][PointEffect.TABLE_SIZE];
+        boolean[] changed = {this.red, this.green, this.blue};
+        for (int c = 0; c < 3; c++)
+        {
+            for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+            {
+                int val = v;
+                if (changed[c] == true) val = val + this.value;
+                if (val < 0) val = 0; if (val > 255) val = 255;
+                reti[c][v] = val;
+            }
+        }
+        return reti;
+    }
+
+    @Override
+    public int[] getLookupTable(PointEffect.Channel channel)
+    {
+        return this.tables[channel.ordinal()];
+    }
+
+    @Override
+    public int applyARGB(int argb)
+    {
+        int[][] t = this.tables;
+        return Pixel.argb(
+                t[0][Pixel.red(argb)],
+                t[1][Pixel.green(argb)],
+                t[2][Pixel.blue(argb)],
+                Pixel.alpha(argb)
+        );
+    }
 
     @Override
     public Pixel apply(Pixel pixel)
     {
-        int r = pixel.getRed();
-        int g = pixel.getGreen();
-        int b = pixel.getBlue();
-        int a = pixel.getAlpha();
-        
-        if (this.red == true) r = r + this.value;
-        if (this.green == true) g = g + this.value;
-        if (this.blue == true) b = b + this.value;
-        
-        if (r < 0) r = 0; if (r > 255) r = 255;
-        if (g < 0) g = 0; if (g > 255) g = 255;
-        if (b < 0) b = 0; if (b > 255) b = 255;
-        
-        return new Pixel((short)r, (short)g, (short)b, (short)a);
+        return new Pixel(this.applyARGB(pixel.toARGB()));
     }
     
 }
@@ -49,4 +49,11 @@ public interface Effect
      */
     public abstract Pixel apply(Pixel pixel);
     
+    /**
+     * Applies effect on image without creating any pixel object
+     * @param argb Integer containing red, green, blue and alpha values of pixel
+     * @return Integer containing red, green, blue and alpha values of pixel with applied effect
+     */
+    public abstract int applyARGB(int argb);
+    
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Kernels;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.PixelKernels;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.TiledBitmap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class representing compiled chain of effects.
+ * Each effect is applied on original value of pixel and changes made by all effects are summed up;
+ * changes made by point effects are folded into one lookup table per colour channel,
+ * other effects (which mix colour channels) are applied pixel by pixel afterwards
+ * and changes made by neighbourhood effects are added at last
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class EffectChain
+{
+    /**
+     * SIMD kernels used to apply chain with grayscale effect on sequences of pixels (NULL if they are not available)
+     * (chains of point effects only are applied by scalar table lookups which are faster than vector gathers)
+     */
+    private static final PixelKernels KERNELS = Kernels.get();
+
+    /**
+     * Summed changes of red channel made by all point effects (indexed by original value)
+     */
+    private final int[] red;
+
+    /**
+     * Summed changes of green channel made by all point effects (indexed by original value)
+     */
+    private final int[] green;
+
+    /**
+     * Summed changes of blue channel made by all point effects (indexed by original value)
+     */
+    private final int[] blue;
+
+    /**
+     * Effects which cannot be expressed by lookup table
+     */
+    private final Effect[] mixing;
+
+    /**
+     * Grayscale effect if it is the only effect which cannot be expressed by lookup table (NULL otherwise)
+     */
+    private final Grayscale grayscale;
+
+    /**
+     * Effects which need surrounding pixels to compute value of pixel
+     */
+    private final NeighbourhoodEffect[] neighbourhood;
+
+    /**
+     * Radius of neighbourhood needed by all neighbourhood effects (in pixels)
+     */
+    private final int radius;
+
+    /**
+     * Creates new compiled chain of effects
+     * @param red Summed changes of red channel made by all point effects
+     * @param green Summed changes of green channel made by all point effects
+     * @param blue Summed changes of blue channel made by all point effects
+     * @param mixing Effects which cannot be expressed by lookup table
+     * @param neighbourhood Effects which need surrounding pixels to compute value of pixel
+     */
+    private EffectChain(int[] red, int[] green, int[] blue, Effect[] mixing, NeighbourhoodEffect[] neighbourhood)
+    {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.mixing = mixing;
+        this.grayscale = (mixing.length == 1 && mixing[0] instanceof Grayscale) ? (Grayscale)mixing[0] : null;
+        this.neighbourhood = neighbourhood;
+        int max = 0;
+        for (NeighbourhoodEffect e: neighbourhood)
+        {
+            max = Math.max(max, e.getRadius());
+        }
+        this.radius = max;
+    }
+
+    /**
+     * Compiles effects into chain
+     * @param effects Effects which will be compiled
+     * @return Compiled chain of effects
+     */
+    public static EffectChain compile(List<? extends Effect> effects)
+    {
+        int[] red = new int[PointEffect.TABLE_SIZE];
+        int[] green = new int[PointEffect.TABLE_SIZE];
+        int[] blue = new int[PointEffect.TABLE_SIZE];
+        List<Effect> mixing = new ArrayList<>();
+        List<NeighbourhoodEffect> neighbourhood = new ArrayList<>();
+        for (Effect e: effects)
+        {
+            if (e instanceof Grayscale && ((Grayscale)e).getValue() == 0)
+            {
+                continue;
+            }
+            if (e instanceof NeighbourhoodEffect)
+            {
+                NeighbourhoodEffect ne = (NeighbourhoodEffect)e;
+                if (ne.getRadius() > 0)
+                {
+                    neighbourhood.add(ne);
+                }
+            }
+            else if (e instanceof PointEffect)
+            {
+                PointEffect pe = (PointEffect)e;
+                EffectChain.addDelta(red, pe.getLookupTable(PointEffect.Channel.RED));
+                EffectChain.addDelta(green, pe.getLookupTable(PointEffect.Channel.GREEN));
+                EffectChain.addDelta(blue, pe.getLookupTable(PointEffect.Channel.BLUE));
+            }
+            else
+            {
+                mixing.add(e);
+            }
+        }
+        return new EffectChain(red, green, blue, mixing.toArray(new Effect[0]), neighbourhood.toArray(new NeighbourhoodEffect[0]));
+    }
+
+    /**
+     * Gets radius of neighbourhood needed to compute one pixel
+     * @return Radius of neighbourhood needed by all neighbourhood effects (in pixels), 0 if there is none
+     */
+    public int getRadius()
+    {
+        return this.radius;
+    }
+
+    /**
+     * Adds changes described by lookup table to summed changes
+     * @param delta Summed changes of one colour channel
+     * @param table Lookup table of one colour channel
+     */
+    private static void addDelta(int[] delta, int[] table)
+    {
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            delta[v] += table[v] - v;
+        }
+    }
+
+    /**
+     * Clamps value of colour channel into interval [0 255]
+     * @param value Value which will be clamped
+     * @return Clamped value
+     */
+    private static int clamp(int value)
+    {
+        if (value < 0) return 0;
+        if (value > 255) return 255;
+        return value;
+    }
+
+    /**
+     * Applies chain of effects on one pixel
+     * @param argb Integer containing original red, green, blue and alpha values of pixel
+     * @return Integer containing red, green, blue and alpha values of pixel after all effects has been applied
+     */
+    public int apply(int argb)
+    {
+        int r = Pixel.red(argb);
+        int g = Pixel.green(argb);
+        int b = Pixel.blue(argb);
+        int a = Pixel.alpha(argb);
+        int nr = r + this.red[r];
+        int ng = g + this.green[g];
+        int nb = b + this.blue[b];
+        int na = a;
+        for (Effect e: this.mixing)
+        {
+            int applied = e.applyARGB(argb);
+            nr += Pixel.red(applied) - r;
+            ng += Pixel.green(applied) - g;
+            nb += Pixel.blue(applied) - b;
+            na += Pixel.alpha(applied) - a;
+        }
+        return Pixel.argb(EffectChain.clamp(nr), EffectChain.clamp(ng), EffectChain.clamp(nb), EffectChain.clamp(na));
+    }
+
+    /**
+     * Applies chain of effects on sequence of pixels
+     * @param src Array with original ARGB values of pixels
+     * @param srcOffset Index of first pixel in source array
+     * @param dst Array into which results will be stored
+     * @param dstOffset Index in destination array where result for first pixel will be stored
+     * @param length Number of processed pixels
+     */
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length)
+    {
+        if (Objects.nonNull(EffectChain.KERNELS) && Objects.nonNull(this.grayscale))
+        {
+            EffectChain.KERNELS.applyDeltas(src, srcOffset, dst, dstOffset, length, this.red, this.green, this.blue, this.grayscale.getValue());
+        }
+        else if (this.mixing.length == 0)
+        {
+            for (int i = 0; i < length; i++)
+            {
+                int argb = src[srcOffset + i];
+                int r = Pixel.red(argb);
+                int g = Pixel.green(argb);
+                int b = Pixel.blue(argb);
+                dst[dstOffset + i] = (argb & 0xFF000000)
+                        | (EffectChain.clamp(r + this.red[r]) << 16)
+                        | (EffectChain.clamp(g + this.green[g]) << 8)
+                        | EffectChain.clamp(b + this.blue[b]);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < length; i++)
+            {
+                dst[dstOffset + i] = this.apply(src[srcOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * Applies chain of effects on rectangular region of image surrounded by pixels needed by neighbourhood effects
+     * @param src Array with original ARGB values of region enlarged by radius of chain on each side (or up to edge of image)
+     * @param srcWidth Width of enlarged region (in pixels)
+     * @param srcHeight Height of enlarged region (in pixels)
+     * @param left Horizontal position of region in enlarged region
+     * @param top Vertical position of region in enlarged region
+     * @param width Width of region (in pixels)
+     * @param height Height of region (in pixels)
+     * @param dst Array into which results will be stored
+     * @param dstOffset Index in destination array where result for top left pixel of region will be stored
+     * @param dstStride Number of items between beginnings of two consecutive rows in destination array
+     * @param scale Number of pixels of original image represented by one pixel of region in each direction
+     */
+    public void apply(int[] src, int srcWidth, int srcHeight, int left, int top, int width, int height, int[] dst, int dstOffset, int dstStride, int scale)
+    {
+        for (int row = 0; row < height; row++)
+        {
+            this.apply(src, (top + row) * srcWidth + left, dst, dstOffset + row * dstStride, width);
+        }
+        if (this.neighbourhood.length == 0)
+        {
+            return;
+        }
+        Neighbourhood original = Neighbourhood.read(src, 0, srcWidth, srcWidth, srcHeight);
+        PointEffect.Channel[] channels = PointEffect.Channel.values();
+        int[][] deltas = new int[channels.length][width * height];
+        for (NeighbourhoodEffect e: this.neighbourhood)
+        {
+            Neighbourhood applied = original.copy();
+            e.apply(applied, scale);
+            for (int c = 0; c < channels.length; c++)
+            {
+                int[] before = original.getChannel(channels[c]);
+                int[] after = applied.getChannel(channels[c]);
+                int[] delta = deltas[c];
+                for (int row = 0; row < height; row++)
+                {
+                    int from = (top + row) * srcWidth + left;
+                    for (int x = 0; x < width; x++)
+                    {
+                        delta[row * width + x] += after[from + x] - before[from + x];
+                    }
+                }
+            }
+        }
+        for (int row = 0; row < height; row++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int index = dstOffset + row * dstStride + x;
+                int argb = dst[index];
+                int i = row * width + x;
+                dst[index] = (argb & 0xFF000000)
+                        | (EffectChain.clamp(Pixel.red(argb) + deltas[0][i]) << 16)
+                        | (EffectChain.clamp(Pixel.green(argb) + deltas[1][i]) << 8)
+                        | EffectChain.clamp(Pixel.blue(argb) + deltas[2][i]);
+            }
+        }
+    }
+
+    /**
+     * Applies chain of effects on tiled bitmap tile by tile
+     * (only limited number of tiles is held in memory at once)
+     * @param source Tiled bitmap with original values of pixels
+     * @param target Tiled bitmap into which results will be written
+     *               (can be same as source only if chain contains no neighbourhood effect)
+     */
+    public void apply(TiledBitmap source, TiledBitmap target)
+    {
+        if (source.getWidth() != target.getWidth() || source.getHeight() != target.getHeight())
+        {
+            throw new IllegalArgumentException("Source and target bitmaps must have same dimensions");
+        }
+        if (this.radius > 0 && source == target)
+        {
+            throw new IllegalArgumentException("Neighbourhood effects need different source and target bitmaps");
+        }
+        int size = source.getTileSize();
+        int[] buffer = new int[size * size];
+        int[] halo = (this.radius > 0) ? new int[(size + 2 * this.radius) * (size + 2 * this.radius)] : null;
+        source.forEachTile((int x, int y, int width, int height, int[] pixels, int stride) ->
+        {
+            if (Objects.nonNull(halo))
+            {
+                int left = Math.max(x - this.radius, 0);
+                int top = Math.max(y - this.radius, 0);
+                int haloWidth = Math.min(x + width + this.radius, source.getWidth()) - left;
+                int haloHeight = Math.min(y + height + this.radius, source.getHeight()) - top;
+                source.readRegion(left, top, haloWidth, haloHeight, halo, 0, haloWidth);
+                this.apply(halo, haloWidth, haloHeight, x - left, y - top, width, height, buffer, 0, width, 1);
+            }
+            else
+            {
+                for (int row = 0; row < height; row++)
+                {
+                    this.apply(pixels, row * stride, buffer, row * width, width);
+                }
+            }
+            if (source == target)
+            {
+                for (int row = 0; row < height; row++)
+                {
+                    System.arraycopy(buffer, row * width, pixels, row * stride, width);
+                }
+                return true;
+            }
+            target.writeRegion(x, y, width, height, buffer, 0, width);
+            return false;
+        });
+    }
+}
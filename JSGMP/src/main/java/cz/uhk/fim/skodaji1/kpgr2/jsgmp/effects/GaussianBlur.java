@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Class representing gaussian blur (approximated by repeated box blur)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class GaussianBlur extends AbstractNeighbourhoodEffect
+{
+    /**
+     * Standard deviation of blur (in pixels)
+     */
+    private double sigma = 0f;
+    
+    /**
+     * Sets standard deviation of blur
+     * @param sigma New standard deviation of blur (in pixels)
+     */
+    public void setSigma(double sigma)
+    {
+        this.sigma = Math.max(sigma, 0f);
+        this.invokeChange();
+    }
+    
+    /**
+     * Gets radius of neighbourhood needed by gaussian blur
+     * @param sigma Standard deviation of blur (in pixels)
+     * @return Sum of radii of all box blurs which approximate gaussian blur
+     */
+    static int getRadius(double sigma)
+    {
+        int reti = 0;
+        for (int radius: SeparableKernel.gaussianRadii(sigma))
+        {
+            reti += radius;
+        }
+        return reti;
+    }
+    
+    @Override
+    public int getRadius()
+    {
+        return GaussianBlur.getRadius(this.sigma);
+    }
+
+    @Override
+    protected void apply(int[] channel, int[] temp, int width, int height, int scale)
+    {
+        SeparableKernel.gaussianBlur(channel, temp, width, height, SeparableKernel.gaussianRadii(this.sigma / scale));
+    }
+}
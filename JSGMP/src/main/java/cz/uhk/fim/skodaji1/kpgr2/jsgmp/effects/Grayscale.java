@@ -56,6 +56,15 @@ public class Grayscale implements Effect{
         this.invokeChange();
     }
     
+    /**
+     * Gets actually set value of effect
+     * @return Percentage of grayscale [0 100]
+     */
+    public double getValue()
+    {
+        return this.value;
+    }
+    
     /**
      * Applies effect on one color value
      * @param start Starting color value
@@ -90,16 +99,21 @@ public class Grayscale implements Effect{
     @Override
     public Pixel apply(Pixel pixel)
     {
-        short r = pixel.getRed();
-        short g = pixel.getGreen();
-        short b = pixel.getBlue();
+        return new Pixel(this.applyARGB(pixel.toARGB()));
+    }
+
+    @Override
+    public int applyARGB(int argb)
+    {
+        short r = (short)Pixel.red(argb);
+        short g = (short)Pixel.green(argb);
+        short b = (short)Pixel.blue(argb);
         int target = (int)Math.round(((double)r * 0.299f) + ((double)g * 0.7152) + ((double)b * 0.0722));
         if (target < 0) target = 0; if (target > 255) target = 255;
         r = this.apply(r, (short)target);
         g = this.apply(g, (short)target);
         b = this.apply(b, (short)target);
-        return new Pixel(r, g, b, pixel.getAlpha());
-
+        return Pixel.argb(r, g, b, Pixel.alpha(argb));
     }
     
 }
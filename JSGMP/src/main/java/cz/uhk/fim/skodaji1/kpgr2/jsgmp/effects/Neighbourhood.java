@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+
+/**
+ * Class representing rectangular region of image split into separate colour channels
+ * (each channel is stored row by row in its own array)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class Neighbourhood
+{
+    /**
+     * Width of region (in pixels)
+     */
+    private final int width;
+    
+    /**
+     * Height of region (in pixels)
+     */
+    private final int height;
+    
+    /**
+     * Values of red channel
+     */
+    private final int[] red;
+    
+    /**
+     * Values of green channel
+     */
+    private final int[] green;
+    
+    /**
+     * Values of blue channel
+     */
+    private final int[] blue;
+    
+    /**
+     * Creates new region of image
+     * @param width Width of region (in pixels)
+     * @param height Height of region (in pixels)
+     * @param red Values of red channel
+     * @param green Values of green channel
+     * @param blue Values of blue channel
+     */
+    private Neighbourhood(int width, int height, int[] red, int[] green, int[] blue)
+    {
+        this.width = width;
+        this.height = height;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+    
+    /**
+     * Reads region of image from array of ARGB values
+     * @param data Array with ARGB values of pixels
+     * @param offset Index of top left pixel of region in array
+     * @param stride Number of items between beginnings of two consecutive rows in array
+     * @param width Width of region (in pixels)
+     * @param height Height of region (in pixels)
+     * @return Region of image split into colour channels
+     */
+    public static Neighbourhood read(int[] data, int offset, int stride, int width, int height)
+    {
+        int[] red = new int[width * height];
+        int[] green = new int[width * height];
+        int[] blue = new int[width * height];
+        for (int y = 0; y < height; y++)
+        {
+            int from = offset + y * stride;
+            int to = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                int argb = data[from + x];
+                red[to + x] = Pixel.red(argb);
+                green[to + x] = Pixel.green(argb);
+                blue[to + x] = Pixel.blue(argb);
+            }
+        }
+        return new Neighbourhood(width, height, red, green, blue);
+    }
+    
+    /**
+     * Creates copy of region
+     * @return New region with same values of all colour channels
+     */
+    public Neighbourhood copy()
+    {
+        return new Neighbourhood(this.width, this.height, this.red.clone(), this.green.clone(), this.blue.clone());
+    }
+    
+    /**
+     * Gets width of region
+     * @return Width of region (in pixels)
+     */
+    public int getWidth()
+    {
+        return this.width;
+    }
+    
+    /**
+     * Gets height of region
+     * @return Height of region (in pixels)
+     */
+    public int getHeight()
+    {
+        return this.height;
+    }
+    
+    /**
+     * Gets values of one colour channel
+     * @param channel Colour channel which values will be returned
+     * @return Array with values of channel stored row by row (can be modified)
+     */
+    public int[] getChannel(PointEffect.Channel channel)
+    {
+        int[] reti = this.blue;
+        if (channel == PointEffect.Channel.RED)
+        {
+            reti = this.red;
+        }
+        else if (channel == PointEffect.Channel.GREEN)
+        {
+            reti = this.green;
+        }
+        return reti;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Interface abstracting effects which compute new value of pixel from its surrounding pixels
+ * (single pixel is left unchanged by {@link Effect#applyARGB(int)})
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public interface NeighbourhoodEffect extends Effect
+{
+    /**
+     * Gets radius of neighbourhood which is needed to compute one pixel
+     * @return Radius of neighbourhood (in pixels of original image), 0 if effect does not change image
+     */
+    public abstract int getRadius();
+    
+    /**
+     * Applies effect on region of image
+     * (only pixels which are at least radius of effect far from edges of region have to be valid,
+     * region is expected to continue with its edge pixels)
+     * @param region Region of image which will be changed
+     * @param scale Number of pixels of original image represented by one pixel of region in each direction
+     */
+    public abstract void apply(Neighbourhood region, int scale);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Interface abstracting effects which change each colour channel independently on other channels
+ * (so they can be described by one lookup table per channel)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public interface PointEffect extends Effect
+{
+    /**
+     * Enumeration of all colour channels which can be changed by point effect
+     */
+    public enum Channel
+    {
+        /**
+         * Red colour channel
+         */
+        RED,
+
+        /**
+         * Green colour channel
+         */
+        GREEN,
+
+        /**
+         * Blue colour channel
+         */
+        BLUE
+    }
+
+    /**
+     * Number of entries in lookup table
+     */
+    public static final int TABLE_SIZE = 256;
+
+    /**
+     * Gets lookup table of effect for one colour channel
+     * @param channel Colour channel which lookup table will be returned
+     * @return Array of length TABLE_SIZE where value at index v is value of channel
+     *         after effect has been applied on value v (array must not be modified)
+     */
+    public abstract int[] getLookupTable(PointEffect.Channel channel);
+}
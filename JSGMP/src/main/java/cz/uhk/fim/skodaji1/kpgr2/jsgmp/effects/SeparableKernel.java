@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Class containing convolutions with separable kernels
+ * (each convolution is computed as horizontal pass followed by vertical pass,
+ * both passes go through arrays row by row; pixels outside of array are replaced by nearest edge pixel)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class SeparableKernel
+{
+    /**
+     * Number of box blurs which approximate gaussian blur
+     */
+    public static final int GAUSSIAN_PASSES = 3;
+    
+    /**
+     * Creates new class containing convolutions (it should not be instantiated)
+     */
+    private SeparableKernel(){}
+    
+    /**
+     * Clamps index into interval [0 max]
+     * @param index Index which will be clamped
+     * @param max Maximal allowed index
+     * @return Clamped index
+     */
+    private static int clamp(int index, int max)
+    {
+        if (index < 0) return 0;
+        if (index > max) return max;
+        return index;
+    }
+    
+    /**
+     * Computes radii of box blurs which approximate gaussian blur
+     * @param sigma Standard deviation of gaussian blur (in pixels)
+     * @return Array with radii of GAUSSIAN_PASSES box blurs
+     */
+    public static int[] gaussianRadii(double sigma)
+    {
+        int[] reti = new int[SeparableKernel.GAUSSIAN_PASSES];
+        if (sigma > 0)
+        {
+            int n = SeparableKernel.GAUSSIAN_PASSES;
+            double variance = 12f * sigma * sigma;
+            int lower = (int)Math.floor(Math.sqrt(variance / n + 1f));
+            if (lower % 2 == 0)
+            {
+                lower--;
+            }
+            long smaller = Math.round((variance - n * lower * lower - 4 * n * lower - 3 * n) / (-4 * lower - 4));
+            for (int i = 0; i < n; i++)
+            {
+                int size = (i < smaller) ? lower : lower + 2;
+                reti[i] = (size - 1) / 2;
+            }
+        }
+        return reti;
+    }
+    
+    /**
+     * Computes box blur of rows of channel using running sums (constant time per pixel for any radius)
+     * @param src Values of channel which will be blurred
+     * @param dst Array into which blurred values will be written
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param radius Radius of box
+     */
+    public static void boxHorizontal(int[] src, int[] dst, int width, int height, int radius)
+    {
+        int size = 2 * radius + 1;
+        int half = size / 2;
+        int max = width - 1;
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * width;
+            int sum = 0;
+            for (int i = -radius; i <= radius; i++)
+            {
+                sum += src[row + SeparableKernel.clamp(i, max)];
+            }
+            for (int x = 0; x < width; x++)
+            {
+                dst[row + x] = (sum + half) / size;
+                sum += src[row + SeparableKernel.clamp(x + radius + 1, max)] - src[row + SeparableKernel.clamp(x - radius, max)];
+            }
+        }
+    }
+    
+    /**
+     * Computes box blur of columns of channel using running sums (constant time per pixel for any radius)
+     * @param src Values of channel which will be blurred
+     * @param dst Array into which blurred values will be written
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param radius Radius of box
+     */
+    public static void boxVertical(int[] src, int[] dst, int width, int height, int radius)
+    {
+        int size = 2 * radius + 1;
+        int half = size / 2;
+        int max = height - 1;
+        int[] sums = new int[width];
+        for (int i = -radius; i <= radius; i++)
+        {
+            int row = SeparableKernel.clamp(i, max) * width;
+            for (int x = 0; x < width; x++)
+            {
+                sums[x] += src[row + x];
+            }
+        }
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * width;
+            int added = SeparableKernel.clamp(y + radius + 1, max) * width;
+            int removed = SeparableKernel.clamp(y - radius, max) * width;
+            for (int x = 0; x < width; x++)
+            {
+                dst[row + x] = (sums[x] + half) / size;
+                sums[x] += src[added + x] - src[removed + x];
+            }
+        }
+    }
+    
+    /**
+     * Computes box blur of channel
+     * @param channel Values of channel which will be blurred (result is written back)
+     * @param temp Array used for intermediate results (at least as long as channel)
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param radius Radius of box
+     */
+    public static void boxBlur(int[] channel, int[] temp, int width, int height, int radius)
+    {
+        if (radius > 0)
+        {
+            SeparableKernel.boxHorizontal(channel, temp, width, height, radius);
+            SeparableKernel.boxVertical(temp, channel, width, height, radius);
+        }
+    }
+    
+    /**
+     * Computes approximation of gaussian blur of channel by repeated box blur
+     * @param channel Values of channel which will be blurred (result is written back)
+     * @param temp Array used for intermediate results (at least as long as channel)
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param radii Radii of box blurs (see {@link #gaussianRadii(double)})
+     */
+    public static void gaussianBlur(int[] channel, int[] temp, int width, int height, int[] radii)
+    {
+        for (int radius: radii)
+        {
+            SeparableKernel.boxBlur(channel, temp, width, height, radius);
+        }
+    }
+    
+    /**
+     * Convolves rows of channel with kernel
+     * @param src Values of channel
+     * @param dst Array into which results will be written
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param kernel Kernel of odd length (its middle item belongs to computed pixel)
+     */
+    public static void convolveHorizontal(int[] src, int[] dst, int width, int height, int[] kernel)
+    {
+        int radius = kernel.length / 2;
+        int max = width - 1;
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                int sum = 0;
+                for (int i = 0; i < kernel.length; i++)
+                {
+                    sum += kernel[i] * src[row + SeparableKernel.clamp(x + i - radius, max)];
+                }
+                dst[row + x] = sum;
+            }
+        }
+    }
+    
+    /**
+     * Convolves columns of channel with kernel
+     * @param src Values of channel
+     * @param dst Array into which results will be written
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param kernel Kernel of odd length (its middle item belongs to computed pixel)
+     */
+    public static void convolveVertical(int[] src, int[] dst, int width, int height, int[] kernel)
+    {
+        int radius = kernel.length / 2;
+        int max = height - 1;
+        for (int y = 0; y < height; y++)
+        {
+            int row = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                dst[row + x] = 0;
+            }
+            for (int i = 0; i < kernel.length; i++)
+            {
+                int weight = kernel[i];
+                int from = SeparableKernel.clamp(y + i - radius, max) * width;
+                for (int x = 0; x < width; x++)
+                {
+                    dst[row + x] += weight * src[from + x];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Convolves channel with separable kernel
+     * @param channel Values of channel
+     * @param temp Array used for intermediate results (at least as long as channel)
+     * @param dst Array into which results will be written (not normalized)
+     * @param width Width of channel (in pixels)
+     * @param height Height of channel (in pixels)
+     * @param horizontal Horizontal part of kernel
+     * @param vertical Vertical part of kernel
+     */
+    public static void convolve(int[] channel, int[] temp, int[] dst, int width, int height, int[] horizontal, int[] vertical)
+    {
+        SeparableKernel.convolveHorizontal(channel, temp, width, height, horizontal);
+        SeparableKernel.convolveVertical(temp, dst, width, height, vertical);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Class representing edge detection by Sobel operator
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class SobelEdges extends AbstractNeighbourhoodEffect
+{
+    /**
+     * Smoothing part of Sobel kernel
+     */
+    private static final int[] SMOOTH = new int[]{1, 2, 1};
+    
+    /**
+     * Differentiating part of Sobel kernel
+     */
+    private static final int[] DIFFERENCE = new int[]{-1, 0, 1};
+    
+    /**
+     * Percentage of edges in result [0 100]
+     */
+    private double value = 0f;
+    
+    /**
+     * Sets percentage of edges in result
+     * @param value New percentage of edges in result [0 100]
+     */
+    public void setValue(double value)
+    {
+        this.value = value;
+        this.invokeChange();
+    }
+    
+    @Override
+    public int getRadius()
+    {
+        return (this.value == 0) ? 0 : 1;
+    }
+
+    @Override
+    protected void apply(int[] channel, int[] temp, int width, int height, int scale)
+    {
+        int[] gx = new int[width * height];
+        int[] gy = new int[width * height];
+        SeparableKernel.convolve(channel, temp, gx, width, height, SobelEdges.DIFFERENCE, SobelEdges.SMOOTH);
+        SeparableKernel.convolve(channel, temp, gy, width, height, SobelEdges.SMOOTH, SobelEdges.DIFFERENCE);
+        double step = this.value / 100f;
+        for (int i = 0; i < width * height; i++)
+        {
+            double edge = Math.min(Math.sqrt((double)gx[i] * gx[i] + (double)gy[i] * gy[i]), 255f);
+            channel[i] += (int)Math.round((edge - (double)channel[i]) * step);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
 
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Binning;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
@@ -27,13 +28,18 @@ import javafx.scene.paint.Color;
  * Class representing temperature effect
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class Temperature extends AbstractEffect
+public class Temperature extends AbstractEffect implements PointEffect
 {
     /**
      * Actually set value of temperature
      */
     private int value;
     
+    /**
+     * Lookup tables of red, green and blue channel for actual value of temperature
+     */
+    private volatile int[][] tables;
+    
     /**
      * Creates new temperature effect
      * @param bitmap Reference to bitmap used to create histogram
@@ -41,10 +47,7 @@ public class Temperature extends AbstractEffect
     public Temperature(Bitmap bitmap)
     {
         super(ThreadManager.createHistogram(
-                (Pixel px) ->
-                {
-                    return (px.getRed() - px.getBlue()) + 255;
-                },
+                new Binning(1f, 0f, -1f, 255),
                 bitmap,
                 Globals.HISTOGRAM_WIDTH,
                 Globals.HISTOGRAM_HEIGHT,
@@ -53,6 +56,18 @@ public class Temperature extends AbstractEffect
                 512,
                 true
         ));
+        this.value = 0;
+        this.tables = this.computeTables();
+    }
+    
+    /**
+     * Creates new temperature effect without histogram (usable without graphical interface)
+     */
+    public Temperature()
+    {
+        super(null);
+        this.value = 0;
+        this.tables = this.computeTables();
     }
     
     /**
@@ -62,6 +77,7 @@ public class Temperature extends AbstractEffect
     public void setTemperature(int temperature)
     {
         this.value = temperature;
+        this.tables = this.computeTables();
         this.invokeChange();
     }
     
@@ -73,17 +89,49 @@ public class Temperature extends AbstractEffect
     {
         return this.value;
     }
+    
+    /**
+     * Computes lookup tables for actual value of temperature
+     * @return Lookup tables of red, green and blue channel
+     */
+    private int[][] computeTables()
+    {
+        int[][] reti = new int[3][PointEffect.TABLE_SIZE];
+        for (int v = 0; v < PointEffect.TABLE_SIZE; v++)
+        {
+            int r = v + this.value;
+            int b = v - this.value;
+            if (r > 255) r = 255; if (r < 0) r = 0;
+            if (b > 255) b = 255; if (b < 0) b = 0;
+            reti[0][v] = r;
+            reti[1][v] = v;
+            reti[2][v] = b;
+        }
+        return reti;
+    }
+
+    @Override
+    public int[] getLookupTable(PointEffect.Channel channel)
+    {
+        return this.tables[channel.ordinal()];
+    }
+
+    @Override
+    public int applyARGB(int argb)
+    {
+        int[][] t = this.tables;
+        return Pixel.argb(
+                t[0][Pixel.red(argb)],
+                Pixel.green(argb),
+                t[2][Pixel.blue(argb)],
+                Pixel.alpha(argb)
+        );
+    }
 
     @Override
     public Pixel apply(Pixel pixel)
     {
-        short r = (short)(pixel.getRed() + this.value);
-        short g = pixel.getGreen();
-        short b = (short)(pixel.getBlue() - this.value);
-        short a = pixel.getAlpha();
-        if (r > 255) r = 255; if (r < 0) r = 0;
-        if (b > 255) b = 255; if (b < 0) b = 0;
-        return new Pixel(r, g, b, a);
+        return new Pixel(this.applyARGB(pixel.toARGB()));
     }
     
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects;
+
+/**
+ * Class representing unsharp mask (sharpening by adding difference between image and its blurred copy)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class UnsharpMask extends AbstractNeighbourhoodEffect
+{
+    /**
+     * Standard deviation of blur used by mask (in pixels)
+     */
+    private double sigma = 1f;
+    
+    /**
+     * Amount of sharpening (in percent)
+     */
+    private double amount = 0f;
+    
+    /**
+     * Sets standard deviation of blur used by mask
+     * @param sigma New standard deviation of blur (in pixels)
+     */
+    public void setSigma(double sigma)
+    {
+        this.sigma = Math.max(sigma, 0f);
+        this.invokeChange();
+    }
+    
+    /**
+     * Sets amount of sharpening
+     * @param amount New amount of sharpening (in percent)
+     */
+    public void setAmount(double amount)
+    {
+        this.amount = amount;
+        this.invokeChange();
+    }
+    
+    @Override
+    public int getRadius()
+    {
+        return (this.amount == 0) ? 0 : GaussianBlur.getRadius(this.sigma);
+    }
+
+    @Override
+    protected void apply(int[] channel, int[] temp, int width, int height, int scale)
+    {
+        int[] blurred = channel.clone();
+        SeparableKernel.gaussianBlur(blurred, temp, width, height, SeparableKernel.gaussianRadii(this.sigma / scale));
+        double step = this.amount / 100f;
+        for (int i = 0; i < width * height; i++)
+        {
+            channel[i] += (int)Math.round((double)(channel[i] - blurred[i]) * step);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class representing function of histogram which computes value as rounded weighted sum of colour channels
+ * (unlike general function, it can be computed by SIMD kernels)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class Binning implements IntUnaryOperator
+{
+    /**
+     * Weight of red channel
+     */
+    private final double red;
+    
+    /**
+     * Weight of green channel
+     */
+    private final double green;
+    
+    /**
+     * Weight of blue channel
+     */
+    private final double blue;
+    
+    /**
+     * Value added to rounded weighted sum
+     */
+    private final int offset;
+    
+    /**
+     * Creates new function of histogram
+     * @param red Weight of red channel
+     * @param green Weight of green channel
+     * @param blue Weight of blue channel
+     * @param offset Value added to rounded weighted sum
+     */
+    public Binning(double red, double green, double blue, int offset)
+    {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.offset = offset;
+    }
+    
+    /**
+     * Gets weight of red channel
+     * @return Weight of red channel
+     */
+    public double getRed()
+    {
+        return this.red;
+    }
+    
+    /**
+     * Gets weight of green channel
+     * @return Weight of green channel
+     */
+    public double getGreen()
+    {
+        return this.green;
+    }
+    
+    /**
+     * Gets weight of blue channel
+     * @return Weight of blue channel
+     */
+    public double getBlue()
+    {
+        return this.blue;
+    }
+    
+    /**
+     * Gets value added to rounded weighted sum
+     * @return Value added to rounded weighted sum
+     */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    @Override
+    public int applyAsInt(int argb)
+    {
+        return (int)Math.round(this.red * Pixel.red(argb) + this.green * Pixel.green(argb) + this.blue * Pixel.blue(argb)) + this.offset;
+    }
+}
@@ -19,11 +19,15 @@ package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
 
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
@@ -45,105 +49,486 @@ public class Bitmap implements Iterable<Pixel>
          * @param bitmap Bitmap which has changed
          */
         public abstract void onChange(Bitmap bitmap);
+        
+        /**
+         * Function called when bitmap changes with description of change
+         * (by default, it just calls function without description of change)
+         * @param bitmap Bitmap which has changed
+         * @param change Description of change
+         */
+        public default void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+        {
+            this.onChange(bitmap);
+        }
     }
     
     /**
-     * Class representing transaction done over bitmap
+     * Class describing one change of bitmap
      */
-    public static class BitmapTransaction
+    public static class BitmapChange
     {
         /**
-         * Items done in transaction
+         * X coordinate of top left pixel of changed region
+         */
+        private final int x;
+        
+        /**
+         * Y coordinate of top left pixel of changed region
+         */
+        private final int y;
+        
+        /**
+         * Width of changed region
+         */
+        private final int width;
+        
+        /**
+         * Height of changed region
+         */
+        private final int height;
+        
+        /**
+         * ARGB values of pixels in changed region before change (row-major, without any gaps between rows)
+         */
+        private final int[] oldValues;
+        
+        /**
+         * ARGB values of pixels in changed region after change (row-major, without any gaps between rows)
+         */
+        private final int[] newValues;
+        
+        /**
+         * Version of snapshot of bitmap which already contains change (0 if unknown)
+         */
+        private final long version;
+        
+        /**
+         * Creates new description of change of bitmap
+         * @param x X coordinate of top left pixel of changed region
+         * @param y Y coordinate of top left pixel of changed region
+         * @param width Width of changed region
+         * @param height Height of changed region
+         * @param oldValues ARGB values of pixels in changed region before change (or NULL, if unknown)
+         * @param newValues ARGB values of pixels in changed region after change (or NULL, if unknown)
+         */
+        public BitmapChange(int x, int y, int width, int height, int[] oldValues, int[] newValues)
+        {
+            this(x, y, width, height, oldValues, newValues, 0);
+        }
+        
+        /**
+         * Creates new description of change of bitmap
+         * @param x X coordinate of top left pixel of changed region
+         * @param y Y coordinate of top left pixel of changed region
+         * @param width Width of changed region
+         * @param height Height of changed region
+         * @param oldValues ARGB values of pixels in changed region before change (or NULL, if unknown)
+         * @param newValues ARGB values of pixels in changed region after change (or NULL, if unknown)
+         * @param version Version of snapshot of bitmap which already contains change (0 if unknown)
+         */
+        public BitmapChange(int x, int y, int width, int height, int[] oldValues, int[] newValues, long version)
+        {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.oldValues = oldValues;
+            this.newValues = newValues;
+            this.version = version;
+        }
+        
+        /**
+         * Checks, whether change is already contained in snapshot of bitmap
+         * @param snapshot Version of snapshot of bitmap
+         * @return TRUE if snapshot is known to contain change, FALSE otherwise
+         */
+        public boolean isContainedIn(long snapshot)
+        {
+            return this.version > 0 && this.version <= snapshot;
+        }
+        
+        /**
+         * Gets X coordinate of top left pixel of changed region
+         * @return X coordinate of top left pixel of changed region
+         */
+        public int getX()
+        {
+            return this.x;
+        }
+        
+        /**
+         * Gets Y coordinate of top left pixel of changed region
+         * @return Y coordinate of top left pixel of changed region
+         */
+        public int getY()
+        {
+            return this.y;
+        }
+        
+        /**
+         * Gets width of changed region
+         * @return Width of changed region
+         */
+        public int getWidth()
+        {
+            return this.width;
+        }
+        
+        /**
+         * Gets height of changed region
+         * @return Height of changed region
+         */
+        public int getHeight()
+        {
+            return this.height;
+        }
+        
+        /**
+         * Checks, whether change contains values of pixels before and after change
+         * @return TRUE if values of pixels are known, FALSE otherwise
+         */
+        public boolean hasValues()
+        {
+            return Objects.nonNull(this.oldValues) && Objects.nonNull(this.newValues);
+        }
+        
+        /**
+         * Gets ARGB values of pixels in changed region before change
+         * @return Array with values of pixels (row-major, without any gaps between rows) or NULL, if unknown
          */
-        protected final List<TransactionItem> items;
+        public int[] getOldValues()
+        {
+            return this.oldValues;
+        }
         
         /**
-         * Class representing one transaction item
+         * Gets ARGB values of pixels in changed region after change
+         * @return Array with values of pixels (row-major, without any gaps between rows) or NULL, if unknown
          */
-        public static class TransactionItem
+        public int[] getNewValues()
+        {
+            return this.newValues;
+        }
+    }
+    
+    /**
+     * Class representing transaction done over bitmap;
+     * all operations are packed one after another into one array of integers
+     * (kind of operation, its coordinates and new values of pixels)
+     */
+    public static class BitmapTransaction
+    {
+        /**
+         * Interface of visitor of operations stored in transaction
+         */
+        public static interface TransactionVisitor
         {
             /**
-             * X coordinate of pixel which will be changed
+             * Handles setting of one pixel
+             * @param x X coordinate of pixel
+             * @param y Y coordinate of pixel
+             * @param argb New ARGB value of pixel
              */
-            private final int x;
+            public abstract void pixel(int x, int y, int argb);
             
             /**
-             * Y coordinate of pixel which will be changed
+             * Handles writing of part of one row of pixels
+             * @param x X coordinate of first pixel of span
+             * @param y Y coordinate of span
+             * @param values Array with new ARGB values of pixels
+             * @param offset Index in array where value of first pixel of span is stored
+             * @param length Number of pixels in span
              */
-            private final int y;
+            public abstract void span(int x, int y, int[] values, int offset, int length);
             
             /**
-             * New value of pixel
+             * Handles filling of rectangle with one colour
+             * @param x X coordinate of top left pixel of rectangle
+             * @param y Y coordinate of top left pixel of rectangle
+             * @param width Width of rectangle
+             * @param height Height of rectangle
+             * @param argb New ARGB value of all pixels in rectangle
              */
-            private final Pixel px;
+            public abstract void fill(int x, int y, int width, int height, int argb);
             
             /**
-             * Creates new item of transaction
-             * @param x X coordinate of pixel which will be changed
-             * @param y Y coordinate of pixel which will be changed
-             * @param px New value of pixel
+             * Handles writing of rectangular region of pixels
+             * @param x X coordinate of top left pixel of region
+             * @param y Y coordinate of top left pixel of region
+             * @param width Width of region
+             * @param height Height of region
+             * @param values Array with new ARGB values of pixels (row-major, without any gaps between rows)
              */
-            public TransactionItem(int x, int y, Pixel px)
+            public abstract void region(int x, int y, int width, int height, int[] values);
+        }
+        
+        /**
+         * Kind of operation which sets one pixel (followed by X, Y and ARGB value)
+         */
+        protected static final int PIXEL = 0;
+        
+        /**
+         * Kind of operation which writes part of row (followed by X, Y, length and ARGB values of all pixels)
+         */
+        protected static final int SPAN = 1;
+        
+        /**
+         * Kind of operation which fills rectangle (followed by X, Y, width, height and ARGB value)
+         */
+        protected static final int FILL = 2;
+        
+        /**
+         * Kind of operation which writes rectangular region (followed by X, Y, width, height and index of array with values)
+         */
+        protected static final int REGION = 3;
+        
+        /**
+         * Operations done in transaction packed one after another
+         */
+        protected int[] commands;
+        
+        /**
+         * Arrays with values of pixels of regions written by transaction (referenced by index from operations)
+         */
+        protected final List<int[]> regions;
+        
+        /**
+         * Number of used integers in array of operations
+         */
+        protected int size;
+        
+        /**
+         * Bounds of area changed by transaction [minX, minY, maxX, maxY]
+         */
+        protected final int[] bounds;
+        
+        /**
+         * Creates new bitmap transaction
+         */
+        public BitmapTransaction()
+        {
+            this.commands = new int[64];
+            this.regions = new ArrayList<>();
+            this.size = 0;
+            this.bounds = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        }
+        
+        /**
+         * Makes sure that there is enough space for more integers in array of operations
+         * @param count Number of integers which will be added
+         */
+        protected void ensureCapacity(int count)
+        {
+            if (this.size + count > this.commands.length)
             {
-                this.x = x;
-                this.y = y;
-                this.px = px;
+                this.commands = Arrays.copyOf(this.commands, Math.max(this.commands.length * 2, this.size + count));
             }
-            
-            /**
-             * Gets X coordinate of changed pixel
-             * @return X coordinate of changed pixel
-             */
-            public int getX()
+        }
+        
+        /**
+         * Extends bounds of changed area by rectangle
+         * @param x X coordinate of top left pixel of rectangle
+         * @param y Y coordinate of top left pixel of rectangle
+         * @param width Width of rectangle
+         * @param height Height of rectangle
+         */
+        protected void extendBounds(int x, int y, int width, int height)
+        {
+            this.bounds[0] = Math.min(this.bounds[0], x);
+            this.bounds[1] = Math.min(this.bounds[1], y);
+            this.bounds[2] = Math.max(this.bounds[2], x + width - 1);
+            this.bounds[3] = Math.max(this.bounds[3], y + height - 1);
+        }
+        
+        /**
+         * Sets pixel in bitmap
+         * @param x X coordinate of pixel
+         * @param y Y coordinate of pixel
+         * @param px New value of pixel
+         */
+        public void setPixel(int x, int y, Pixel px)
+        {
+            this.setPixel(x, y, px.toARGB());
+        }
+        
+        /**
+         * Sets pixel in bitmap
+         * @param x X coordinate of pixel
+         * @param y Y coordinate of pixel
+         * @param argb New ARGB value of pixel
+         */
+        public void setPixel(int x, int y, int argb)
+        {
+            this.ensureCapacity(4);
+            this.commands[this.size++] = BitmapTransaction.PIXEL;
+            this.commands[this.size++] = x;
+            this.commands[this.size++] = y;
+            this.commands[this.size++] = argb;
+            this.extendBounds(x, y, 1, 1);
+        }
+        
+        /**
+         * Writes part of one row of pixels in bitmap
+         * @param x X coordinate of first pixel of span
+         * @param y Y coordinate of span
+         * @param src Array with new ARGB values of pixels
+         * @param offset Index in array where value of first pixel of span is stored
+         * @param length Number of pixels in span
+         */
+        public void writeSpan(int x, int y, int[] src, int offset, int length)
+        {
+            if (length > 0)
             {
-                return this.x;
+                this.ensureCapacity(4 + length);
+                this.commands[this.size++] = BitmapTransaction.SPAN;
+                this.commands[this.size++] = x;
+                this.commands[this.size++] = y;
+                this.commands[this.size++] = length;
+                System.arraycopy(src, offset, this.commands, this.size, length);
+                this.size += length;
+                this.extendBounds(x, y, length, 1);
             }
-            
-            /**
-             * Gets Y coordinate of changed pixel
-             * @return Y coordinate of changed pixel
-             */
-            public int getY()
+        }
+        
+        /**
+         * Fills rectangle in bitmap with one colour
+         * @param x X coordinate of top left pixel of rectangle
+         * @param y Y coordinate of top left pixel of rectangle
+         * @param width Width of rectangle
+         * @param height Height of rectangle
+         * @param argb New ARGB value of all pixels in rectangle
+         */
+        public void fillRectangle(int x, int y, int width, int height, int argb)
+        {
+            if (width > 0 && height > 0)
             {
-                return this.y;
+                this.ensureCapacity(6);
+                this.commands[this.size++] = BitmapTransaction.FILL;
+                this.commands[this.size++] = x;
+                this.commands[this.size++] = y;
+                this.commands[this.size++] = width;
+                this.commands[this.size++] = height;
+                this.commands[this.size++] = argb;
+                this.extendBounds(x, y, width, height);
             }
-            
-            /**
-             * Gets new value of pixel
-             * @return New value of pixel
-             */
-            public Pixel getValue()
+        }
+        
+        /**
+         * Writes rectangular region into bitmap
+         * (array is kept by transaction, so it must not be modified after call)
+         * @param x X coordinate of top left pixel of region
+         * @param y Y coordinate of top left pixel of region
+         * @param width Width of region
+         * @param height Height of region
+         * @param values Array with new ARGB values of pixels (row-major, without any gaps between rows)
+         */
+        public void writeRegion(int x, int y, int width, int height, int[] values)
+        {
+            if (width > 0 && height > 0)
             {
-                return this.px;
+                this.ensureCapacity(6);
+                this.commands[this.size++] = BitmapTransaction.REGION;
+                this.commands[this.size++] = x;
+                this.commands[this.size++] = y;
+                this.commands[this.size++] = width;
+                this.commands[this.size++] = height;
+                this.commands[this.size++] = this.regions.size();
+                this.regions.add(values);
+                this.extendBounds(x, y, width, height);
             }
         }
         
         /**
-         * Creates new bitmap transaction
+         * Appends all operations of other transaction at the end of this transaction
+         * @param other Transaction which operations will be appended
          */
-        public BitmapTransaction()
+        protected void append(Bitmap.BitmapTransaction other)
         {
-            this.items = new ArrayList<>();
+            if (other.size > 0)
+            {
+                this.ensureCapacity(other.size);
+                System.arraycopy(other.commands, 0, this.commands, this.size, other.size);
+                int i = this.size;
+                while (i < this.size + other.size)
+                {
+                    switch (this.commands[i])
+                    {
+                        case BitmapTransaction.PIXEL:
+                            i += 4;
+                            break;
+                        case BitmapTransaction.SPAN:
+                            i += 4 + this.commands[i + 3];
+                            break;
+                        case BitmapTransaction.REGION:
+                            this.commands[i + 5] += this.regions.size();
+                            i += 6;
+                            break;
+                        default:
+                            i += 6;
+                            break;
+                    }
+                }
+                this.regions.addAll(other.regions);
+                this.size += other.size;
+                this.extendBounds(other.bounds[0], other.bounds[1], other.bounds[2] - other.bounds[0] + 1, other.bounds[3] - other.bounds[1] + 1);
+            }
         }
         
         /**
-         * Sets pixel in bitmap
-         * @param x X coordinate of pixel
-         * @param y Y coordinate of pixel
-         * @param px New value of pixel
+         * Finishes building of transaction before it is processed over bitmap
          */
-        public void setPixel(int x, int y, Pixel px)
+        public void commit()
+        {
+        }
+        
+        /**
+         * Checks, whether transaction contains any operation
+         * @return TRUE if transaction contains no operation, FALSE otherwise
+         */
+        public boolean isEmpty()
         {
-            this.items.add(new TransactionItem(x, y, px));
+            return this.size == 0;
         }
         
         /**
-         * Gets list of transaction items which should be processed over pixels in bitmap
-         * @return List of transaction items
+         * Gets bounds of area changed by transaction
+         * @return Array with bounds of changed area [minX, minY, maxX, maxY]
+         *         (minimum is greater than maximum if transaction is empty)
          */
-        public List<BitmapTransaction.TransactionItem> getItems()
+        public int[] getBounds()
         {
-            return this.items;
+            return this.bounds.clone();
+        }
+        
+        /**
+         * Passes all operations of transaction in order in which they have been done to visitor
+         * @param visitor Visitor which will handle all operations
+         */
+        public void replay(BitmapTransaction.TransactionVisitor visitor)
+        {
+            int i = 0;
+            while (i < this.size)
+            {
+                switch (this.commands[i])
+                {
+                    case BitmapTransaction.PIXEL:
+                        visitor.pixel(this.commands[i + 1], this.commands[i + 2], this.commands[i + 3]);
+                        i += 4;
+                        break;
+                    case BitmapTransaction.SPAN:
+                        visitor.span(this.commands[i + 1], this.commands[i + 2], this.commands, i + 4, this.commands[i + 3]);
+                        i += 4 + this.commands[i + 3];
+                        break;
+                    case BitmapTransaction.REGION:
+                        visitor.region(this.commands[i + 1], this.commands[i + 2], this.commands[i + 3], this.commands[i + 4], this.regions.get(this.commands[i + 5]));
+                        i += 6;
+                        break;
+                    default:
+                        visitor.fill(this.commands[i + 1], this.commands[i + 2], this.commands[i + 3], this.commands[i + 4], this.commands[i + 5]);
+                        i += 6;
+                        break;
+                }
+            }
         }
     }
     
@@ -163,14 +548,16 @@ public class Bitmap implements Iterable<Pixel>
     protected final int height;
     
     /**
-     * Data of bitmap
+     * Data of bitmap (row-major, one ARGB integer per pixel;
+     * NULL if subclass stores values of pixels itself)
      */
-    protected final int[][] data;
+    protected final int[] data;
     
     /**
-     * Original data of bitmap
+     * Original data of bitmap (row-major, one ARGB integer per pixel;
+     * NULL if subclass stores values of pixels itself)
      */
-    protected final int[][]original;
+    protected final int[] original;
         
     /**
      * Graphical representation of bitmap
@@ -192,19 +579,48 @@ public class Bitmap implements Iterable<Pixel>
      */
     protected int minIntensity = Integer.MAX_VALUE;
     
+    /**
+     * Maximal part of bitmap (1/n) which change is described with values of pixels
+     */
+    protected static final int INCREMENTAL_RATIO = 4;
+    
+    /**
+     * Bounds of area changed since last upload into graphical representation [minX, minY, maxX, maxY]
+     */
+    private final int[] dirty;
+    
+    /**
+     * Flag, whether upload of changed area into graphical representation is already scheduled
+     */
+    private final AtomicBoolean uploadScheduled;
+    
     /**
      * Creates new empty bitmap
      * @param width Width of bitmap
      * @param height Height of bitmap
      */
     public Bitmap(int width, int height)
+    {
+        this(width, height, true);
+    }
+    
+    /**
+     * Creates new empty bitmap
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @param allocate Flag, whether arrays with data of bitmap should be allocated
+     *                 (FALSE if subclass stores values of pixels itself and overrides all methods working with them)
+     */
+    protected Bitmap(int width, int height, boolean allocate)
     {
         this.width = width;
         this.height = height;
-        this.data = new int[this.height][this.width];
-        this.original = new int[this.height][this.width];
+        this.data = allocate ? new int[this.width * this.height] : null;
+        this.original = allocate ? new int[this.width * this.height] : null;
         this.changeActionListeners = new ArrayList<>();
         this.image = new WritableImage(this.width, this.height);
+        this.dirty = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        this.uploadScheduled = new AtomicBoolean(false);
     }
     
     /**
@@ -215,13 +631,7 @@ public class Bitmap implements Iterable<Pixel>
         if (this.originalSet == false)
         {
             this.originalSet = true;
-            for (int y = 0; y < this.height; y++)
-            {
-                for (int x = 0; x < this.width; x++)
-                {
-                    this.original[y][x] = this.data[y][x];
-                }
-            }
+            System.arraycopy(this.data, 0, this.original, 0, this.data.length);
             this.invokeChange();
         }
         else
@@ -238,16 +648,42 @@ public class Bitmap implements Iterable<Pixel>
      */
     public Pixel getOriginal(int x, int y)
     {
-        Pixel reti = null;
+        return new Pixel(this.getOriginalARGB(x, y));
+    }
+    
+    /**
+     * Gets original value of pixel without creating any pixel object
+     * @param x X coordinate of pixel
+     * @param y Y coordinate of pixel
+     * @return Integer containing original red, green, blue and alpha values of pixel
+     */
+    public int getOriginalARGB(int x, int y)
+    {
         if (this.originalSet == false)
         {
             throw new IllegalStateException("Cannot get original state of bitmap: original state has not been set!");
         }
-        else
+        this.checkPosition(x, y);
+        return this.original[y * this.width + x];
+    }
+    
+    /**
+     * Copies rectangular region of original state of bitmap into array
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param dst Array into which region will be copied
+     * @param offset Index in array where first pixel of region will be stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void readOriginalRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        if (this.originalSet == false)
         {
-            reti = new Pixel(this.original[y][x]);
+            throw new IllegalStateException("Cannot get original state of bitmap: original state has not been set!");
         }
-        return reti;
+        this.copyRegion(this.original, x, y, width, height, dst, offset, stride);
     }
     
     /**
@@ -255,27 +691,44 @@ public class Bitmap implements Iterable<Pixel>
      */
     public void removeChanges()
     {
-        Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-        for (int y = 0; y < this.height; y++)
+        if (this.originalSet == false)
         {
-            for (int x = 0; x < this.width; x++)
-            {
-                transaction.setPixel(x, y, this.getOriginal(x, y));
-            }
+            throw new IllegalStateException("Cannot remove changes of bitmap: original state has not been set!");
         }
-        this.processTransaction(transaction);
+        this.writeRegion(0, 0, this.width, this.height, this.original, 0, this.width);
     }
     
     /**
      * Invokes all action listeners on bitmap change
      */
     protected void invokeChange()
+    {
+        this.invokeChange(new Bitmap.BitmapChange(0, 0, this.width, this.height, null, null));
+    }
+    
+    /**
+     * Invokes all action listeners on bitmap change
+     * @param change Description of change
+     */
+    protected void invokeChange(Bitmap.BitmapChange change)
     {
         for(Bitmap.BitmapChangedActionListener listener: this.changeActionListeners)
         {
-            listener.onChange(this);
-        }       
-}
+            listener.onChange(this, change);
+        }
+    }
+    
+    /**
+     * Checks, whether values of pixels in region should be sent with description of change
+     * (values are sent only for small regions, large changes are better handled by processing whole bitmap)
+     * @param width Width of changed region
+     * @param height Height of changed region
+     * @return TRUE if values of pixels should be sent with description of change, FALSE otherwise
+     */
+    protected boolean isIncremental(int width, int height)
+    {
+        return (long)width * (long)height <= ((long)this.width * (long)this.height) / Bitmap.INCREMENTAL_RATIO;
+    }
     
     /**
      * Processes transaction over pixels in bitmap
@@ -283,11 +736,98 @@ public class Bitmap implements Iterable<Pixel>
      */
     public void processTransaction(BitmapTransaction transaction)
     {
-        for(BitmapTransaction.TransactionItem item: transaction.getItems())
+        transaction.commit();
+        this.storeTransaction(transaction);
+        int[] region = this.getTransactionRegion(transaction);
+        this.markDirty(region[0], region[1], region[2], region[3]);
+        this.invokeChange();
+    }
+    
+    /**
+     * Gets region of bitmap changed by transaction (operations outside of bitmap are ignored)
+     * @param transaction Transaction which changes bitmap
+     * @return Array with changed region [x, y, width, height] (width or height is not positive if nothing changes)
+     */
+    protected int[] getTransactionRegion(BitmapTransaction transaction)
+    {
+        int[] bounds = transaction.getBounds();
+        int minX = Math.max(0, bounds[0]);
+        int minY = Math.max(0, bounds[1]);
+        int maxX = Math.min(this.width - 1, bounds[2]);
+        int maxY = Math.min(this.height - 1, bounds[3]);
+        if (maxX < minX || maxY < minY)
         {
-            this.setPixel(item.getX(), item.getY(), item.getValue(), false);
+            return new int[]{0, 0, 0, 0};
         }
-        this.invokeChange();
+        return new int[]{minX, minY, maxX - minX + 1, maxY - minY + 1};
+    }
+    
+    /**
+     * Stores all operations of transaction into data of bitmap and updates intensity range
+     * (operations are clipped to bitmap)
+     * @param transaction Transaction which will be stored
+     */
+    protected void storeTransaction(BitmapTransaction transaction)
+    {
+        transaction.replay(new BitmapTransaction.TransactionVisitor()
+        {
+            @Override
+            public void pixel(int x, int y, int argb)
+            {
+                if (Bitmap.this.isInBitmap(x, y))
+                {
+                    Bitmap.this.storeFill(x, y, 1, 1, argb);
+                }
+            }
+
+            @Override
+            public void span(int x, int y, int[] values, int offset, int length)
+            {
+                int from = Math.max(0, x);
+                int to = Math.min(Bitmap.this.width, x + length);
+                if (y >= 0 && y < Bitmap.this.height && to > from)
+                {
+                    Bitmap.this.storeRegion(from, y, to - from, 1, values, offset + (from - x), length);
+                }
+            }
+
+            @Override
+            public void fill(int x, int y, int width, int height, int argb)
+            {
+                int fromX = Math.max(0, x);
+                int toX = Math.min(Bitmap.this.width, x + width);
+                int fromY = Math.max(0, y);
+                int toY = Math.min(Bitmap.this.height, y + height);
+                if (toX > fromX && toY > fromY)
+                {
+                    Bitmap.this.storeFill(fromX, fromY, toX - fromX, toY - fromY, argb);
+                }
+            }
+
+            @Override
+            public void region(int x, int y, int width, int height, int[] values)
+            {
+                int fromX = Math.max(0, x);
+                int toX = Math.min(Bitmap.this.width, x + width);
+                int fromY = Math.max(0, y);
+                int toY = Math.min(Bitmap.this.height, y + height);
+                if (toX > fromX && toY > fromY)
+                {
+                    Bitmap.this.storeRegion(fromX, fromY, toX - fromX, toY - fromY, values, (fromY - y) * width + (fromX - x), width);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Extends intensity range of bitmap by intensity of pixel
+     * @param argb Integer containing red, green, blue and alpha values of pixel
+     */
+    protected void updateIntensity(int argb)
+    {
+        int intensity = Globals.intensity(argb);
+        if (intensity > this.maxIntensity) this.maxIntensity = intensity;
+        if (intensity < this.minIntensity) this.minIntensity = intensity;
     }
     
     /**
@@ -313,6 +853,54 @@ public class Bitmap implements Iterable<Pixel>
         );
     }
     
+    /**
+     * Checks, whether position is in bitmap and throws exception if it is not
+     * @param x Position on X axis
+     * @param y Position on Y axis
+     */
+    protected void checkPosition(int x, int y)
+    {
+        if (this.isInBitmap(x, y) == false)
+        {
+            throw new IndexOutOfBoundsException(String.format("Position [%d; %d] is out of bitmap %d × %d!", x, y, this.width, this.height));
+        }
+    }
+    
+    /**
+     * Checks, whether rectangular region lies whole in bitmap and throws exception if it does not
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     */
+    protected void checkRegion(int x, int y, int width, int height)
+    {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x > this.width - width || y > this.height - height)
+        {
+            throw new IndexOutOfBoundsException(String.format("Region [%d; %d] %d × %d is out of bitmap %d × %d!", x, y, width, height, this.width, this.height));
+        }
+    }
+    
+    /**
+     * Copies rectangular region of pixel store into array
+     * @param source Pixel store from which region will be copied
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param dst Array into which region will be copied
+     * @param offset Index in array where first pixel of region will be stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    protected void copyRegion(int[] source, int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.checkRegion(x, y, width, height);
+        for (int row = 0; row < height; row++)
+        {
+            System.arraycopy(source, (y + row) * this.width + x, dst, offset + row * stride, width);
+        }
+    }
+    
     /**
      * Gets pixel at specified position
      * @param x Position on X axis
@@ -324,20 +912,260 @@ public class Bitmap implements Iterable<Pixel>
         Pixel reti = null;
         if (this.isInBitmap(x, y))
         {
-            reti = new Pixel(this.data[y][x]);
+            reti = new Pixel(this.getARGB(x, y));
         }
         return reti;
     }
     
     /**
-     * Sets value of pixel in bitmap
-     * @param x Position of pixel on X axis
-     * @param y Position of pixel on Y axis
-     * @param px New value of pixel
+     * Gets value of pixel without creating any pixel object
+     * @param x Position on X axis
+     * @param y Position on Y axis
+     * @return Integer containing red, green, blue and alpha values of pixel
      */
-    public void setPixel(int x, int y, Pixel px)
+    public int getARGB(int x, int y)
+    {
+        this.checkPosition(x, y);
+        return this.data[y * this.width + x];
+    }
+    
+    /**
+     * Gets immutable snapshot of actual content of bitmap
+     * @return Snapshot of actual content of bitmap
+     */
+    public BitmapSnapshot getSnapshot()
+    {
+        return BitmapSnapshot.of(this.data, this.width, this.height);
+    }
+    
+    /**
+     * Copies one row of bitmap into array
+     * @param y Position of row on Y axis
+     * @param dst Array into which row will be copied (at least as long as width of bitmap)
+     * @return Array with copied row
+     */
+    public int[] getRow(int y, int[] dst)
     {
-        this.setPixel(x, y, px, true);
+        this.readRegion(0, y, this.width, 1, dst, 0, this.width);
+        return dst;
+    }
+    
+    /**
+     * Writes one whole row of bitmap at once
+     * (array can be kept by bitmap, so it must not be modified after call)
+     * @param y Position of row on Y axis
+     * @param src Array with new ARGB values of pixels in row (at least as long as width of bitmap)
+     */
+    public void setRow(int y, int[] src)
+    {
+        this.writeRegion(0, y, this.width, 1, src, 0, this.width);
+    }
+    
+    /**
+     * Copies rectangular region of bitmap into array
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param dst Array into which region will be copied
+     * @param offset Index in array where first pixel of region will be stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void readRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.copyRegion(this.data, x, y, width, height, dst, offset, stride);
+    }
+    
+    /**
+     * Writes rectangular region from array into bitmap
+     * (bitmap can keep array until region is written, so caller must not modify array after call;
+     * use {@link #writeRegionNow(int, int, int, int, int[], int, int)} to reuse array)
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param src Array with new ARGB values of pixels
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void writeRegion(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.writeRegionNow(x, y, width, height, src, offset, stride);
+    }
+    
+    /**
+     * Writes rectangular region from array into bitmap immediately
+     * (data are stored and all change listeners are informed before function returns)
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param src Array with new ARGB values of pixels
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void writeRegionNow(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.checkRegion(x, y, width, height);
+        int[] oldValues = null;
+        int[] newValues = null;
+        if (this.isIncremental(width, height))
+        {
+            oldValues = new int[width * height];
+            newValues = new int[width * height];
+            this.copyRegion(this.data, x, y, width, height, oldValues, 0, width);
+        }
+        this.storeRegion(x, y, width, height, src, offset, stride);
+        this.markDirty(x, y, width, height);
+        if (Objects.nonNull(newValues))
+        {
+            this.copyRegion(this.data, x, y, width, height, newValues, 0, width);
+        }
+        this.invokeChange(new Bitmap.BitmapChange(x, y, width, height, oldValues, newValues));
+    }
+    
+    /**
+     * Loads whole content of bitmap at once
+     * (data are stored immediately, graphical representation is updated with one bulk write)
+     * @param src Array with ARGB values of all pixels of bitmap
+     * @param offset Index in array where first pixel of bitmap is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void loadPixels(int[] src, int offset, int stride)
+    {
+        this.storeRegion(0, 0, this.width, this.height, src, offset, stride);
+        this.markDirty(0, 0, this.width, this.height);
+        this.invokeChange();
+    }
+    
+    /**
+     * Marks rectangular area as changed and schedules its upload into graphical representation of bitmap;
+     * all areas marked before upload runs are merged and uploaded at once
+     * @param x X coordinate of top left pixel of changed area
+     * @param y Y coordinate of top left pixel of changed area
+     * @param width Width of changed area
+     * @param height Height of changed area
+     */
+    protected void markDirty(int x, int y, int width, int height)
+    {
+        if (width > 0 && height > 0)
+        {
+            synchronized(this.dirty)
+            {
+                this.dirty[0] = Math.min(this.dirty[0], x);
+                this.dirty[1] = Math.min(this.dirty[1], y);
+                this.dirty[2] = Math.max(this.dirty[2], x + width - 1);
+                this.dirty[3] = Math.max(this.dirty[3], y + height - 1);
+            }
+            if (this.uploadScheduled.compareAndSet(false, true))
+            {
+                Platform.runLater(this::uploadDirty);
+            }
+        }
+    }
+    
+    /**
+     * Uploads whole changed area into graphical representation of bitmap
+     * (runs on JavaFX application thread)
+     */
+    private void uploadDirty()
+    {
+        this.uploadScheduled.set(false);
+        int x, y, width, height;
+        synchronized(this.dirty)
+        {
+            if (this.dirty[2] < this.dirty[0] || this.dirty[3] < this.dirty[1])
+            {
+                return;
+            }
+            x = this.dirty[0];
+            y = this.dirty[1];
+            width = this.dirty[2] - this.dirty[0] + 1;
+            height = this.dirty[3] - this.dirty[1] + 1;
+            this.dirty[0] = Integer.MAX_VALUE;
+            this.dirty[1] = Integer.MAX_VALUE;
+            this.dirty[2] = Integer.MIN_VALUE;
+            this.dirty[3] = Integer.MIN_VALUE;
+        }
+        Metrics.Sample sample = Metrics.start();
+        this.uploadRegion(x, y, width, height);
+        Metrics.record(Metrics.BITMAP_UPLOAD, sample, (long)width * (long)height);
+    }
+    
+    /**
+     * Uploads rectangular area of data into graphical representation of bitmap with one bulk write
+     * (must be called from JavaFX application thread)
+     * @param x X coordinate of top left pixel of area
+     * @param y Y coordinate of top left pixel of area
+     * @param width Width of area
+     * @param height Height of area
+     */
+    protected void uploadRegion(int x, int y, int width, int height)
+    {
+        PixelWriter pw = this.image.getPixelWriter();
+        pw.setPixels(x, y, width, height, PixelFormat.getIntArgbInstance(), this.data, y * this.width + x, this.width);
+    }
+    
+    /**
+     * Stores rectangular region from array into data of bitmap and updates intensity range
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param src Array with new ARGB values of pixels
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    protected void storeRegion(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        for (int row = 0; row < height; row++)
+        {
+            System.arraycopy(src, offset + row * stride, this.data, (y + row) * this.width + x, width);
+        }
+        this.updateIntensity(width, height, src, offset, stride);
+    }
+    
+    /**
+     * Fills rectangular region of data of bitmap with one value and updates intensity range
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param argb ARGB value of all pixels in region
+     */
+    protected void storeFill(int x, int y, int width, int height, int argb)
+    {
+        for (int row = y; row < y + height; row++)
+        {
+            Arrays.fill(this.data, row * this.width + x, row * this.width + x + width, argb);
+        }
+        this.updateIntensity(argb);
+    }
+    
+    /**
+     * Updates intensity range by values of pixels in region of array
+     * @param width Width of region
+     * @param height Height of region
+     * @param src Array with ARGB values of pixels
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    protected void updateIntensity(int width, int height, int[] src, int offset, int stride)
+    {
+        int max = this.maxIntensity;
+        int min = this.minIntensity;
+        for (int row = 0; row < height; row++)
+        {
+            int from = offset + row * stride;
+            for (int i = from; i < from + width; i++)
+            {
+                int intensity = Globals.intensity(src[i]);
+                if (intensity > max) max = intensity;
+                if (intensity < min) min = intensity;
+            }
+        }
+        this.maxIntensity = max;
+        this.minIntensity = min;
     }
     
     /**
@@ -345,22 +1173,17 @@ public class Bitmap implements Iterable<Pixel>
      * @param x Position of pixel on X axis
      * @param y Position of pixel on Y axis
      * @param px New value of pixel
-     * @param inform Flag, whether listeners should be informed about bitmap change
      */
-    private void setPixel(int x, int y, Pixel px, boolean inform)
+    public void setPixel(int x, int y, Pixel px)
     {
         if (this.isInBitmap(x, y))
         {
-            PixelWriter pw = this.image.getPixelWriter();
-            this.data[y][x] = px.toARGB();
-            int intensity = Globals.INTENSITY.apply(px);
-            if (intensity > this.maxIntensity) maxIntensity = intensity;
-            if (intensity < this.minIntensity) minIntensity = intensity;
-            pw.setColor(x, y, px.toColor());
-            if (inform == true)
-            {
-                this.invokeChange();
-            }
+            int argb = px.toARGB();
+            int old = this.data[y * this.width + x];
+            this.data[y * this.width + x] = argb;
+            this.updateIntensity(argb);
+            this.markDirty(x, y, 1, 1);
+            this.invokeChange(new Bitmap.BitmapChange(x, y, 1, 1, new int[]{old}, new int[]{argb}));
         }
     }
     
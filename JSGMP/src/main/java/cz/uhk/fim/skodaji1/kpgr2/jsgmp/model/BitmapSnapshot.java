@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+
+/**
+ * Class representing immutable version of content of bitmap.
+ * Pixels are stored in square tiles; new version copies only tiles changed by writer
+ * and shares all other tiles with previous version, so readers can use any version without locking
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public final class BitmapSnapshot
+{
+    /**
+     * Class which creates next version of snapshot by writing pixels into it;
+     * each tile is copied at most once (when it is written first time),
+     * all tiles which are not written are shared with previous version
+     */
+    public static final class Editor
+    {
+        /**
+         * Version of snapshot which is edited
+         */
+        private final BitmapSnapshot base;
+        
+        /**
+         * Tiles of next version of snapshot
+         */
+        private final int[][] tiles;
+        
+        /**
+         * Flags, whether tile has been already copied by editor (and can be written directly)
+         */
+        private final boolean[] owned;
+        
+        /**
+         * Creates new editor of snapshot
+         * @param base Version of snapshot which will be edited
+         */
+        private Editor(BitmapSnapshot base)
+        {
+            this.base = base;
+            this.tiles = base.tiles.clone();
+            this.owned = new boolean[this.tiles.length];
+        }
+        
+        /**
+         * Gets tile which can be written by editor (tile is copied when it is written first time)
+         * @param index Index of tile
+         * @param tileWidth Width of tile
+         * @param tileHeight Height of tile
+         * @return Tile owned by editor
+         */
+        private int[] tile(int index, int tileWidth, int tileHeight)
+        {
+            if (this.owned[index] == false)
+            {
+                int[] previous = this.tiles[index];
+                this.tiles[index] = Objects.nonNull(previous) ? previous.clone() : new int[tileWidth * tileHeight];
+                this.owned[index] = true;
+            }
+            return this.tiles[index];
+        }
+        
+        /**
+         * Writes rectangular region from array into snapshot
+         * @param x X coordinate of top left pixel of region
+         * @param y Y coordinate of top left pixel of region
+         * @param width Width of region
+         * @param height Height of region
+         * @param src Array with new ARGB values of pixels
+         * @param offset Index in array where first pixel of region is stored
+         * @param stride Distance between starts of two consecutive rows in array
+         */
+        public void write(int x, int y, int width, int height, int[] src, int offset, int stride)
+        {
+            this.base.checkRegion(x, y, width, height);
+            if (width == 0 || height == 0)
+            {
+                return;
+            }
+            for (int ty = y / BitmapSnapshot.TILE_SIZE; ty <= (y + height - 1) / BitmapSnapshot.TILE_SIZE; ty++)
+            {
+                int tileY = ty * BitmapSnapshot.TILE_SIZE;
+                int tileHeight = Math.min(BitmapSnapshot.TILE_SIZE, this.base.height - tileY);
+                int fromY = Math.max(y, tileY);
+                int toY = Math.min(y + height, tileY + tileHeight);
+                for (int tx = x / BitmapSnapshot.TILE_SIZE; tx <= (x + width - 1) / BitmapSnapshot.TILE_SIZE; tx++)
+                {
+                    int tileX = tx * BitmapSnapshot.TILE_SIZE;
+                    int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.base.width - tileX);
+                    int fromX = Math.max(x, tileX);
+                    int toX = Math.min(x + width, tileX + tileWidth);
+                    int[] tile = this.tile(ty * this.base.columns + tx, tileWidth, tileHeight);
+                    for (int row = fromY; row < toY; row++)
+                    {
+                        System.arraycopy(src, offset + (row - y) * stride + (fromX - x), tile, (row - tileY) * tileWidth + (fromX - tileX), toX - fromX);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Fills rectangular region of snapshot with one value
+         * @param x X coordinate of top left pixel of region
+         * @param y Y coordinate of top left pixel of region
+         * @param width Width of region
+         * @param height Height of region
+         * @param argb ARGB value of all pixels in region
+         */
+        public void fill(int x, int y, int width, int height, int argb)
+        {
+            this.base.checkRegion(x, y, width, height);
+            if (width == 0 || height == 0)
+            {
+                return;
+            }
+            for (int ty = y / BitmapSnapshot.TILE_SIZE; ty <= (y + height - 1) / BitmapSnapshot.TILE_SIZE; ty++)
+            {
+                int tileY = ty * BitmapSnapshot.TILE_SIZE;
+                int tileHeight = Math.min(BitmapSnapshot.TILE_SIZE, this.base.height - tileY);
+                int fromY = Math.max(y, tileY);
+                int toY = Math.min(y + height, tileY + tileHeight);
+                for (int tx = x / BitmapSnapshot.TILE_SIZE; tx <= (x + width - 1) / BitmapSnapshot.TILE_SIZE; tx++)
+                {
+                    int tileX = tx * BitmapSnapshot.TILE_SIZE;
+                    int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.base.width - tileX);
+                    int fromX = Math.max(x, tileX);
+                    int toX = Math.min(x + width, tileX + tileWidth);
+                    int[] tile = this.tile(ty * this.base.columns + tx, tileWidth, tileHeight);
+                    for (int row = fromY; row < toY; row++)
+                    {
+                        int start = (row - tileY) * tileWidth + (fromX - tileX);
+                        Arrays.fill(tile, start, start + (toX - fromX), argb);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Replaces whole content of snapshot by content of another snapshot
+         * (tiles are shared with another snapshot, nothing is copied)
+         * @param other Snapshot with same dimensions which content will be used
+         */
+        public void restore(BitmapSnapshot other)
+        {
+            if (other.width != this.base.width || other.height != this.base.height)
+            {
+                throw new IllegalArgumentException("Snapshots must have same dimensions");
+            }
+            System.arraycopy(other.tiles, 0, this.tiles, 0, this.tiles.length);
+            Arrays.fill(this.owned, false);
+        }
+        
+        /**
+         * Creates next version of snapshot from all written pixels
+         * (editor must not be used after this call)
+         * @return Next version of snapshot
+         */
+        public BitmapSnapshot build()
+        {
+            return new BitmapSnapshot(this.base.width, this.base.height, this.tiles, this.base.version + 1);
+        }
+    }
+    
+    /**
+     * Size of one square tile of snapshot (in pixels)
+     */
+    public static final int TILE_SIZE = 64;
+    
+    /**
+     * Width of bitmap
+     */
+    private final int width;
+    
+    /**
+     * Height of bitmap
+     */
+    private final int height;
+    
+    /**
+     * Number of tiles in one row of tiles
+     */
+    private final int columns;
+    
+    /**
+     * Tiles with values of pixels (row-major, NULL tile contains only transparent black pixels)
+     */
+    private final int[][] tiles;
+    
+    /**
+     * Number of version of content of bitmap
+     */
+    private final long version;
+    
+    /**
+     * Creates new snapshot of bitmap
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @param tiles Tiles with values of pixels
+     * @param version Number of version of content of bitmap
+     */
+    private BitmapSnapshot(int width, int height, int[][] tiles, long version)
+    {
+        this.width = width;
+        this.height = height;
+        this.columns = (width + BitmapSnapshot.TILE_SIZE - 1) / BitmapSnapshot.TILE_SIZE;
+        this.tiles = tiles;
+        this.version = version;
+    }
+    
+    /**
+     * Creates snapshot of bitmap containing only transparent black pixels
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @return Snapshot of empty bitmap
+     */
+    public static BitmapSnapshot empty(int width, int height)
+    {
+        int columns = (width + BitmapSnapshot.TILE_SIZE - 1) / BitmapSnapshot.TILE_SIZE;
+        int rows = (height + BitmapSnapshot.TILE_SIZE - 1) / BitmapSnapshot.TILE_SIZE;
+        return new BitmapSnapshot(width, height, new int[columns * rows][], 0);
+    }
+    
+    /**
+     * Creates snapshot of whole content of bitmap
+     * @param data Values of all pixels of bitmap (row-major, one ARGB integer per pixel)
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @return Snapshot of content of bitmap
+     */
+    public static BitmapSnapshot of(int[] data, int width, int height)
+    {
+        return BitmapSnapshot.empty(width, height).update(data, 0, 0, width, height);
+    }
+    
+    /**
+     * Creates next version of snapshot; tiles which intersect changed region are copied from data of bitmap,
+     * all other tiles are shared with this version
+     * @param data Actual values of all pixels of bitmap (row-major, one ARGB integer per pixel)
+     * @param x X coordinate of top left pixel of changed region
+     * @param y Y coordinate of top left pixel of changed region
+     * @param width Width of changed region
+     * @param height Height of changed region
+     * @return Next version of snapshot (or this version if nothing has changed)
+     */
+    public BitmapSnapshot update(int[] data, int x, int y, int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            return this;
+        }
+        int[][] updated = this.tiles.clone();
+        for (int ty = y / BitmapSnapshot.TILE_SIZE; ty <= (y + height - 1) / BitmapSnapshot.TILE_SIZE; ty++)
+        {
+            for (int tx = x / BitmapSnapshot.TILE_SIZE; tx <= (x + width - 1) / BitmapSnapshot.TILE_SIZE; tx++)
+            {
+                int tileX = tx * BitmapSnapshot.TILE_SIZE;
+                int tileY = ty * BitmapSnapshot.TILE_SIZE;
+                int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.width - tileX);
+                int tileHeight = Math.min(BitmapSnapshot.TILE_SIZE, this.height - tileY);
+                int[] tile = new int[tileWidth * tileHeight];
+                for (int row = 0; row < tileHeight; row++)
+                {
+                    System.arraycopy(data, (tileY + row) * this.width + tileX, tile, row * tileWidth, tileWidth);
+                }
+                updated[ty * this.columns + tx] = tile;
+            }
+        }
+        return new BitmapSnapshot(this.width, this.height, updated, this.version + 1);
+    }
+    
+    /**
+     * Starts editing of next version of snapshot
+     * @return Editor which creates next version of snapshot
+     */
+    public BitmapSnapshot.Editor edit()
+    {
+        return new BitmapSnapshot.Editor(this);
+    }
+    
+    /**
+     * Gets width of bitmap
+     * @return Width of bitmap
+     */
+    public int getWidth()
+    {
+        return this.width;
+    }
+    
+    /**
+     * Gets height of bitmap
+     * @return Height of bitmap
+     */
+    public int getHeight()
+    {
+        return this.height;
+    }
+    
+    /**
+     * Gets number of version of content of bitmap
+     * @return Number of version (greater number means newer version)
+     */
+    public long getVersion()
+    {
+        return this.version;
+    }
+    
+    /**
+     * Gets ARGB value of pixel
+     * @param x Position of pixel on X axis
+     * @param y Position of pixel on Y axis
+     * @return Integer containing red, green, blue and alpha values of pixel
+     */
+    public int getARGB(int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height)
+        {
+            throw new IndexOutOfBoundsException(String.format("Position [%d; %d] is out of bitmap %d × %d!", x, y, this.width, this.height));
+        }
+        int[] tile = this.tiles[(y / BitmapSnapshot.TILE_SIZE) * this.columns + x / BitmapSnapshot.TILE_SIZE];
+        int reti = 0;
+        if (Objects.nonNull(tile))
+        {
+            int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.width - (x / BitmapSnapshot.TILE_SIZE) * BitmapSnapshot.TILE_SIZE);
+            reti = tile[(y % BitmapSnapshot.TILE_SIZE) * tileWidth + x % BitmapSnapshot.TILE_SIZE];
+        }
+        return reti;
+    }
+    
+    /**
+     * Copies rectangular region of snapshot into array
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param dst Array into which region will be copied
+     * @param offset Index in array where first pixel of region will be stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void readRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.checkRegion(x, y, width, height);
+        if (width == 0 || height == 0)
+        {
+            return;
+        }
+        for (int ty = y / BitmapSnapshot.TILE_SIZE; ty <= (y + height - 1) / BitmapSnapshot.TILE_SIZE; ty++)
+        {
+            int tileY = ty * BitmapSnapshot.TILE_SIZE;
+            int fromY = Math.max(y, tileY);
+            int toY = Math.min(y + height, tileY + BitmapSnapshot.TILE_SIZE);
+            for (int tx = x / BitmapSnapshot.TILE_SIZE; tx <= (x + width - 1) / BitmapSnapshot.TILE_SIZE; tx++)
+            {
+                int tileX = tx * BitmapSnapshot.TILE_SIZE;
+                int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.width - tileX);
+                int fromX = Math.max(x, tileX);
+                int toX = Math.min(x + width, tileX + tileWidth);
+                int[] tile = this.tiles[ty * this.columns + tx];
+                for (int row = fromY; row < toY; row++)
+                {
+                    int target = offset + (row - y) * stride + (fromX - x);
+                    if (Objects.nonNull(tile))
+                    {
+                        System.arraycopy(tile, (row - tileY) * tileWidth + (fromX - tileX), dst, target, toX - fromX);
+                    }
+                    else
+                    {
+                        Arrays.fill(dst, target, target + (toX - fromX), 0);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes rectangular region of snapshot into image tile by tile
+     * @param writer Writer of pixels of image with same dimensions as snapshot
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     */
+    public void upload(PixelWriter writer, int x, int y, int width, int height)
+    {
+        this.checkRegion(x, y, width, height);
+        if (width == 0 || height == 0)
+        {
+            return;
+        }
+        int[] empty = null;
+        for (int ty = y / BitmapSnapshot.TILE_SIZE; ty <= (y + height - 1) / BitmapSnapshot.TILE_SIZE; ty++)
+        {
+            int tileY = ty * BitmapSnapshot.TILE_SIZE;
+            int fromY = Math.max(y, tileY);
+            int toY = Math.min(y + height, tileY + BitmapSnapshot.TILE_SIZE);
+            for (int tx = x / BitmapSnapshot.TILE_SIZE; tx <= (x + width - 1) / BitmapSnapshot.TILE_SIZE; tx++)
+            {
+                int tileX = tx * BitmapSnapshot.TILE_SIZE;
+                int tileWidth = Math.min(BitmapSnapshot.TILE_SIZE, this.width - tileX);
+                int fromX = Math.max(x, tileX);
+                int toX = Math.min(x + width, tileX + tileWidth);
+                int[] tile = this.tiles[ty * this.columns + tx];
+                if (Objects.isNull(tile))
+                {
+                    if (Objects.isNull(empty))
+                    {
+                        empty = new int[BitmapSnapshot.TILE_SIZE * BitmapSnapshot.TILE_SIZE];
+                    }
+                    tile = empty;
+                }
+                writer.setPixels(fromX, fromY, toX - fromX, toY - fromY, PixelFormat.getIntArgbInstance(), tile, (fromY - tileY) * tileWidth + (fromX - tileX), tileWidth);
+            }
+        }
+    }
+    
+    /**
+     * Checks, whether rectangular region is inside of bitmap
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @throws IndexOutOfBoundsException If region is not inside of bitmap
+     */
+    private void checkRegion(int x, int y, int width, int height)
+    {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x > this.width - width || y > this.height - height)
+        {
+            throw new IndexOutOfBoundsException(String.format("Region [%d; %d] %d × %d is out of bitmap %d × %d!", x, y, width, height, this.width, this.height));
+        }
+    }
+}
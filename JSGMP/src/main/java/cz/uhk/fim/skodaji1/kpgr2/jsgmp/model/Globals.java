@@ -40,11 +40,112 @@ public class Globals {
      */
     public static final Pixel HISTOGRAM_CLEAR = new Pixel((short)51, (short)51, (short)51);
     
+    /**
+     * Number of worker threads used to apply effects on image
+     * (can be changed by system property jsgmp.effects.workers)
+     */
+    public static final int EFFECTS_WORKERS = Math.max(1, Integer.getInteger("jsgmp.effects.workers", Runtime.getRuntime().availableProcessors()));
+    
+    /**
+     * Size of one square tile of image processed by one worker at once (in pixels)
+     * (can be changed by system property jsgmp.effects.tile)
+     */
+    public static final int EFFECTS_TILE_SIZE = Math.max(1, Integer.getInteger("jsgmp.effects.tile", 128));
+    
+    /**
+     * Number of pixels in each direction represented by one pixel of preview computed while sliders are dragged
+     * (can be changed by system property jsgmp.effects.preview)
+     */
+    public static final int EFFECTS_PREVIEW_SCALE = Math.max(1, Integer.getInteger("jsgmp.effects.preview", 4));
+    
+    /**
+     * Time after which full resolution is computed when slider is held still (in milliseconds)
+     */
+    public static final int EFFECTS_PREVIEW_IDLE = 250;
+    
+    /**
+     * Number of image files which can be exported at the same time
+     * (can be changed by system property jsgmp.export.workers)
+     */
+    public static final int EXPORT_WORKERS = Integer.getInteger("jsgmp.export.workers", 2);
+    
+    /**
+     * Maximal size of history of changes kept in memory (in bytes), older changes are moved to disk
+     * (can be changed by system property jsgmp.history.memory)
+     */
+    public static final long HISTORY_MEMORY = Long.getLong("jsgmp.history.memory", 64L * 1024L * 1024L);
+    
+    /**
+     * Maximal number of changes which can be undone, older changes are forgotten
+     * (can be changed by system property jsgmp.history.entries)
+     */
+    public static final int HISTORY_ENTRIES = Integer.getInteger("jsgmp.history.entries", 256);
+    
+    /**
+     * Number of pixels above which batch processing streams image tile by tile through scratch file
+     * instead of decoding it whole into memory (can be changed by system property jsgmp.batch.tiled)
+     */
+    public static final long BATCH_TILED_PIXELS = Long.getLong("jsgmp.batch.tiled", 64L * 1024L * 1024L);
+    
+    /**
+     * Radius of box of blur filter (in pixels)
+     */
+    public static final int FILTER_BLUR_RADIUS = 2;
+    
+    /**
+     * Standard deviation of gaussian blur filter (in pixels)
+     */
+    public static final double FILTER_GAUSSIAN_SIGMA = 2f;
+    
+    /**
+     * Standard deviation of blur subtracted by sharpen filter (in pixels)
+     */
+    public static final double FILTER_SHARPEN_SIGMA = 1f;
+    
+    /**
+     * Strength of sharpen filter (in percents)
+     */
+    public static final double FILTER_SHARPEN_AMOUNT = 100f;
+    
+    /**
+     * Strength of edge detection filter (in percents)
+     */
+    public static final double FILTER_EDGES = 100f;
+    
+    /**
+     * Part of darkest and brightest pixels ignored by automatic levels and contrast
+     */
+    public static final double AUTO_LEVELS_CLIP = 0.005;
+    
+    /**
+     * Flag, whether SIMD kernels should be used when they are available
+     * (they are packed as multi-release classes of jar built on JDK 17 or newer and need application to be started
+     * from that jar with --add-modules jdk.incubator.vector,
+     * can be disabled by system property jsgmp.vector)
+     */
+    public static final boolean VECTOR_KERNELS = Boolean.parseBoolean(System.getProperty("jsgmp.vector", "true"));
+    
+    /**
+     * Flag, whether durations of stages of processing should be measured
+     * (can be disabled by system property jsgmp.metrics)
+     */
+    public static final boolean METRICS = Boolean.parseBoolean(System.getProperty("jsgmp.metrics", "true"));
+    
     /**
      * Function which computes intensity of pixel
      */
-    public static final Function<Pixel, Integer> INTENSITY = (Pixel px) -> 
+    public static final Function<Pixel, Integer> INTENSITY = (Pixel px) ->
     {
-        return (int)Math.round(((double)px.getRed() + (double)px.getGreen() + (double)px.getBlue()) / 3f);
+        return Globals.intensity(px.toARGB());
     };
+
+    /**
+     * Computes intensity of pixel without creating any pixel object
+     * @param argb Integer containing red, green, blue and alpha values of pixel
+     * @return Intensity of pixel
+     */
+    public static int intensity(int argb)
+    {
+        return (int)Math.round(((double)Pixel.red(argb) + (double)Pixel.green(argb) + (double)Pixel.blue(argb)) / 3f);
+    }
 }
@@ -0,0 +1,998 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Class which holds history of changes of bitmap and allows to undo and redo them;
+ * changes of parameters of effects are stored as actions which set previous and next value,
+ * changes of pixels are stored as compressed changed tiles (tiles are moved to disk when history is too large,
+ * space of forgotten tiles in file on disk is reused)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class History implements Closeable
+{
+    /**
+     * Size of one square tile of changed pixels (in pixels)
+     */
+    private static final int TILE_SIZE = 64;
+    
+    /**
+     * Estimated size of entry without pixel data (in bytes)
+     */
+    private static final long ENTRY_SIZE = 64;
+    
+    /**
+     * Class representing file into which data of old changes are moved
+     * (space of released data is reused and file is shortened when its end is released)
+     */
+    private static class SpillFile implements Closeable
+    {
+        /**
+         * Channel of file
+         */
+        private final FileChannel channel;
+        
+        /**
+         * Released regions of file which can be used again (position of region mapped to its length)
+         */
+        private final TreeMap<Long, Long> free;
+        
+        /**
+         * Length of used part of file
+         */
+        private long end;
+        
+        /**
+         * Creates new temporary file which is deleted when it is closed
+         * @throws IOException File cannot be created
+         */
+        public SpillFile() throws IOException
+        {
+            this.channel = FileChannel.open(
+                    Files.createTempFile("jsgmp-", ".history"),
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE
+            );
+            this.free = new TreeMap<>();
+            this.end = 0;
+        }
+        
+        /**
+         * Gets channel of file
+         * @return Channel of file
+         */
+        public FileChannel getChannel()
+        {
+            return this.channel;
+        }
+        
+        /**
+         * Finds space in file for data (first released region large enough is used, otherwise data are appended)
+         * @param length Length of data (in bytes)
+         * @return Position in file where data can be written
+         */
+        public long allocate(long length)
+        {
+            for (Map.Entry<Long, Long> region: this.free.entrySet())
+            {
+                long position = region.getKey();
+                long available = region.getValue();
+                if (available >= length)
+                {
+                    this.free.remove(position);
+                    if (available > length)
+                    {
+                        this.free.put(position + length, available - length);
+                    }
+                    return position;
+                }
+            }
+            long reti = this.end;
+            this.end += length;
+            return reti;
+        }
+        
+        /**
+         * Releases space of data in file (released space at the end of file is cut off)
+         * @param position Position of data in file
+         * @param length Length of data (in bytes)
+         * @throws IOException File cannot be shortened
+         */
+        public void release(long position, long length) throws IOException
+        {
+            long from = position;
+            long to = position + length;
+            Map.Entry<Long, Long> before = this.free.floorEntry(from);
+            if (Objects.nonNull(before) && before.getKey() + before.getValue() == from)
+            {
+                from = before.getKey();
+                this.free.remove(from);
+            }
+            Long after = this.free.remove(to);
+            if (Objects.nonNull(after))
+            {
+                to += after;
+            }
+            if (to >= this.end)
+            {
+                this.end = from;
+                this.channel.truncate(from);
+            }
+            else
+            {
+                this.free.put(from, to - from);
+            }
+        }
+        
+        /**
+         * Releases whole file
+         * @throws IOException File cannot be shortened
+         */
+        public void clear() throws IOException
+        {
+            this.free.clear();
+            this.end = 0;
+            this.channel.truncate(0);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.channel.close();
+        }
+    }
+    
+    /**
+     * Class representing one entry in history
+     */
+    private static abstract class Entry
+    {
+        /**
+         * Flag, whether entry has been forgotten (its data cannot be used anymore)
+         */
+        private boolean released = false;
+        
+        /**
+         * Reverts change described by entry
+         */
+        public abstract void undo();
+        
+        /**
+         * Performs change described by entry again
+         */
+        public abstract void redo();
+        
+        /**
+         * Gets size of memory occupied by entry
+         * @return Size of entry in memory (in bytes)
+         */
+        public abstract long getMemory();
+        
+        /**
+         * Moves data of entry to disk
+         * @param file File into which data will be moved
+         * @return Size of memory released by moving data (in bytes)
+         * @throws IOException Data cannot be written
+         */
+        public abstract long spill(History.SpillFile file) throws IOException;
+        
+        /**
+         * Releases space occupied by data of entry in file on disk (entry cannot be used anymore)
+         * @param file File into which data has been moved
+         * @throws IOException File cannot be shortened
+         */
+        public abstract void release(History.SpillFile file) throws IOException;
+    }
+    
+    /**
+     * Class representing change of parameter of effect
+     */
+    private static class ParameterEntry extends History.Entry
+    {
+        /**
+         * Action which sets previous value of parameter
+         */
+        private final Runnable undo;
+        
+        /**
+         * Action which sets next value of parameter
+         */
+        private final Runnable redo;
+        
+        /**
+         * Creates new change of parameter of effect
+         * @param undo Action which sets previous value of parameter
+         * @param redo Action which sets next value of parameter
+         */
+        public ParameterEntry(Runnable undo, Runnable redo)
+        {
+            this.undo = undo;
+            this.redo = redo;
+        }
+
+        @Override
+        public void undo()
+        {
+            this.undo.run();
+        }
+
+        @Override
+        public void redo()
+        {
+            this.redo.run();
+        }
+
+        @Override
+        public long getMemory()
+        {
+            return History.ENTRY_SIZE;
+        }
+
+        @Override
+        public long spill(History.SpillFile file)
+        {
+            return 0;
+        }
+
+        @Override
+        public void release(History.SpillFile file)
+        {
+        }
+    }
+    
+    /**
+     * Class representing more changes which are undone and redone at once
+     */
+    private static class GroupEntry extends History.Entry
+    {
+        /**
+         * Changes in group (in order in which they have been made)
+         */
+        private final List<History.Entry> entries;
+        
+        /**
+         * Creates new group of changes
+         * @param entries Changes in group (in order in which they have been made)
+         */
+        public GroupEntry(List<History.Entry> entries)
+        {
+            this.entries = entries;
+        }
+
+        @Override
+        public void undo()
+        {
+            for (int i = this.entries.size() - 1; i >= 0; i--)
+            {
+                this.entries.get(i).undo();
+            }
+        }
+
+        @Override
+        public void redo()
+        {
+            for (History.Entry entry: this.entries)
+            {
+                entry.redo();
+            }
+        }
+
+        @Override
+        public long getMemory()
+        {
+            long reti = History.ENTRY_SIZE;
+            for (History.Entry entry: this.entries)
+            {
+                reti += entry.getMemory();
+            }
+            return reti;
+        }
+
+        @Override
+        public long spill(History.SpillFile file) throws IOException
+        {
+            long reti = 0;
+            for (History.Entry entry: this.entries)
+            {
+                reti += entry.spill(file);
+            }
+            return reti;
+        }
+
+        @Override
+        public void release(History.SpillFile file) throws IOException
+        {
+            for (History.Entry entry: this.entries)
+            {
+                entry.release(file);
+            }
+        }
+    }
+    
+    /**
+     * Class representing change of pixels in one tile of bitmap
+     */
+    private static class Tile
+    {
+        /**
+         * X coordinate of top left pixel of tile
+         */
+        private final int x;
+        
+        /**
+         * Y coordinate of top left pixel of tile
+         */
+        private final int y;
+        
+        /**
+         * Width of tile
+         */
+        private final int width;
+        
+        /**
+         * Height of tile
+         */
+        private final int height;
+        
+        /**
+         * Compressed values of pixels before change (NULL if they have been moved to disk)
+         */
+        private byte[] oldValues;
+        
+        /**
+         * Compressed values of pixels after change (NULL if they have been moved to disk)
+         */
+        private byte[] newValues;
+        
+        /**
+         * Position of compressed values in file on disk
+         */
+        private long position;
+        
+        /**
+         * Length of compressed values before change
+         */
+        private final int oldLength;
+        
+        /**
+         * Length of compressed values after change
+         */
+        private final int newLength;
+        
+        /**
+         * Creates new change of pixels in one tile
+         * @param x X coordinate of top left pixel of tile
+         * @param y Y coordinate of top left pixel of tile
+         * @param width Width of tile
+         * @param height Height of tile
+         * @param oldValues Compressed values of pixels before change
+         * @param newValues Compressed values of pixels after change
+         */
+        public Tile(int x, int y, int width, int height, byte[] oldValues, byte[] newValues)
+        {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.oldValues = oldValues;
+            this.newValues = newValues;
+            this.oldLength = oldValues.length;
+            this.newLength = newValues.length;
+            this.position = -1;
+        }
+        
+        /**
+         * Writes values of pixels of tile into bitmap
+         * @param bitmap Bitmap into which values will be written
+         * @param file File with values moved to disk
+         * @param old TRUE if values before change should be written, FALSE if values after change should be written
+         */
+        public void write(Bitmap bitmap, History.SpillFile file, boolean old)
+        {
+            byte[] compressed = old ? this.oldValues : this.newValues;
+            if (Objects.isNull(compressed))
+            {
+                try
+                {
+                    compressed = new byte[old ? this.oldLength : this.newLength];
+                    ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                    long from = this.position + (old ? 0 : this.oldLength);
+                    while (buffer.hasRemaining())
+                    {
+                        if (file.getChannel().read(buffer, from + buffer.position()) < 0)
+                        {
+                            throw new IOException("Unexpected end of history file");
+                        }
+                    }
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            int[] values = History.decompress(compressed, this.width * this.height);
+            bitmap.writeRegionNow(this.x, this.y, this.width, this.height, values, 0, this.width);
+        }
+        
+        /**
+         * Moves compressed values of pixels to disk
+         * @param file File into which values will be moved
+         * @return Size of memory released by moving values (in bytes)
+         * @throws IOException Values cannot be written
+         */
+        public long spill(History.SpillFile file) throws IOException
+        {
+            long reti = 0;
+            if (Objects.nonNull(this.oldValues))
+            {
+                this.position = file.allocate(this.oldLength + this.newLength);
+                ByteBuffer buffer = ByteBuffer.allocate(this.oldLength + this.newLength);
+                buffer.put(this.oldValues).put(this.newValues).flip();
+                long at = this.position;
+                while (buffer.hasRemaining())
+                {
+                    at += file.getChannel().write(buffer, at);
+                }
+                reti = this.oldLength + this.newLength;
+                this.oldValues = null;
+                this.newValues = null;
+            }
+            return reti;
+        }
+        
+        /**
+         * Releases space occupied by values of pixels in file on disk
+         * @param file File into which values has been moved
+         * @throws IOException File cannot be shortened
+         */
+        public void release(History.SpillFile file) throws IOException
+        {
+            if (this.position >= 0)
+            {
+                file.release(this.position, this.oldLength + this.newLength);
+                this.position = -1;
+            }
+        }
+        
+        /**
+         * Gets size of memory occupied by tile
+         * @return Size of tile in memory (in bytes)
+         */
+        public long getMemory()
+        {
+            return Objects.nonNull(this.oldValues) ? this.oldLength + this.newLength : 0;
+        }
+    }
+    
+    /**
+     * Class representing change of pixels of bitmap
+     */
+    private class PixelEntry extends History.Entry
+    {
+        /**
+         * Changed tiles of bitmap
+         */
+        private final List<History.Tile> tiles;
+        
+        /**
+         * Creates new change of pixels of bitmap
+         * @param tiles Changed tiles of bitmap
+         */
+        public PixelEntry(List<History.Tile> tiles)
+        {
+            this.tiles = tiles;
+        }
+
+        @Override
+        public void undo()
+        {
+            for (History.Tile tile: this.tiles)
+            {
+                tile.write(History.this.bitmap, History.this.file, true);
+            }
+        }
+
+        @Override
+        public void redo()
+        {
+            for (History.Tile tile: this.tiles)
+            {
+                tile.write(History.this.bitmap, History.this.file, false);
+            }
+        }
+
+        @Override
+        public long getMemory()
+        {
+            long reti = History.ENTRY_SIZE;
+            for (History.Tile tile: this.tiles)
+            {
+                reti += History.ENTRY_SIZE + tile.getMemory();
+            }
+            return reti;
+        }
+
+        @Override
+        public long spill(History.SpillFile file) throws IOException
+        {
+            long reti = 0;
+            for (History.Tile tile: this.tiles)
+            {
+                reti += tile.spill(file);
+            }
+            return reti;
+        }
+
+        @Override
+        public void release(History.SpillFile file) throws IOException
+        {
+            for (History.Tile tile: this.tiles)
+            {
+                tile.release(file);
+            }
+        }
+    }
+    
+    /**
+     * Bitmap which changes are stored in history
+     */
+    private final Bitmap bitmap;
+    
+    /**
+     * Maximal size of history kept in memory (in bytes)
+     */
+    private final long budget;
+    
+    /**
+     * Maximal number of changes which can be undone
+     */
+    private final int limit;
+    
+    /**
+     * Changes which can be undone (last change is on top)
+     */
+    private final Deque<History.Entry> undoStack;
+    
+    /**
+     * Changes which can be redone (last undone change is on top)
+     */
+    private final Deque<History.Entry> redoStack;
+    
+    /**
+     * Size of history kept in memory (in bytes)
+     */
+    private long memory;
+    
+    /**
+     * Changes which data may be still kept in memory (oldest change is first)
+     */
+    private final Deque<History.Entry> resident;
+    
+    /**
+     * File into which old changes are moved (NULL if it has not been needed yet)
+     */
+    private History.SpillFile file;
+    
+    /**
+     * Flag, whether change is being undone or redone (such changes are not stored in history)
+     */
+    private volatile boolean replaying;
+    
+    /**
+     * Changes made in actual group (NULL if there is no group)
+     */
+    private List<History.Entry> group;
+    
+    /**
+     * Creates new history of changes of bitmap
+     * @param bitmap Bitmap which changes will be stored in history
+     * @param budget Maximal size of history kept in memory (in bytes)
+     * @param limit Maximal number of changes which can be undone
+     */
+    public History(Bitmap bitmap, long budget, int limit)
+    {
+        this.bitmap = bitmap;
+        this.budget = budget;
+        this.limit = Math.max(1, limit);
+        this.undoStack = new ArrayDeque<>();
+        this.redoStack = new ArrayDeque<>();
+        this.resident = new ArrayDeque<>();
+        this.memory = 0;
+        this.file = null;
+        this.replaying = false;
+        this.group = null;
+        this.bitmap.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        {
+            @Override
+            public void onChange(Bitmap bitmap)
+            {
+            }
+            
+            @Override
+            public void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+            {
+                if (change.hasValues() && History.this.replaying == false)
+                {
+                    History.this.recordPixels(change);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Compresses values of pixels
+     * @param values Array with values of pixels
+     * @param offset Index of first pixel in array
+     * @param width Width of compressed region
+     * @param height Height of compressed region
+     * @param stride Distance between starts of two consecutive rows in array
+     * @return Compressed values of pixels
+     */
+    private static byte[] compress(int[] values, int offset, int width, int height, int stride)
+    {
+        ByteBuffer raw = ByteBuffer.allocate(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int row = 0; row < height; row++)
+        {
+            raw.asIntBuffer().position(row * width).put(values, offset + row * stride, width);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw.array());
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, raw.capacity() / 4)];
+        int length = 0;
+        while (deflater.finished() == false)
+        {
+            if (length == buffer.length)
+            {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+        byte[] reti = new byte[length];
+        System.arraycopy(buffer, 0, reti, 0, length);
+        return reti;
+    }
+    
+    /**
+     * Decompresses values of pixels
+     * @param compressed Compressed values of pixels
+     * @param count Number of pixels
+     * @return Array with values of pixels
+     */
+    private static int[] decompress(byte[] compressed, int count)
+    {
+        byte[] raw = new byte[count * 4];
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        try
+        {
+            int length = 0;
+            while (length < raw.length && inflater.finished() == false)
+            {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        }
+        catch (DataFormatException ex)
+        {
+            Logger.getLogger(History.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        finally
+        {
+            inflater.end();
+        }
+        int[] reti = new int[count];
+        ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(reti);
+        return reti;
+    }
+    
+    /**
+     * Stores change of pixels into history (only tiles in which any pixel has changed are stored)
+     * @param change Change of bitmap with values of pixels before and after change
+     */
+    private void recordPixels(Bitmap.BitmapChange change)
+    {
+        int[] oldValues = change.getOldValues();
+        int[] newValues = change.getNewValues();
+        int stride = change.getWidth();
+        List<History.Tile> tiles = new ArrayList<>();
+        for (int ty = 0; ty < change.getHeight(); ty += History.TILE_SIZE)
+        {
+            for (int tx = 0; tx < change.getWidth(); tx += History.TILE_SIZE)
+            {
+                int w = Math.min(History.TILE_SIZE, change.getWidth() - tx);
+                int h = Math.min(History.TILE_SIZE, change.getHeight() - ty);
+                int offset = ty * stride + tx;
+                boolean changed = false;
+                for (int row = 0; row < h && changed == false; row++)
+                {
+                    for (int col = 0; col < w && changed == false; col++)
+                    {
+                        changed = oldValues[offset + row * stride + col] != newValues[offset + row * stride + col];
+                    }
+                }
+                if (changed == true)
+                {
+                    tiles.add(new History.Tile(
+                            change.getX() + tx, change.getY() + ty, w, h,
+                            History.compress(oldValues, offset, w, h, stride),
+                            History.compress(newValues, offset, w, h, stride)
+                    ));
+                }
+            }
+        }
+        if (tiles.isEmpty() == false)
+        {
+            this.record(new History.PixelEntry(tiles));
+        }
+    }
+    
+    /**
+     * Stores change of parameter of effect into history
+     * @param undo Action which sets previous value of parameter
+     * @param redo Action which sets next value of parameter
+     */
+    public void recordParameter(Runnable undo, Runnable redo)
+    {
+        if (this.replaying == false)
+        {
+            this.record(new History.ParameterEntry(undo, redo));
+        }
+    }
+    
+    /**
+     * Performs action and stores all changes made by it as one entry in history
+     * (changes are undone and redone at once)
+     * @param action Action which will be performed
+     */
+    public void group(Runnable action)
+    {
+        List<History.Entry> entries = new ArrayList<>();
+        synchronized (this)
+        {
+            this.group = entries;
+        }
+        try
+        {
+            action.run();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                this.group = null;
+            }
+        }
+        if (entries.isEmpty() == false)
+        {
+            this.record(new History.GroupEntry(entries));
+        }
+    }
+    
+    /**
+     * Stores entry into history (all undone changes are forgotten,
+     * oldest change is forgotten when there are too many changes)
+     * @param entry Entry which will be stored into history
+     */
+    private synchronized void record(History.Entry entry)
+    {
+        if (Objects.nonNull(this.group))
+        {
+            this.group.add(entry);
+            return;
+        }
+        for (History.Entry undone: this.redoStack)
+        {
+            this.forget(undone);
+        }
+        this.redoStack.clear();
+        this.undoStack.push(entry);
+        this.resident.addLast(entry);
+        this.memory += entry.getMemory();
+        while (this.undoStack.size() > this.limit)
+        {
+            this.forget(this.undoStack.removeLast());
+        }
+        this.spill();
+    }
+    
+    /**
+     * Forgets entry (releases its memory and its space in file on disk)
+     * @param entry Entry which will be forgotten
+     */
+    private void forget(History.Entry entry)
+    {
+        this.memory -= entry.getMemory();
+        entry.released = true;
+        if (Objects.nonNull(this.file))
+        {
+            try
+            {
+                entry.release(this.file);
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(History.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Moves oldest changes to disk until history kept in memory fits into its maximal size
+     * (each change is moved only once, changes which has nothing to move are skipped)
+     */
+    private void spill()
+    {
+        try
+        {
+            while (this.memory > this.budget && this.resident.isEmpty() == false)
+            {
+                History.Entry oldest = this.resident.pollFirst();
+                if (oldest.released == true)
+                {
+                    continue;
+                }
+                if (Objects.isNull(this.file))
+                {
+                    this.file = new History.SpillFile();
+                }
+                this.memory -= oldest.spill(this.file);
+            }
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(History.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Checks, whether change is being undone or redone
+     * @return TRUE if change is being undone or redone, FALSE otherwise
+     */
+    public boolean isReplaying()
+    {
+        return this.replaying;
+    }
+    
+    /**
+     * Checks, whether there is any change which can be undone
+     * @return TRUE if there is change which can be undone, FALSE otherwise
+     */
+    public synchronized boolean canUndo()
+    {
+        return this.undoStack.isEmpty() == false;
+    }
+    
+    /**
+     * Checks, whether there is any change which can be redone
+     * @return TRUE if there is change which can be redone, FALSE otherwise
+     */
+    public synchronized boolean canRedo()
+    {
+        return this.redoStack.isEmpty() == false;
+    }
+    
+    /**
+     * Reverts last change
+     * @return TRUE if change has been reverted, FALSE if there is no change which can be reverted
+     */
+    public synchronized boolean undo()
+    {
+        boolean reti = false;
+        if (this.undoStack.isEmpty() == false)
+        {
+            History.Entry entry = this.undoStack.pop();
+            this.replaying = true;
+            try
+            {
+                entry.undo();
+            }
+            finally
+            {
+                this.replaying = false;
+            }
+            this.redoStack.push(entry);
+            reti = true;
+        }
+        return reti;
+    }
+    
+    /**
+     * Performs last reverted change again
+     * @return TRUE if change has been performed again, FALSE if there is no change which can be performed again
+     */
+    public synchronized boolean redo()
+    {
+        boolean reti = false;
+        if (this.redoStack.isEmpty() == false)
+        {
+            History.Entry entry = this.redoStack.pop();
+            this.replaying = true;
+            try
+            {
+                entry.redo();
+            }
+            finally
+            {
+                this.replaying = false;
+            }
+            this.undoStack.push(entry);
+            reti = true;
+        }
+        return reti;
+    }
+    
+    /**
+     * Forgets all changes stored in history
+     */
+    public synchronized void clear()
+    {
+        this.undoStack.forEach((History.Entry entry) -> {entry.released = true;});
+        this.redoStack.forEach((History.Entry entry) -> {entry.released = true;});
+        this.undoStack.clear();
+        this.redoStack.clear();
+        this.resident.clear();
+        this.memory = 0;
+        if (Objects.nonNull(this.file))
+        {
+            try
+            {
+                this.file.clear();
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(History.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.clear();
+        if (Objects.nonNull(this.file))
+        {
+            this.file.close();
+            this.file = null;
+        }
+    }
+}
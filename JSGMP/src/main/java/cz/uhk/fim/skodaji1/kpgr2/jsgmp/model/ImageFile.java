@@ -18,15 +18,22 @@
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
 
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
-import java.awt.Color;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * Class representing file containing image data
@@ -54,23 +61,7 @@ public class ImageFile
         Bitmap data = new Bitmap(1, 1);
         try
         {
-            BufferedImage rawImage = ImageIO.read(stream);
-            data = ThreadManager.createBitmap(rawImage.getWidth(), rawImage.getHeight());
-            //data = new Bitmap(rawImage.getWidth(), rawImage.getHeight());
-            Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-            for (int y = 0; y < rawImage.getHeight(); y++)
-            {
-                for (int x = 0; x < rawImage.getWidth(); x++)
-                {
-                    Color c = new Color(rawImage.getRGB(x, y), true);
-                    short r = (short)c.getRed();
-                    short g = (short)c.getGreen();
-                    short b = (short)c.getBlue();
-                    short a = (short)c.getAlpha();
-                    transaction.setPixel(x, y, new Pixel(r, g, b, a));
-                }
-            }
-            data.processTransaction(transaction);
+            data = ImageFile.load(ImageIO.read(stream));
         }
         catch (IOException ex)
         {
@@ -89,23 +80,7 @@ public class ImageFile
         Bitmap data = new Bitmap(1, 1);
         try
         {
-            BufferedImage rawImage = ImageIO.read(new File(path));
-            data = ThreadManager.createBitmap(rawImage.getWidth(), rawImage.getHeight());
-            //data = new Bitmap(rawImage.getWidth(), rawImage.getHeight());
-            Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-            for (int y = 0; y < rawImage.getHeight(); y++)
-            {
-                for (int x = 0; x < rawImage.getWidth(); x++)
-                {
-                    Color c = new Color(rawImage.getRGB(x, y), true);
-                    short r = (short)c.getRed();
-                    short g = (short)c.getGreen();
-                    short b = (short)c.getBlue();
-                    short a = (short)c.getAlpha();
-                    transaction.setPixel(x, y, new Pixel(r, g, b, a));
-                }
-            }
-            data.processTransaction(transaction);
+            data = ImageFile.load(ImageIO.read(new File(path)));
         }
         catch (IOException ex)
         {
@@ -114,6 +89,141 @@ public class ImageFile
         this.data = data;
     }
     
+    /**
+     * Loads decoded image into new bitmap
+     * @param rawImage Decoded image
+     * @return Bitmap containing data of image
+     */
+    private static Bitmap load(BufferedImage rawImage)
+    {
+        BufferedImage image = ImageFile.toARGB(rawImage);
+        Bitmap reti = ThreadManager.createBitmap(image.getWidth(), image.getHeight());
+        reti.loadPixels(ImageFile.getPixels(image), ImageFile.getOffset(image), ImageFile.getStride(image));
+        return reti;
+    }
+    
+    /**
+     * Converts image to image with pixels stored as integers with ARGB values
+     * (image is converted only if it is not stored in that way already)
+     * @param image Image which will be converted
+     * @return Image with pixels stored as integers with ARGB values
+     */
+    public static BufferedImage toARGB(BufferedImage image)
+    {
+        return ImageFile.convert(image, BufferedImage.TYPE_INT_ARGB);
+    }
+    
+    /**
+     * Prepares image for writing into file of defined format
+     * (formats which do not support alpha channel get image without it)
+     * @param image Image with pixels stored as integers with ARGB values
+     * @param format Name of format of image file (for example "png")
+     * @return Image which can be written into file of defined format
+     */
+    public static BufferedImage forFormat(BufferedImage image, String format)
+    {
+        BufferedImage reti = image;
+        if (ImageFile.hasAlpha(format) == false)
+        {
+            reti = ImageFile.convert(image, BufferedImage.TYPE_INT_RGB);
+        }
+        return reti;
+    }
+    
+    /**
+     * Counts pixels of image stored in file (only header of file is read)
+     * @param file File with image
+     * @return Number of pixels of image
+     * @throws IOException File cannot be read or its format is not supported
+     */
+    public static long countPixels(File file) throws IOException
+    {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file))
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (readers.hasNext() == false)
+            {
+                throw new IOException("Unsupported format of image: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(stream, true, true);
+                return (long)reader.getWidth(0) * (long)reader.getHeight(0);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Checks, whether format of image file can store alpha channel
+     * @param format Name of format of image file (for example "png")
+     * @return TRUE if format can store alpha channel, FALSE otherwise
+     */
+    public static boolean hasAlpha(String format)
+    {
+        String name = format.toLowerCase();
+        return (name.equals("jpg") || name.equals("jpeg") || name.equals("bmp") || name.equals("wbmp")) == false;
+    }
+    
+    /**
+     * Converts image to defined type (image is converted only if it is not of that type already)
+     * @param image Image which will be converted
+     * @param type Required type of image
+     * @return Image of required type
+     */
+    private static BufferedImage convert(BufferedImage image, int type)
+    {
+        BufferedImage reti = image;
+        if (image.getType() != type)
+        {
+            reti = new BufferedImage(image.getWidth(), image.getHeight(), type);
+            Graphics2D g = reti.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+        return reti;
+    }
+    
+    /**
+     * Gets array in which pixels of image are stored
+     * @param image Image with pixels stored as integers
+     * @return Array with values of pixels of image
+     */
+    public static int[] getPixels(BufferedImage image)
+    {
+        return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    }
+    
+    /**
+     * Gets index of first pixel of image in array with its pixels
+     * @param image Image with pixels stored as integers
+     * @return Index of first pixel of image
+     */
+    public static int getOffset(BufferedImage image)
+    {
+        WritableRaster raster = image.getRaster();
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel)raster.getSampleModel();
+        return raster.getDataBuffer().getOffset() + model.getOffset(
+                -raster.getSampleModelTranslateX(),
+                -raster.getSampleModelTranslateY()
+        );
+    }
+    
+    /**
+     * Gets distance between starts of two consecutive rows in array with pixels of image
+     * @param image Image with pixels stored as integers
+     * @return Distance between starts of two consecutive rows
+     */
+    public static int getStride(BufferedImage image)
+    {
+        return ((SinglePixelPackedSampleModel)image.getRaster().getSampleModel()).getScanlineStride();
+    }
+    
     /**
      * Gets path to file
      * @return Path to file
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import java.util.Objects;
+
+/**
+ * Class providing SIMD kernels (if they are available on running virtual machine)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class Kernels
+{
+    /**
+     * Name of class implementing kernels by JDK Vector API (it is compiled only on JDK 17 or newer)
+     */
+    private static final String VECTOR_CLASS = "cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.VectorPixelKernels";
+    
+    /**
+     * Available SIMD kernels (NULL if there are none)
+     */
+    private static final PixelKernels KERNELS = Kernels.load();
+    
+    /**
+     * Creates new provider of kernels (it should not be instantiated)
+     */
+    private Kernels(){}
+    
+    /**
+     * Loads SIMD kernels
+     * @return SIMD kernels or NULL if they are not available
+     */
+    private static PixelKernels load()
+    {
+        PixelKernels reti = null;
+        if (Globals.VECTOR_KERNELS == true)
+        {
+            try
+            {
+                reti = (PixelKernels)Class.forName(Kernels.VECTOR_CLASS).getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | LinkageError ex)
+            {
+                // Vector API is not present, scalar code will be used
+                reti = null;
+            }
+        }
+        return reti;
+    }
+    
+    /**
+     * Gets SIMD kernels
+     * @return SIMD kernels or NULL if they are not available (scalar code should be used)
+     */
+    public static PixelKernels get()
+    {
+        return Kernels.KERNELS;
+    }
+    
+    /**
+     * Checks, whether SIMD kernels are available
+     * @return TRUE if SIMD kernels are available, FALSE otherwise
+     */
+    public static boolean isAvailable()
+    {
+        return Objects.nonNull(Kernels.KERNELS);
+    }
+}
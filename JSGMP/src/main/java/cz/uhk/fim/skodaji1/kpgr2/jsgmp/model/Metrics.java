@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * Class holding registry of metrics of processing of images
+ * (durations of stages, processed pixels, allocated memory and depths of queues)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class Metrics
+{
+    /**
+     * Name of stage which applies effects on whole image
+     */
+    public static final String EFFECTS_FULL = "effects.full";
+    
+    /**
+     * Name of stage which applies effects on downscaled preview
+     */
+    public static final String EFFECTS_PREVIEW = "effects.preview";
+    
+    /**
+     * Name of stage which applies effects on one tile of image
+     */
+    public static final String EFFECTS_TILE = "effects.tile";
+    
+    /**
+     * Name of stage which computes histograms from whole image
+     */
+    public static final String HISTOGRAM_FULL = "histogram.full";
+    
+    /**
+     * Name of stage which updates histograms by changed pixels
+     */
+    public static final String HISTOGRAM_UPDATE = "histogram.update";
+    
+    /**
+     * Name of stage which applies queued changes on concurrent bitmap
+     */
+    public static final String BITMAP_APPLY = "bitmap.apply";
+    
+    /**
+     * Name of stage which uploads changed pixels on JavaFX application thread
+     */
+    public static final String BITMAP_UPLOAD = "bitmap.upload";
+    
+    /**
+     * Name of stage which encodes and writes exported image
+     */
+    public static final String EXPORT = "export";
+    
+    /**
+     * Name of gauge with number of changes taken from queue of concurrent bitmap at once
+     */
+    public static final String BITMAP_QUEUE = "bitmap.queue";
+    
+    /**
+     * Number of buckets of latency histogram (bucket i holds durations from 2^i to 2^(i+1) nanoseconds)
+     */
+    private static final int BUCKETS = 40;
+    
+    /**
+     * Class representing one stage of processing
+     */
+    public static class Stage
+    {
+        /**
+         * Number of measured passes in each bucket of latency histogram
+         */
+        private final AtomicLongArray buckets;
+        
+        /**
+         * Number of measured passes
+         */
+        private final LongAdder count;
+        
+        /**
+         * Sum of durations of all passes (in nanoseconds)
+         */
+        private final LongAdder time;
+        
+        /**
+         * Number of processed pixels
+         */
+        private final LongAdder pixels;
+        
+        /**
+         * Number of allocated bytes
+         */
+        private final LongAdder bytes;
+        
+        /**
+         * Number of passes in which allocated memory has been measured
+         */
+        private final LongAdder allocations;
+        
+        /**
+         * Duration of longest pass (in nanoseconds)
+         */
+        private final AtomicLong max;
+        
+        /**
+         * Creates new stage of processing
+         */
+        public Stage()
+        {
+            this.buckets = new AtomicLongArray(Metrics.BUCKETS);
+            this.count = new LongAdder();
+            this.time = new LongAdder();
+            this.pixels = new LongAdder();
+            this.bytes = new LongAdder();
+            this.allocations = new LongAdder();
+            this.max = new AtomicLong(0);
+        }
+        
+        /**
+         * Records one pass of stage
+         * @param nanos Duration of pass (in nanoseconds)
+         * @param pixels Number of processed pixels
+         * @param bytes Number of allocated bytes (negative if it has not been measured)
+         */
+        public void record(long nanos, long pixels, long bytes)
+        {
+            long duration = Math.max(nanos, 1);
+            int bucket = Math.min(63 - Long.numberOfLeadingZeros(duration), Metrics.BUCKETS - 1);
+            this.buckets.incrementAndGet(bucket);
+            this.count.increment();
+            this.time.add(duration);
+            this.pixels.add(pixels);
+            if (bytes >= 0)
+            {
+                this.bytes.add(bytes);
+                this.allocations.increment();
+            }
+            this.max.accumulateAndGet(duration, Math::max);
+        }
+        
+        /**
+         * Gets number of measured passes
+         * @return Number of measured passes
+         */
+        public long getCount()
+        {
+            return this.count.sum();
+        }
+        
+        /**
+         * Gets average duration of pass
+         * @return Average duration of pass (in milliseconds)
+         */
+        public double getMean()
+        {
+            long passes = this.count.sum();
+            return (passes == 0) ? 0 : (double)this.time.sum() / (double)passes / 1e6;
+        }
+        
+        /**
+         * Gets duration of longest pass
+         * @return Duration of longest pass (in milliseconds)
+         */
+        public double getMax()
+        {
+            return (double)this.max.get() / 1e6;
+        }
+        
+        /**
+         * Gets upper estimate of percentile of durations of passes
+         * @param percentile Percentile [0 1]
+         * @return Upper bound of bucket of latency histogram which contains percentile (in milliseconds)
+         */
+        public double getPercentile(double percentile)
+        {
+            long total = 0;
+            long[] counts = new long[Metrics.BUCKETS];
+            for (int i = 0; i < Metrics.BUCKETS; i++)
+            {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            long limit = (long)Math.ceil((double)total * percentile);
+            long sum = 0;
+            for (int i = 0; i < Metrics.BUCKETS; i++)
+            {
+                sum += counts[i];
+                if (sum >= limit && sum > 0)
+                {
+                    return Math.min((double)(1L << (i + 1)), (double)this.max.get()) / 1e6;
+                }
+            }
+            return 0;
+        }
+        
+        /**
+         * Gets number of pixels processed per second
+         * @return Number of pixels processed per second (while stage was running)
+         */
+        public double getPixelRate()
+        {
+            long nanos = this.time.sum();
+            return (nanos == 0) ? 0 : (double)this.pixels.sum() / ((double)nanos / 1e9);
+        }
+        
+        /**
+         * Gets average number of bytes allocated by one pass
+         * @return Average number of allocated bytes (0 if it has not been measured)
+         */
+        public double getAllocationPerPass()
+        {
+            long passes = this.allocations.sum();
+            return (passes == 0) ? 0 : (double)this.bytes.sum() / (double)passes;
+        }
+        
+        /**
+         * Gets numbers of passes in buckets of latency histogram
+         * @return Array where value at index i is number of passes which took from 2^i to 2^(i+1) nanoseconds
+         */
+        public long[] getBuckets()
+        {
+            long[] reti = new long[Metrics.BUCKETS];
+            for (int i = 0; i < Metrics.BUCKETS; i++)
+            {
+                reti[i] = this.buckets.get(i);
+            }
+            return reti;
+        }
+    }
+    
+    /**
+     * Class representing measured value which changes in time
+     */
+    public static class Gauge
+    {
+        /**
+         * Last measured value
+         */
+        private final AtomicLong last;
+        
+        /**
+         * Maximal measured value
+         */
+        private final AtomicLong max;
+        
+        /**
+         * Creates new measured value
+         */
+        public Gauge()
+        {
+            this.last = new AtomicLong(0);
+            this.max = new AtomicLong(0);
+        }
+        
+        /**
+         * Sets actual value
+         * @param value Actual value
+         */
+        public void set(long value)
+        {
+            this.last.set(value);
+            this.max.accumulateAndGet(value, Math::max);
+        }
+        
+        /**
+         * Gets last measured value
+         * @return Last measured value
+         */
+        public long getLast()
+        {
+            return this.last.get();
+        }
+        
+        /**
+         * Gets maximal measured value
+         * @return Maximal measured value
+         */
+        public long getMax()
+        {
+            return this.max.get();
+        }
+    }
+    
+    /**
+     * Class representing running pass of stage
+     */
+    public static class Sample
+    {
+        /**
+         * Time when pass started (in nanoseconds)
+         */
+        private final long start;
+        
+        /**
+         * Number of bytes allocated by all threads before pass started (negative if it is not measured)
+         */
+        private final long allocated;
+        
+        /**
+         * Flight recorder event of pass
+         */
+        private final Metrics.StageEvent event;
+        
+        /**
+         * Creates new running pass of stage
+         * @param allocated Number of bytes allocated by all threads before pass started (negative if it is not measured)
+         */
+        private Sample(long allocated)
+        {
+            this.event = new Metrics.StageEvent();
+            this.event.begin();
+            this.allocated = allocated;
+            this.start = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Flight recorder event describing one pass of stage of processing
+     */
+    @Name("cz.uhk.fim.skodaji1.kpgr2.jsgmp.Stage")
+    @Label("Stage of processing")
+    @Category("JSGMP")
+    public static class StageEvent extends jdk.jfr.Event
+    {
+        /**
+         * Name of stage
+         */
+        @Label("Stage")
+        private String stage;
+        
+        /**
+         * Number of processed pixels
+         */
+        @Label("Pixels")
+        private long pixels;
+        
+        /**
+         * Number of bytes allocated by all threads during pass
+         */
+        @Label("Allocated")
+        @DataAmount
+        private long allocated;
+    }
+    
+    /**
+     * All stages of processing (ordered by name)
+     */
+    private static final Map<String, Metrics.Stage> STAGES = new ConcurrentSkipListMap<>();
+    
+    /**
+     * All measured values (ordered by name)
+     */
+    private static final Map<String, Metrics.Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    
+    /**
+     * Flight recording of stages of processing started from application (NULL if there is none)
+     */
+    private static Recording recording = null;
+    
+    /**
+     * Creates new registry of metrics (it should not be instantiated)
+     */
+    private Metrics(){}
+    
+    /**
+     * Gets stage of processing (it is created if it does not exist yet)
+     * @param name Name of stage
+     * @return Stage of processing with defined name
+     */
+    public static Metrics.Stage stage(String name)
+    {
+        return Metrics.STAGES.computeIfAbsent(name, (String key) -> {return new Metrics.Stage();});
+    }
+    
+    /**
+     * Gets measured value (it is created if it does not exist yet)
+     * @param name Name of measured value
+     * @return Measured value with defined name
+     */
+    public static Metrics.Gauge gauge(String name)
+    {
+        return Metrics.GAUGES.computeIfAbsent(name, (String key) -> {return new Metrics.Gauge();});
+    }
+    
+    /**
+     * Gets number of bytes allocated by all living threads
+     * @return Number of allocated bytes or negative number if it cannot be measured
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+            {
+                long reti = 0;
+                for (long bytes: threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                {
+                    reti += Math.max(bytes, 0);
+                }
+                return reti;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Starts measuring of short pass of stage (only duration is measured)
+     * @return Running pass of stage or NULL if metrics are disabled
+     */
+    public static Metrics.Sample start()
+    {
+        return (Globals.METRICS == true) ? new Metrics.Sample(-1) : null;
+    }
+    
+    /**
+     * Starts measuring of whole pass of stage (duration and memory allocated by all threads are measured)
+     * @return Running pass of stage or NULL if metrics are disabled
+     */
+    public static Metrics.Sample startPass()
+    {
+        return (Globals.METRICS == true) ? new Metrics.Sample(Metrics.allocatedBytes()) : null;
+    }
+    
+    /**
+     * Finishes measuring of pass of stage and records it
+     * @param name Name of stage
+     * @param sample Running pass of stage (NULL is ignored)
+     * @param pixels Number of pixels processed by pass
+     */
+    public static void record(String name, Metrics.Sample sample, long pixels)
+    {
+        if (Objects.isNull(sample))
+        {
+            return;
+        }
+        long nanos = System.nanoTime() - sample.start;
+        long bytes = -1;
+        if (sample.allocated >= 0)
+        {
+            long allocated = Metrics.allocatedBytes();
+            bytes = (allocated >= sample.allocated) ? allocated - sample.allocated : -1;
+        }
+        Metrics.stage(name).record(nanos, pixels, bytes);
+        sample.event.end();
+        if (sample.event.shouldCommit())
+        {
+            sample.event.stage = name;
+            sample.event.pixels = pixels;
+            sample.event.allocated = Math.max(bytes, 0);
+            sample.event.commit();
+        }
+    }
+    
+    /**
+     * Clears all measured metrics
+     */
+    public static void reset()
+    {
+        Metrics.STAGES.clear();
+        Metrics.GAUGES.clear();
+    }
+    
+    /**
+     * Creates snapshot of all metrics
+     * @return Map with values of all stages and measured values
+     */
+    public static Map<String, Object> snapshot()
+    {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Map.Entry<String, Metrics.Stage> entry: Metrics.STAGES.entrySet())
+        {
+            Metrics.Stage s = entry.getValue();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", s.getCount());
+            values.put("meanMs", s.getMean());
+            values.put("p50Ms", s.getPercentile(0.5));
+            values.put("p95Ms", s.getPercentile(0.95));
+            values.put("p99Ms", s.getPercentile(0.99));
+            values.put("maxMs", s.getMax());
+            values.put("pixelsPerSecond", s.getPixelRate());
+            values.put("bytesPerPass", s.getAllocationPerPass());
+            values.put("buckets", s.getBuckets());
+            stages.put(entry.getKey(), values);
+        }
+        Map<String, Object> gauges = new LinkedHashMap<>();
+        for (Map.Entry<String, Metrics.Gauge> entry: Metrics.GAUGES.entrySet())
+        {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("last", entry.getValue().getLast());
+            values.put("max", entry.getValue().getMax());
+            gauges.put(entry.getKey(), values);
+        }
+        Map<String, Object> reti = new LinkedHashMap<>();
+        reti.put("vectorKernels", Kernels.isAvailable());
+        reti.put("processors", Runtime.getRuntime().availableProcessors());
+        reti.put("stages", stages);
+        reti.put("gauges", gauges);
+        return reti;
+    }
+    
+    /**
+     * Converts all metrics into JSON
+     * @return String with JSON representation of all metrics
+     */
+    public static String toJson()
+    {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(Metrics.snapshot());
+    }
+    
+    /**
+     * Formats all metrics into human readable table
+     * @return String with table of all metrics
+     */
+    public static String format()
+    {
+        StringBuilder reti = new StringBuilder();
+        reti.append(String.format("%-18s %8s %9s %9s %9s %9s %12s %12s%n", "Fáze", "Počet", "Průměr", "p50", "p95", "Max", "Px/s", "B/průchod"));
+        for (Map.Entry<String, Metrics.Stage> entry: Metrics.STAGES.entrySet())
+        {
+            Metrics.Stage s = entry.getValue();
+            reti.append(String.format("%-18s %8d %9.2f %9.2f %9.2f %9.2f %12.3e %12.3e%n",
+                    entry.getKey(), s.getCount(), s.getMean(), s.getPercentile(0.5), s.getPercentile(0.95), s.getMax(), s.getPixelRate(), s.getAllocationPerPass()
+            ));
+        }
+        reti.append(String.format("%n%-18s %8s %8s%n", "Hodnota", "Poslední", "Max"));
+        for (Map.Entry<String, Metrics.Gauge> entry: Metrics.GAUGES.entrySet())
+        {
+            reti.append(String.format("%-18s %8d %8d%n", entry.getKey(), entry.getValue().getLast(), entry.getValue().getMax()));
+        }
+        reti.append(String.format("%nSIMD jádra: %s%n", Kernels.isAvailable() ? "ano" : "ne"));
+        return reti.toString();
+    }
+    
+    /**
+     * Starts flight recording of stages of processing
+     */
+    public static synchronized void startRecording()
+    {
+        if (Objects.isNull(Metrics.recording))
+        {
+            Metrics.recording = new Recording();
+            Metrics.recording.enable(Metrics.StageEvent.class);
+            Metrics.recording.start();
+        }
+    }
+    
+    /**
+     * Checks, whether flight recording started from application is running
+     * @return TRUE if flight recording is running, FALSE otherwise
+     */
+    public static synchronized boolean isRecording()
+    {
+        return Objects.nonNull(Metrics.recording);
+    }
+    
+    /**
+     * Stops flight recording of stages of processing and writes it into file
+     * @param file File into which recording will be written
+     * @throws IOException Recording cannot be written
+     */
+    public static synchronized void stopRecording(File file) throws IOException
+    {
+        if (Objects.nonNull(Metrics.recording))
+        {
+            try
+            {
+                Metrics.recording.stop();
+                Metrics.recording.dump(file.toPath());
+            }
+            finally
+            {
+                Metrics.recording.close();
+                Metrics.recording = null;
+            }
+        }
+    }
+}
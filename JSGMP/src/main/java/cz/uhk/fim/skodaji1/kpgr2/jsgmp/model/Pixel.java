@@ -153,4 +153,57 @@ public class Pixel
         reti |= (int)(this.blue  & 0xff) << 0;
         return reti;
     }
+
+    /**
+     * Gets red part of colour from integer with ARGB values
+     * @param argb Integer containing red, green, blue and alpha values
+     * @return Red part of colour
+     */
+    public static int red(int argb)
+    {
+        return (argb >> 16) & 0xFF;
+    }
+
+    /**
+     * Gets green part of colour from integer with ARGB values
+     * @param argb Integer containing red, green, blue and alpha values
+     * @return Green part of colour
+     */
+    public static int green(int argb)
+    {
+        return (argb >> 8) & 0xFF;
+    }
+
+    /**
+     * Gets blue part of colour from integer with ARGB values
+     * @param argb Integer containing red, green, blue and alpha values
+     * @return Blue part of colour
+     */
+    public static int blue(int argb)
+    {
+        return argb & 0xFF;
+    }
+
+    /**
+     * Gets value of alpha channel from integer with ARGB values
+     * @param argb Integer containing red, green, blue and alpha values
+     * @return Value of alpha channel
+     */
+    public static int alpha(int argb)
+    {
+        return (argb >> 24) & 0xFF;
+    }
+
+    /**
+     * Packs red, green, blue and alpha values into one integer
+     * @param red Red part of colour [0 255]
+     * @param green Green part of colour [0 255]
+     * @param blue Blue part of colour [0 255]
+     * @param alpha Value of alpha channel [0 255]
+     * @return Integer with all RGB values and alpha channel value
+     */
+    public static int argb(int red, int green, int blue, int alpha)
+    {
+        return ((alpha & 0xff) << 24) | ((red & 0xff) << 16) | ((green & 0xff) << 8) | (blue & 0xff);
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+/**
+ * Interface abstracting SIMD kernels which process sequences of ARGB values of pixels
+ * (they compute in fixed point arithmetic, so rounded results may rarely differ from scalar code by one)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public interface PixelKernels
+{
+    /**
+     * Adds changes of colour channels and changes made by grayscale to sequence of pixels
+     * @param src Array with original ARGB values of pixels
+     * @param srcOffset Index of first pixel in source array
+     * @param dst Array into which results will be stored
+     * @param dstOffset Index in destination array where result for first pixel will be stored
+     * @param length Number of processed pixels
+     * @param red Changes of red channel (indexed by original value)
+     * @param green Changes of green channel (indexed by original value)
+     * @param blue Changes of blue channel (indexed by original value)
+     * @param grayscale Percentage of grayscale [0 100]
+     */
+    public abstract void applyDeltas(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int[] red, int[] green, int[] blue, double grayscale);
+    
+    /**
+     * Counts values of histogram of sequence of pixels
+     * (negative values are skipped, too big values are counted into last bin)
+     * @param pixels Array with ARGB values of pixels
+     * @param offset Index of first pixel in array
+     * @param length Number of processed pixels
+     * @param binning Function which computes value of histogram
+     * @param bins Array with number of pixels with each value of histogram
+     */
+    public abstract void bin(int[] pixels, int offset, int length, Binning binning, int[] bins);
+}
@@ -0,0 +1,720 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Vector;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Class which holds bitmap image too large to be stored in memory;
+ * image is split into square tiles stored in scratch file
+ * and only limited number of recently used tiles is kept in memory
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class TiledBitmap implements Closeable
+{
+    /**
+     * Default size of one square tile (in pixels)
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+    
+    /**
+     * Default number of tiles kept in memory
+     */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+    
+    /**
+     * Interface abstracting visitor of tiles of bitmap
+     */
+    public static interface TileVisitor
+    {
+        /**
+         * Function called for each tile of bitmap
+         * @param x X coordinate of top left pixel of tile in bitmap
+         * @param y Y coordinate of top left pixel of tile in bitmap
+         * @param width Width of tile (tiles on right edge of bitmap can be narrower)
+         * @param height Height of tile (tiles on bottom edge of bitmap can be lower)
+         * @param pixels ARGB values of pixels of tile
+         * @param stride Distance between starts of two consecutive rows in array with pixels
+         * @return TRUE if pixels of tile has been changed, FALSE otherwise
+         */
+        public abstract boolean visit(int x, int y, int width, int height, int[] pixels, int stride);
+    }
+    
+    /**
+     * Buffer of pixels of whole bitmap which loads pixels from bitmap strip by strip on demand
+     * (used by image encoders which request data of whole image at once)
+     */
+    private class StripBuffer extends DataBuffer
+    {
+        /**
+         * ARGB values of pixels of actually loaded strip
+         */
+        private final int[] strip;
+        
+        /**
+         * Index of first row of actually loaded strip
+         */
+        private int top;
+        
+        /**
+         * Number of rows of actually loaded strip
+         */
+        private int rows;
+        
+        /**
+         * Creates new buffer of pixels of whole bitmap
+         */
+        public StripBuffer()
+        {
+            super(DataBuffer.TYPE_INT, TiledBitmap.this.width * TiledBitmap.this.height);
+            this.strip = new int[TiledBitmap.this.width * TiledBitmap.this.tileSize];
+            this.top = 0;
+            this.rows = 0;
+        }
+
+        @Override
+        public int getElem(int bank, int i)
+        {
+            int row = i / TiledBitmap.this.width;
+            if (row < this.top || row >= this.top + this.rows)
+            {
+                this.top = row - (row % TiledBitmap.this.tileSize);
+                this.rows = Math.min(TiledBitmap.this.tileSize, TiledBitmap.this.height - this.top);
+                TiledBitmap.this.readRegion(0, this.top, TiledBitmap.this.width, this.rows, this.strip, 0, TiledBitmap.this.width);
+            }
+            return this.strip[i - this.top * TiledBitmap.this.width];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val)
+        {
+            throw new UnsupportedOperationException("View of tiled bitmap is read-only");
+        }
+    }
+    
+    /**
+     * Class representing one tile loaded into memory
+     */
+    private static class Tile
+    {
+        /**
+         * ARGB values of pixels of tile
+         */
+        private final int[] pixels;
+        
+        /**
+         * Flag, whether tile has been changed since it has been loaded
+         */
+        private boolean dirty;
+        
+        /**
+         * Creates new tile loaded into memory
+         * @param pixels ARGB values of pixels of tile
+         */
+        public Tile(int[] pixels)
+        {
+            this.pixels = pixels;
+            this.dirty = false;
+        }
+    }
+    
+    /**
+     * Width of bitmap
+     */
+    private final int width;
+    
+    /**
+     * Height of bitmap
+     */
+    private final int height;
+    
+    /**
+     * Size of one square tile (in pixels)
+     */
+    private final int tileSize;
+    
+    /**
+     * Number of tiles in one row of tiles
+     */
+    private final int columns;
+    
+    /**
+     * Number of rows of tiles
+     */
+    private final int rows;
+    
+    /**
+     * Channel of scratch file in which all tiles are stored
+     */
+    private final FileChannel channel;
+    
+    /**
+     * Buffer through which tiles are read from and written into scratch file
+     * (caller must hold lock on tiles)
+     */
+    private final ByteBuffer buffer;
+    
+    /**
+     * Tiles loaded into memory (ordered from least recently used)
+     */
+    private final LinkedHashMap<Integer, TiledBitmap.Tile> tiles;
+    
+    /**
+     * Creates new tiled bitmap with default size of tiles and cache
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @throws IOException Scratch file cannot be created
+     */
+    public TiledBitmap(int width, int height) throws IOException
+    {
+        this(width, height, TiledBitmap.DEFAULT_TILE_SIZE, TiledBitmap.DEFAULT_CACHE_SIZE);
+    }
+    
+    /**
+     * Creates new tiled bitmap
+     * @param width Width of bitmap
+     * @param height Height of bitmap
+     * @param tileSize Size of one square tile (in pixels)
+     * @param cacheSize Maximal number of tiles kept in memory
+     * @throws IOException Scratch file cannot be created
+     */
+    public TiledBitmap(int width, int height, int tileSize, int cacheSize) throws IOException
+    {
+        if (width < 1 || height < 1 || tileSize < 1 || cacheSize < 1)
+        {
+            throw new IllegalArgumentException("Dimensions of bitmap, size of tile and size of cache must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+        Path scratch = Files.createTempFile("jsgmp-", ".tiles");
+        this.channel = FileChannel.open(
+                scratch,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE
+        );
+        this.buffer = ByteBuffer.allocateDirect(tileSize * tileSize * 4).order(ByteOrder.nativeOrder());
+        this.tiles = new LinkedHashMap<Integer, TiledBitmap.Tile>(cacheSize, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, TiledBitmap.Tile> eldest)
+            {
+                if (this.size() > cacheSize)
+                {
+                    TiledBitmap.this.storeTile(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Reads image file into new tiled bitmap strip by strip (whole image is never decoded into memory at once,
+     * if image reader supports reading of regions)
+     * @param file File with image
+     * @param tileSize Size of one square tile (in pixels)
+     * @param cacheSize Maximal number of tiles kept in memory
+     * @return Tiled bitmap with content of image file
+     * @throws IOException Image file cannot be read or scratch file cannot be created
+     */
+    public static TiledBitmap read(File file, int tileSize, int cacheSize) throws IOException
+    {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file))
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (readers.hasNext() == false)
+            {
+                throw new IOException("Unsupported format of image: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(stream, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                TiledBitmap reti = new TiledBitmap(w, h, tileSize, cacheSize);
+                int[] strip = new int[w * tileSize];
+                for (int y = 0; y < h; y += tileSize)
+                {
+                    int stripHeight = Math.min(tileSize, h - y);
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, y, w, stripHeight));
+                    BufferedImage part = reader.read(0, param);
+                    part.getRGB(0, 0, w, stripHeight, strip, 0, w);
+                    reti.writeRegion(0, y, w, stripHeight, strip, 0, w);
+                }
+                return reti;
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Gets width of bitmap
+     * @return Width of bitmap
+     */
+    public int getWidth()
+    {
+        return this.width;
+    }
+    
+    /**
+     * Gets height of bitmap
+     * @return Height of bitmap
+     */
+    public int getHeight()
+    {
+        return this.height;
+    }
+    
+    /**
+     * Gets size of one square tile
+     * @return Size of one tile (in pixels)
+     */
+    public int getTileSize()
+    {
+        return this.tileSize;
+    }
+    
+    /**
+     * Gets tile loaded into memory (tile is loaded from scratch file, if it is not in memory)
+     * (caller must hold lock on tiles)
+     * @param index Index of tile (tiles are numbered row by row)
+     * @return Tile loaded into memory
+     */
+    private TiledBitmap.Tile getTile(int index)
+    {
+        TiledBitmap.Tile reti = this.tiles.get(index);
+        if (Objects.isNull(reti))
+        {
+            reti = new TiledBitmap.Tile(new int[this.tileSize * this.tileSize]);
+            try
+            {
+                long offset = (long)index * (long)this.buffer.capacity();
+                this.buffer.clear();
+                int read = 0;
+                while (this.buffer.hasRemaining() && read >= 0)
+                {
+                    read = this.channel.read(this.buffer, offset + this.buffer.position());
+                }
+                this.buffer.flip();
+                this.buffer.asIntBuffer().get(reti.pixels, 0, this.buffer.remaining() / 4);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+            this.tiles.put(index, reti);
+        }
+        return reti;
+    }
+    
+    /**
+     * Stores tile into scratch file, if it has been changed
+     * @param index Index of tile (tiles are numbered row by row)
+     * @param tile Tile which will be stored
+     */
+    private void storeTile(int index, TiledBitmap.Tile tile)
+    {
+        if (tile.dirty == true)
+        {
+            try
+            {
+                long offset = (long)index * (long)this.buffer.capacity();
+                this.buffer.clear();
+                this.buffer.asIntBuffer().put(tile.pixels);
+                while (this.buffer.hasRemaining())
+                {
+                    this.channel.write(this.buffer, offset + this.buffer.position());
+                }
+                tile.dirty = false;
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+    
+    /**
+     * Copies rectangular region of bitmap into array or from array into bitmap
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param array Array with ARGB values of pixels of region
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     * @param write TRUE if region will be written from array into bitmap, FALSE if it will be read
+     */
+    private void transfer(int x, int y, int width, int height, int[] array, int offset, int stride, boolean write)
+    {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height)
+        {
+            throw new IndexOutOfBoundsException(String.format("Region [%d, %d, %d, %d] is out of bitmap", x, y, width, height));
+        }
+        synchronized (this.tiles)
+        {
+            for (int ty = y / this.tileSize; ty * this.tileSize < y + height; ty++)
+            {
+                for (int tx = x / this.tileSize; tx * this.tileSize < x + width; tx++)
+                {
+                    TiledBitmap.Tile tile = this.getTile(ty * this.columns + tx);
+                    int fromX = Math.max(x, tx * this.tileSize);
+                    int toX = Math.min(x + width, (tx + 1) * this.tileSize);
+                    int fromY = Math.max(y, ty * this.tileSize);
+                    int toY = Math.min(y + height, (ty + 1) * this.tileSize);
+                    for (int row = fromY; row < toY; row++)
+                    {
+                        int tileIndex = (row - ty * this.tileSize) * this.tileSize + (fromX - tx * this.tileSize);
+                        int arrayIndex = offset + (row - y) * stride + (fromX - x);
+                        if (write == true)
+                        {
+                            System.arraycopy(array, arrayIndex, tile.pixels, tileIndex, toX - fromX);
+                        }
+                        else
+                        {
+                            System.arraycopy(tile.pixels, tileIndex, array, arrayIndex, toX - fromX);
+                        }
+                    }
+                    if (write == true)
+                    {
+                        tile.dirty = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies rectangular region of bitmap into array
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param dst Array into which region will be copied
+     * @param offset Index in array where first pixel of region will be stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void readRegion(int x, int y, int width, int height, int[] dst, int offset, int stride)
+    {
+        this.transfer(x, y, width, height, dst, offset, stride, false);
+    }
+    
+    /**
+     * Writes rectangular region from array into bitmap
+     * @param x X coordinate of top left pixel of region
+     * @param y Y coordinate of top left pixel of region
+     * @param width Width of region
+     * @param height Height of region
+     * @param src Array with new ARGB values of pixels
+     * @param offset Index in array where first pixel of region is stored
+     * @param stride Distance between starts of two consecutive rows in array
+     */
+    public void writeRegion(int x, int y, int width, int height, int[] src, int offset, int stride)
+    {
+        this.transfer(x, y, width, height, src, offset, stride, true);
+    }
+    
+    /**
+     * Gets value of pixel
+     * @param x X coordinate of pixel
+     * @param y Y coordinate of pixel
+     * @return Integer containing red, green, blue and alpha values of pixel
+     */
+    public int getARGB(int x, int y)
+    {
+        int[] reti = new int[1];
+        this.readRegion(x, y, 1, 1, reti, 0, 1);
+        return reti[0];
+    }
+    
+    /**
+     * Sets value of pixel
+     * @param x X coordinate of pixel
+     * @param y Y coordinate of pixel
+     * @param argb Integer containing new red, green, blue and alpha values of pixel
+     */
+    public void setARGB(int x, int y, int argb)
+    {
+        this.writeRegion(x, y, 1, 1, new int[]{argb}, 0, 1);
+    }
+    
+    /**
+     * Visits all tiles of bitmap one by one (row by row);
+     * changed tiles are stored back into bitmap
+     * @param visitor Visitor of tiles
+     */
+    public void forEachTile(TiledBitmap.TileVisitor visitor)
+    {
+        for (int ty = 0; ty < this.rows; ty++)
+        {
+            for (int tx = 0; tx < this.columns; tx++)
+            {
+                int x = tx * this.tileSize;
+                int y = ty * this.tileSize;
+                int w = Math.min(this.tileSize, this.width - x);
+                int h = Math.min(this.tileSize, this.height - y);
+                synchronized (this.tiles)
+                {
+                    TiledBitmap.Tile tile = this.getTile(ty * this.columns + tx);
+                    if (visitor.visit(x, y, w, h, tile.pixels, this.tileSize))
+                    {
+                        tile.dirty = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes bitmap into image file; image encoder pulls data of bitmap strip by strip
+     * @param file File into which bitmap will be written
+     * @param format Name of format of image file (for example "png")
+     * @return TRUE if bitmap has been written, FALSE if there is no encoder for format
+     * @throws IOException Image file cannot be written
+     */
+    public boolean write(File file, String format) throws IOException
+    {
+        return ImageIO.write(this.toRenderedImage(ImageFile.hasAlpha(format)), format, file);
+    }
+    
+    /**
+     * Gets view of bitmap usable by image encoders (data are read from bitmap on demand)
+     * @param alpha Flag, whether alpha channel should be part of image
+     * @return Rendered image backed by bitmap
+     */
+    public RenderedImage toRenderedImage(boolean alpha)
+    {
+        final DirectColorModel colorModel = alpha ? (DirectColorModel)ColorModel.getRGBdefault() : new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF);
+        final SampleModel sampleModel = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, this.tileSize, this.tileSize, colorModel.getMasks()
+        );
+        return new RenderedImage()
+        {
+            @Override
+            public Vector<RenderedImage> getSources()
+            {
+                return null;
+            }
+
+            @Override
+            public Object getProperty(String name)
+            {
+                return java.awt.Image.UndefinedProperty;
+            }
+
+            @Override
+            public String[] getPropertyNames()
+            {
+                return null;
+            }
+
+            @Override
+            public ColorModel getColorModel()
+            {
+                return colorModel;
+            }
+
+            @Override
+            public SampleModel getSampleModel()
+            {
+                return sampleModel;
+            }
+
+            @Override
+            public int getWidth()
+            {
+                return TiledBitmap.this.width;
+            }
+
+            @Override
+            public int getHeight()
+            {
+                return TiledBitmap.this.height;
+            }
+
+            @Override
+            public int getMinX()
+            {
+                return 0;
+            }
+
+            @Override
+            public int getMinY()
+            {
+                return 0;
+            }
+
+            @Override
+            public int getNumXTiles()
+            {
+                return TiledBitmap.this.columns;
+            }
+
+            @Override
+            public int getNumYTiles()
+            {
+                return TiledBitmap.this.rows;
+            }
+
+            @Override
+            public int getMinTileX()
+            {
+                return 0;
+            }
+
+            @Override
+            public int getMinTileY()
+            {
+                return 0;
+            }
+
+            @Override
+            public int getTileWidth()
+            {
+                return TiledBitmap.this.tileSize;
+            }
+
+            @Override
+            public int getTileHeight()
+            {
+                return TiledBitmap.this.tileSize;
+            }
+
+            @Override
+            public int getTileGridXOffset()
+            {
+                return 0;
+            }
+
+            @Override
+            public int getTileGridYOffset()
+            {
+                return 0;
+            }
+
+            @Override
+            public Raster getTile(int tileX, int tileY)
+            {
+                int x = tileX * TiledBitmap.this.tileSize;
+                int y = tileY * TiledBitmap.this.tileSize;
+                return this.getData(new Rectangle(
+                        x, y,
+                        Math.min(TiledBitmap.this.tileSize, TiledBitmap.this.width - x),
+                        Math.min(TiledBitmap.this.tileSize, TiledBitmap.this.height - y)
+                ));
+            }
+
+            @Override
+            public Raster getData()
+            {
+                SampleModel model = new SinglePixelPackedSampleModel(
+                        DataBuffer.TYPE_INT, TiledBitmap.this.width, TiledBitmap.this.height, colorModel.getMasks()
+                );
+                return Raster.createRaster(model, new TiledBitmap.StripBuffer(), new Point(0, 0));
+            }
+
+            @Override
+            public Raster getData(Rectangle rect)
+            {
+                WritableRaster reti = colorModel.createCompatibleWritableRaster(rect.width, rect.height);
+                this.copyData(reti.createWritableTranslatedChild(rect.x, rect.y));
+                return reti.createTranslatedChild(rect.x, rect.y);
+            }
+
+            @Override
+            public WritableRaster copyData(WritableRaster raster)
+            {
+                WritableRaster reti = raster;
+                if (Objects.isNull(reti))
+                {
+                    reti = colorModel.createCompatibleWritableRaster(TiledBitmap.this.width, TiledBitmap.this.height);
+                }
+                Rectangle bounds = reti.getBounds().intersection(new Rectangle(0, 0, TiledBitmap.this.width, TiledBitmap.this.height));
+                if (bounds.isEmpty() == false)
+                {
+                    int[] buffer = new int[bounds.width * bounds.height];
+                    TiledBitmap.this.readRegion(bounds.x, bounds.y, bounds.width, bounds.height, buffer, 0, bounds.width);
+                    reti.setDataElements(bounds.x, bounds.y, bounds.width, bounds.height, buffer);
+                }
+                return reti;
+            }
+        };
+    }
+    
+    /**
+     * Stores all changed tiles into scratch file
+     */
+    public void flush()
+    {
+        synchronized (this.tiles)
+        {
+            for (Map.Entry<Integer, TiledBitmap.Tile> entry: this.tiles.entrySet())
+            {
+                this.storeTile(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this.tiles)
+        {
+            this.tiles.clear();
+            this.channel.close();
+        }
+    }
+}
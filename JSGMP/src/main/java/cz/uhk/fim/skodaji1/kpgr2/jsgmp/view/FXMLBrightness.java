@@ -74,6 +74,7 @@ public class FXMLBrightness extends FXMLController implements Initializable {
         {
             FXMLBrightness.this.imageViewBrightness.setFitWidth(FXMLBrightness.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderBrightness);
         this.sliderBrightness.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             int prev = (int)Math.round((Double)t);
             int next = (int)Math.round((Double)t1);
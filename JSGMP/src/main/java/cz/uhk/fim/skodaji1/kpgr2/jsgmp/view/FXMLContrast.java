@@ -63,6 +63,7 @@ public class FXMLContrast extends FXMLController implements Initializable {
         {
             FXMLContrast.this.imageViewContrast.setFitWidth(FXMLContrast.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderContrast);
         this.sliderContrast.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             double prev = (Double)t;
             double next = (Double)t1;
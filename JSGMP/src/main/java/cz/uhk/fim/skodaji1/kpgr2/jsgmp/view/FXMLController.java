@@ -18,6 +18,10 @@
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
 
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller.MainController;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.History;
+import java.util.Objects;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.Slider;
 
 /**
  * Class abstracting all FXML controllers
@@ -40,4 +44,55 @@ public abstract class FXMLController
     {
         this.mainController = controller;
     }
+    
+    /**
+     * Watches changes of slider: switches preview of effects on while slider is dragged
+     * (full resolution is computed after slider is released) and stores each change
+     * of value into history (whole dragging is stored as one change)
+     * @param slider Slider which changes value of effect
+     */
+    protected void watchSlider(Slider slider)
+    {
+        double[] start = new double[]{slider.getValue()};
+        slider.valueChangingProperty().addListener((ObservableValue<? extends Boolean> ov, Boolean t, Boolean t1) ->
+        {
+            if (Objects.nonNull(this.mainController))
+            {
+                this.mainController.effectsPreview(t1);
+            }
+            if (t1 == true)
+            {
+                start[0] = slider.getValue();
+            }
+            else
+            {
+                this.recordChange(slider, start[0], slider.getValue());
+            }
+        });
+        slider.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
+        {
+            if (slider.isValueChanging() == false)
+            {
+                this.recordChange(slider, t.doubleValue(), t1.doubleValue());
+            }
+        });
+    }
+    
+    /**
+     * Stores change of value of slider into history
+     * @param slider Slider which value has been changed
+     * @param oldValue Value of slider before change
+     * @param newValue Value of slider after change
+     */
+    private void recordChange(Slider slider, double oldValue, double newValue)
+    {
+        if (Objects.nonNull(this.mainController) && oldValue != newValue)
+        {
+            History history = this.mainController.getHistory();
+            if (Objects.nonNull(history) && history.isReplaying() == false)
+            {
+                history.recordParameter(() -> {slider.setValue(oldValue);}, () -> {slider.setValue(newValue);});
+            }
+        }
+    }
 }
@@ -54,6 +54,7 @@ public class FXMLCyan extends FXMLController implements Initializable {
         {
             FXMLCyan.this.imageViewHistogram.setFitWidth(FXMLCyan.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderColor);
         this.sliderColor.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             int prev = (int)Math.round((Double)t);
             int next = (int)Math.round((Double)t1);
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.TextArea;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * FXML Controller class of window with diagnostics of processing
+ *
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class FXMLDiagnostics implements Initializable {
+
+    @FXML
+    private TextArea textAreaMetrics;
+    @FXML
+    private Button buttonRecording;
+    
+    /**
+     * Timer which periodically refreshes shown metrics
+     */
+    private Timeline refresh;
+
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        this.refresh = new Timeline(new KeyFrame(Duration.seconds(1), (ActionEvent event) -> {this.update();}));
+        this.refresh.setCycleCount(Animation.INDEFINITE);
+        this.refresh.play();
+        this.update();
+        this.updateRecording();
+    }
+    
+    /**
+     * Stops refreshing of shown metrics (should be called when window is closed)
+     */
+    public void stop()
+    {
+        this.refresh.stop();
+    }
+    
+    /**
+     * Shows actual values of metrics
+     */
+    private void update()
+    {
+        double scroll = this.textAreaMetrics.getScrollTop();
+        this.textAreaMetrics.setText(Metrics.format());
+        this.textAreaMetrics.setScrollTop(scroll);
+    }
+    
+    /**
+     * Updates text of button which controls flight recording
+     */
+    private void updateRecording()
+    {
+        this.buttonRecording.setText(Metrics.isRecording() ? "Uložit záznam JFR" : "Spustit záznam JFR");
+    }
+    
+    /**
+     * Asks user for file into which data will be saved
+     * @param description Description of type of file
+     * @param extension Extension of file
+     * @return Selected file or NULL if no file has been selected
+     */
+    private File askFile(String description, String extension)
+    {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Uložit");
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter(description, "*." + extension));
+        return fc.showSaveDialog(this.textAreaMetrics.getScene().getWindow());
+    }
+
+    @FXML
+    private void buttonExportOnAction(ActionEvent event) {
+        File file = this.askFile("Soubory JSON", "json");
+        if (Objects.nonNull(file))
+        {
+            try
+            {
+                FileUtils.writeStringToFile(file, Metrics.toJson(), StandardCharsets.UTF_8);
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(FXMLDiagnostics.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    @FXML
+    private void buttonRecordingOnAction(ActionEvent event) {
+        if (Metrics.isRecording() == false)
+        {
+            Metrics.startRecording();
+        }
+        else
+        {
+            File file = this.askFile("Záznamy JFR", "jfr");
+            if (Objects.nonNull(file))
+            {
+                try
+                {
+                    Metrics.stopRecording(file);
+                }
+                catch (IOException ex)
+                {
+                    Logger.getLogger(FXMLDiagnostics.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        this.updateRecording();
+    }
+
+    @FXML
+    private void buttonResetOnAction(ActionEvent event) {
+        Metrics.reset();
+        this.update();
+    }
+}
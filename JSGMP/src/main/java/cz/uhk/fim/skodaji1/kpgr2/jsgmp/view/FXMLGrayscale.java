@@ -53,6 +53,7 @@ public class FXMLGrayscale extends FXMLController implements Initializable {
         {
             FXMLGrayscale.this.chartGrayscaleDistribution.setPrefWidth(FXMLGrayscale.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderValue);
         this.sliderValue.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             int prev = (int)Math.round((Double)t);
             int next = (int)Math.round((Double)t1);
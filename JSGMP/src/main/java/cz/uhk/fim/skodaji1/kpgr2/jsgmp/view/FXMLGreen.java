@@ -54,6 +54,7 @@ public class FXMLGreen extends FXMLController implements Initializable {
         {
             FXMLGreen.this.imageViewHistogram.setFitWidth(FXMLGreen.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderColor);
         this.sliderColor.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             int prev = (int)Math.round((Double)t);
             int next = (int)Math.round((Double)t1);
@@ -21,8 +21,10 @@ import com.sun.javafx.PlatformUtil;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.JSGMP;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.controller.MainController;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.AutoLevels;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.effects.BrightnessContrast;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.History;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.ImageFile;
 import java.awt.Desktop;
 import java.io.File;
@@ -54,6 +56,7 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
 import javafx.scene.control.Tab;
@@ -94,6 +97,24 @@ public class FXMLMainWindow implements Initializable {
     private MenuItem menuItemAbout;
     @FXML
     private MenuItem menuItemClose;
+    @FXML
+    private RadioMenuItem menuItemAutoNone;
+    @FXML
+    private RadioMenuItem menuItemAutoLevels;
+    @FXML
+    private RadioMenuItem menuItemAutoContrast;
+    @FXML
+    private RadioMenuItem menuItemAutoEqualisation;
+    @FXML
+    private RadioMenuItem menuItemFilterNone;
+    @FXML
+    private RadioMenuItem menuItemFilterBlur;
+    @FXML
+    private RadioMenuItem menuItemFilterGaussian;
+    @FXML
+    private RadioMenuItem menuItemFilterSharpen;
+    @FXML
+    private RadioMenuItem menuItemFilterEdges;
 
 
     /**
@@ -172,6 +193,11 @@ public class FXMLMainWindow implements Initializable {
      */
     private Stage primaryStage;
     
+    /**
+     * Title of primary stage of application (without progress of exports)
+     */
+    private String title = "Java Simple Graphic Modification Program (UHK_FIM_B22L_SKODAJI1)";
+    
     /**
      * Controller of behaviour of main window
      */
@@ -383,7 +409,7 @@ public class FXMLMainWindow implements Initializable {
             FXMLMainWindow.this.relocateMainImage(FXMLMainWindow.this.scrollPaneMainImage.getViewportBounds().getWidth(), FXMLMainWindow.this.scrollPaneMainImage.getViewportBounds().getHeight());
             FXMLMainWindow.this.resizeMainImageWrapper(this.imageViewMain.getFitWidth(), this.imageViewMain.getFitHeight());
         });
-        this.primaryStage.setTitle("Java Simple Graphic Modification Program (UHK_FIM_B22L_SKODAJI1)");
+        this.primaryStage.setTitle(this.title);
         this.primaryStage.getIcons().add(new Image(JSGMP.class.getResourceAsStream("icons/icon_default.png")));
         this.primaryStage.setOnCloseRequest((t) -> {
             Alert alert = new Alert(AlertType.CONFIRMATION);        
@@ -410,6 +436,18 @@ public class FXMLMainWindow implements Initializable {
     public void initialize(URL url, ResourceBundle rb) {
         this.controller = new MainController(this);        
         this.initializeTabs();
+        this.watchTool(this.tabHistogram, this.imageCheckHistogram, MainController.Tool.HISTOGRAM);
+        this.watchTool(this.tabRed, this.imageCheckRed, MainController.Tool.RED);
+        this.watchTool(this.tabGreen, this.imageCheckGreen, MainController.Tool.GREEN);
+        this.watchTool(this.tabBlue, this.imageCheckBlue, MainController.Tool.BLUE);
+        this.watchTool(this.tabCyan, this.imageCheckCyan, MainController.Tool.CYAN);
+        this.watchTool(this.tabMagenta, this.imageCheckMagenta, MainController.Tool.MAGENTA);
+        this.watchTool(this.tabYellow, this.imageCheckYellow, MainController.Tool.YELLOW);
+        this.watchTool(this.tabBrightness, this.imageCheckBrightness, MainController.Tool.BRIGHTNESS);
+        this.watchTool(this.tabContrast, this.imageCheckContrast, MainController.Tool.CONTRAST);
+        this.watchTool(this.tabTemperature, this.imageCheckTemperature, MainController.Tool.TEMPERATURE);
+        this.watchTool(this.tabZoom, this.imageCheckZoom, MainController.Tool.ZOOM);
+        this.watchTool(this.tabGrayscale, this.imageCheckGrayscale, MainController.Tool.GRAYSCALE);
         this.scrollPaneMainImage.widthProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             FXMLMainWindow.this.relocateMainImage(FXMLMainWindow.this.scrollPaneMainImage.getViewportBounds().getWidth(), FXMLMainWindow.this.scrollPaneMainImage.getViewportBounds().getHeight());
             FXMLMainWindow.this.resizeMainImageWrapper(this.imageViewMain.getFitWidth(), this.imageViewMain.getFitHeight());
@@ -486,6 +524,35 @@ public class FXMLMainWindow implements Initializable {
         this.initializeZoom();
     }
     
+    /**
+     * Watches visibility of tool and informs main controller about its changes
+     * (tool is shown when it is opened and its tab is selected or it is in its own window)
+     * @param tab Tab with tool
+     * @param imageCheck Image showing whether tool is opened or not
+     * @param tool Tool which visibility will be watched
+     */
+    private void watchTool(Tab tab, ImageView imageCheck, MainController.Tool tool)
+    {
+        Runnable update = () ->
+        {
+            boolean shown = imageCheck.isVisible() && (Objects.isNull(tab.getTabPane()) || tab.isSelected());
+            this.controller.toolShown(tool, shown);
+        };
+        imageCheck.visibleProperty().addListener((ObservableValue<? extends Boolean> ov, Boolean t, Boolean t1) ->
+        {
+            update.run();
+        });
+        tab.selectedProperty().addListener((ObservableValue<? extends Boolean> ov, Boolean t, Boolean t1) ->
+        {
+            update.run();
+        });
+        tab.tabPaneProperty().addListener((ObservableValue<? extends TabPane> ov, TabPane t, TabPane t1) ->
+        {
+            update.run();
+        });
+        update.run();
+    }
+    
     /**
      * Initializes zoom zool
      */
@@ -590,6 +657,8 @@ public class FXMLMainWindow implements Initializable {
         this.magentaController.resetValue();
         this.yellowController.resetValue();
         this.grayscaleController.resetValue();
+        this.selectAutoLevels(AutoLevels.Mode.NONE);
+        this.selectFilter(MainController.Filter.NONE);
     }
     
     /**
@@ -657,9 +726,30 @@ public class FXMLMainWindow implements Initializable {
     public void setFileName(String name)
     {
         this.labelFileName.setText(name);
+        this.title = name + " - Java Simple Graphic Modification Program (UHK_FIM_B22L_SKODAJI1)";
         if (Objects.nonNull(this.primaryStage))
         {   
-            this.primaryStage.setTitle(name + " - Java Simple Graphic Modification Program (UHK_FIM_B22L_SKODAJI1)");
+            this.primaryStage.setTitle(this.title);
+        }
+    }
+    
+    /**
+     * Sets displayed progress of exports of image into files
+     * @param running Number of unfinished exports
+     * @param progress Average progress of unfinished exports [0 1]
+     */
+    public void setExportProgress(int running, double progress)
+    {
+        if (Objects.nonNull(this.primaryStage))
+        {
+            if (running > 0)
+            {
+                this.primaryStage.setTitle(String.format("[Ukládání (%d): %.0f %%] %s", running, progress * 100f, this.title));
+            }
+            else
+            {
+                this.primaryStage.setTitle(this.title);
+            }
         }
     }
     
@@ -966,13 +1056,173 @@ public class FXMLMainWindow implements Initializable {
         
         alert.setTitle("Zahození všech změn");
         alert.setHeaderText("Zahodit všechny změny");
-        alert.setContentText("Opravdu chcete zahodit všechny změny?\nTato akce je nevratná.");
+        alert.setContentText("Opravdu chcete zahodit všechny změny?\nZměny lze obnovit příkazem Zpět.");
         Optional<ButtonType> result = alert.showAndWait();
         if (result.get() == ButtonType.OK)
         {
-            this.resetValues();
+            History history = this.controller.getHistory();
+            if (Objects.nonNull(history))
+            {
+                history.group(this::resetValues);
+            }
+            else
+            {
+                this.resetValues();
+            }
         }
     }
+    
+    @FXML
+    private void menuUndoOnAction(ActionEvent event)
+    {
+        this.controller.undo();
+    }
+    
+    @FXML
+    private void menuRedoOnAction(ActionEvent event)
+    {
+        this.controller.redo();
+    }
+    
+    @FXML
+    private void menuAutoNoneOnAction(ActionEvent event)
+    {
+        this.autoLevelsOnAction(AutoLevels.Mode.NONE);
+    }
+    
+    @FXML
+    private void menuAutoLevelsOnAction(ActionEvent event)
+    {
+        this.autoLevelsOnAction(AutoLevels.Mode.LEVELS);
+    }
+    
+    @FXML
+    private void menuAutoContrastOnAction(ActionEvent event)
+    {
+        this.autoLevelsOnAction(AutoLevels.Mode.CONTRAST);
+    }
+    
+    @FXML
+    private void menuAutoEqualisationOnAction(ActionEvent event)
+    {
+        this.autoLevelsOnAction(AutoLevels.Mode.EQUALISATION);
+    }
+    
+    /**
+     * Handles selection of automatic adjustment of tones and stores it into history
+     * @param mode Selected automatic adjustment
+     */
+    private void autoLevelsOnAction(AutoLevels.Mode mode)
+    {
+        AutoLevels.Mode previous = this.controller.getAutoLevels();
+        if (previous != mode)
+        {
+            this.controller.autoLevelsChanged(mode);
+            History history = this.controller.getHistory();
+            if (Objects.nonNull(history) && history.isReplaying() == false)
+            {
+                history.recordParameter(() -> {this.selectAutoLevels(previous);}, () -> {this.selectAutoLevels(mode);});
+            }
+        }
+    }
+    
+    /**
+     * Selects automatic adjustment of tones in menu and applies it
+     * @param mode Automatic adjustment which will be selected
+     */
+    private void selectAutoLevels(AutoLevels.Mode mode)
+    {
+        RadioMenuItem item = this.menuItemAutoNone;
+        if (mode == AutoLevels.Mode.LEVELS)
+        {
+            item = this.menuItemAutoLevels;
+        }
+        else if (mode == AutoLevels.Mode.CONTRAST)
+        {
+            item = this.menuItemAutoContrast;
+        }
+        else if (mode == AutoLevels.Mode.EQUALISATION)
+        {
+            item = this.menuItemAutoEqualisation;
+        }
+        item.setSelected(true);
+        this.autoLevelsOnAction(mode);
+    }
+    
+    @FXML
+    private void menuFilterNoneOnAction(ActionEvent event)
+    {
+        this.filterOnAction(MainController.Filter.NONE);
+    }
+    
+    @FXML
+    private void menuFilterBlurOnAction(ActionEvent event)
+    {
+        this.filterOnAction(MainController.Filter.BLUR);
+    }
+    
+    @FXML
+    private void menuFilterGaussianOnAction(ActionEvent event)
+    {
+        this.filterOnAction(MainController.Filter.GAUSSIAN_BLUR);
+    }
+    
+    @FXML
+    private void menuFilterSharpenOnAction(ActionEvent event)
+    {
+        this.filterOnAction(MainController.Filter.SHARPEN);
+    }
+    
+    @FXML
+    private void menuFilterEdgesOnAction(ActionEvent event)
+    {
+        this.filterOnAction(MainController.Filter.EDGES);
+    }
+    
+    /**
+     * Handles selection of filter and stores it into history
+     * @param filter Selected filter
+     */
+    private void filterOnAction(MainController.Filter filter)
+    {
+        MainController.Filter previous = this.controller.getFilter();
+        if (previous != filter)
+        {
+            this.controller.filterChanged(filter);
+            History history = this.controller.getHistory();
+            if (Objects.nonNull(history) && history.isReplaying() == false)
+            {
+                history.recordParameter(() -> {this.selectFilter(previous);}, () -> {this.selectFilter(filter);});
+            }
+        }
+    }
+    
+    /**
+     * Selects filter in menu and applies it
+     * @param filter Filter which will be selected
+     */
+    private void selectFilter(MainController.Filter filter)
+    {
+        RadioMenuItem item = this.menuItemFilterNone;
+        if (filter == MainController.Filter.BLUR)
+        {
+            item = this.menuItemFilterBlur;
+        }
+        else if (filter == MainController.Filter.GAUSSIAN_BLUR)
+        {
+            item = this.menuItemFilterGaussian;
+        }
+        else if (filter == MainController.Filter.SHARPEN)
+        {
+            item = this.menuItemFilterSharpen;
+        }
+        else if (filter == MainController.Filter.EDGES)
+        {
+            item = this.menuItemFilterEdges;
+        }
+        item.setSelected(true);
+        this.filterOnAction(filter);
+    }
 
     @FXML
     private void zoomPopupOnAction(ActionEvent event) {
@@ -1250,6 +1500,30 @@ public class FXMLMainWindow implements Initializable {
         
     }
 
+    @FXML
+    private void menuDiagnosticsOnAction(ActionEvent event) {
+        FXMLLoader loader = new FXMLLoader(JSGMP.class.getResource("fxml/FXMLDiagnostics.fxml"));
+        try
+        {
+            Pane content = (Pane)loader.load();
+            FXMLDiagnostics controller = loader.getController();
+            content.getStyleClass().add(JMetroStyleClass.BACKGROUND);
+            Scene scene = new Scene(content);
+            Stage stage = new Stage();
+            JMetro jmetro = new JMetro(scene, Style.DARK);
+            stage.setTitle("Diagnostika");
+            stage.setScene(scene);
+            stage.initStyle(StageStyle.UTILITY);
+            stage.getIcons().add(new Image(JSGMP.class.getResourceAsStream("icons/icon_about.png")));
+            stage.setOnHidden((WindowEvent e) -> {controller.stop();});
+            stage.show();
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(FXMLMainWindow.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
     @FXML
     private void menuCloseOnAction(ActionEvent event) {
         this.primaryStage.fireEvent(new WindowEvent(this.primaryStage, WindowEvent.WINDOW_CLOSE_REQUEST));
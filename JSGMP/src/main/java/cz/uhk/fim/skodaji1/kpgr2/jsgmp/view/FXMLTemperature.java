@@ -56,6 +56,7 @@ public class FXMLTemperature extends FXMLController implements Initializable {
         {
             FXMLTemperature.this.imageViewTemperature.setFitWidth(FXMLTemperature.this.vBoxContent.getWidth() - 10);
         });
+        this.watchSlider(this.sliderTemperature);
         this.sliderTemperature.valueProperty().addListener((ObservableValue<? extends Number> ov, Number t, Number t1) -> {
             int prev = (int)Math.round((Double)t);
             int next = (int)Math.round((Double)t1);
@@ -17,34 +17,27 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.BitmapSnapshot;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
 import java.util.Objects;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicLong;
 import javafx.scene.chart.PieChart;
 
 /**
  * Class which handles displaying grayscale distribution in chart
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class GrayscaleChart implements Threadable
+public class GrayscaleChart implements Threadable, Suspendable
 {
     /**
-     * Sleep between checking if bitmap has changed (in miliseconds)
+     * Task which serves computing data for chart
      */
-    private static final int SLEEP = 500;
-    
-    /**
-     * Counter of created grayscale charts
-     */
-    private static long counter;
-    
-    /**
-     * Thread which serves checking and computing data for chart
-     */
-    private final Thread thread;
+    private final CoalescingTask task;
     
     /**
      * Chart in which data will be displayed
@@ -67,14 +60,35 @@ public class GrayscaleChart implements Threadable
     private final Bitmap source;
     
     /**
-     * Flag, whether thread is running
+     * Flag, whether data should be refreshed
      */
-    private boolean running = false;
+    private volatile boolean refresh = false;
     
     /**
-     * Flag, whether data should be refreshed
+     * Number of all pixels counted last time
+     */
+    private double pixelCounter = 0;
+    
+    /**
+     * Number of gray pixels counted last time
+     */
+    private double grayCounter = 0;
+    
+    /**
+     * Change of number of gray pixels which has not been displayed yet
+     */
+    private final AtomicLong grayDelta;
+    
+    /**
+     * Version of snapshot of bitmap from which gray pixels has been counted last time
+     * (changes already contained in it are not counted again)
+     */
+    private long version = 0;
+    
+    /**
+     * Flag, whether chart is not displayed and its data are not computed
      */
-    private boolean refresh = false;
+    private volatile boolean suspended = true;
     
     /**
      * Creates new handler for displaying gray pixels distribution
@@ -83,18 +97,48 @@ public class GrayscaleChart implements Threadable
     public GrayscaleChart(Bitmap bitmap)
     {
         this.source = bitmap;
+        this.task = ThreadManager.createTask(this);
+        this.grayDelta = new AtomicLong(0);
         this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
         {
             @Override
             public void onChange(Bitmap bitmap)
             {
                 GrayscaleChart.this.refresh = true;
+                GrayscaleChart.this.request();
+            }
+            
+            @Override
+            public void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+            {
+                if (change.hasValues() && GrayscaleChart.this.suspended == false)
+                {
+                    int[] oldValues = change.getOldValues();
+                    int[] newValues = change.getNewValues();
+                    long delta = 0;
+                    for (int i = 0; i < oldValues.length; i++)
+                    {
+                        if (GrayscaleChart.isGray(oldValues[i])) delta--;
+                        if (GrayscaleChart.isGray(newValues[i])) delta++;
+                    }
+                    synchronized (GrayscaleChart.this.grayDelta)
+                    {
+                        if (change.isContainedIn(GrayscaleChart.this.version) == false)
+                        {
+                            GrayscaleChart.this.grayDelta.addAndGet(delta);
+                        }
+                    }
+                    GrayscaleChart.this.request();
+                }
+                else
+                {
+                    GrayscaleChart.this.refresh = true;
+                    GrayscaleChart.this.request();
+                }
             }
         });
         this.grayData = new PieChart.Data("Šedé pixely", 50f);
         this.colorData = new PieChart.Data("Barevné pixely", 50f);
-        this.thread = new Thread(this, String.format("JSGMP:GrayscaleChart-%d",GrayscaleChart.counter));
-        GrayscaleChart.counter++;
     }
     
     /**
@@ -108,51 +152,102 @@ public class GrayscaleChart implements Threadable
         this.output.getData().add(this.grayData);
         this.output.getData().add(this.colorData);
         this.refresh = true;
+        this.request();
+    }
+    
+    /**
+     * Requests computation of data of chart (only if chart is not suspended)
+     */
+    private void request()
+    {
+        if (this.suspended == false)
+        {
+            this.task.request();
+        }
+    }
+
+    @Override
+    public void suspend()
+    {
+        this.suspended = true;
+    }
+
+    @Override
+    public void resume()
+    {
+        if (this.suspended == true)
+        {
+            this.suspended = false;
+            this.refresh = true;
+            this.task.request();
+        }
+    }
+
+    /**
+     * Checks, whether pixel is gray
+     * @param argb Integer containing red, green, blue and alpha values of pixel
+     * @return TRUE if pixel is gray, FALSE otherwise
+     */
+    private static boolean isGray(int argb)
+    {
+        return Pixel.red(argb) == Pixel.green(argb) && Pixel.green(argb) == Pixel.blue(argb);
     }
 
     @Override
     public void start() {
-        this.running = true;
         this.refresh = true;
-        this.thread.start();
+        this.request();
     }
 
     @Override
     public void stop() {
-        this.running = false;        
-        this.thread.stop();
+        this.task.cancel();
+    }
+
+    /**
+     * Displays actual numbers of gray and colour pixels in chart
+     */
+    private void display()
+    {
+        double grayPct = (this.grayCounter / this.pixelCounter) * 100f;
+        double colorPct = 100f - grayPct;
+        this.grayData.setPieValue(grayPct);
+        this.colorData.setPieValue(colorPct);
     }
 
     @Override
     public void run() {
-        while (this.running == true)
+        if (this.refresh == true)
         {
-            if (this.refresh == true)
+            this.refresh = false;
+            this.pixelCounter = 0;
+            this.grayCounter = 0;
+            BitmapSnapshot snapshot;
+            synchronized (this.grayDelta)
             {
-                this.refresh = false;
-                    double pixelCounter = 0;
-                    double grayCounter = 0;
-                    for (Pixel px: this.source)
-                    {
-                        pixelCounter++;
-                        if (px.getRed() == px.getGreen() && px.getGreen() == px.getBlue())
-                        {
-                            grayCounter++;
-                        }
-                    }
-                    double grayPct = (grayCounter / pixelCounter) * 100f;
-                    double colorPct = 100f - grayPct;
-                    this.grayData.setPieValue(grayPct);
-                    this.colorData.setPieValue(colorPct);
-            }
-            try
-            {
-                Thread.sleep(GrayscaleChart.SLEEP);
+                snapshot = this.source.getSnapshot();
+                this.version = snapshot.getVersion();
+                this.grayDelta.set(0);
             }
-            catch (InterruptedException ex)
+            int[] row = new int[snapshot.getWidth()];
+            for (int y = 0; y < snapshot.getHeight(); y++)
             {
-                Logger.getLogger(GrayscaleChart.class.getName()).log(Level.SEVERE, null, ex);
+                snapshot.readRegion(0, y, row.length, 1, row, 0, row.length);
+                for (int x = 0; x < row.length; x++)
+                {
+                    this.pixelCounter++;
+                    if (GrayscaleChart.isGray(row[x]))
+                    {
+                        this.grayCounter++;
+                    }
+                }
             }
-        }        
+            this.display();
+        }
+        else if (this.grayDelta.get() != 0)
+        {
+            this.grayCounter += this.grayDelta.getAndSet(0);
+            this.display();
+        }
     }    
 }
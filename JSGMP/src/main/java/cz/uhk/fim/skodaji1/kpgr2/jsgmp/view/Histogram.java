@@ -17,7 +17,9 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ConcurrentBitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
@@ -26,11 +28,10 @@ import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.function.Function;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.function.IntUnaryOperator;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
@@ -40,27 +41,22 @@ import javafx.scene.paint.Color;
  * Class representing histogram of bitmap
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class Histogram implements Threadable
+public class Histogram implements Threadable, Suspendable
 {   
     /**
-     * Counter of created histograms
+     * Function which computes value of histogram from ARGB value of pixel
      */
-    private static long counter = 0;
+    private final IntUnaryOperator histogramFunction;
     
     /**
-     * Sleep time between checking, whether histogram needs to be refreshed
+     * Bitmap which histogram will be computed
      */
-    private static final int SLEEP = 100;
+    private final Bitmap source;
     
     /**
-     * Function which computes value of histogram from pixel
+     * Engine which computes data of histogram
      */
-    private final Function<Pixel, Integer> histogramFunction;
-    
-    /**
-     * Bitmap which histogram will be computed
-     */
-    private final Bitmap source;
+    private HistogramEngine engine;
     
     /**
      * Bitmap to which result will be drawn
@@ -78,33 +74,48 @@ public class Histogram implements Threadable
     private final Color finalColor;
     
     /**
-     * Flag, whether there is need to refresh histogram
+     * Task which handles asynchronous histogram drawing
      */
-    private boolean refresh = false;
+    private final CoalescingTask task;
     
     /**
-     * Flag, whether histogram generator is running
+     * Flag, whether histogram data should be smoothed or not
      */
-    private boolean running = false;
+    private final boolean smooth;
     
     /**
-     * Thread which handles asynchronous histogram generation
+     * Data displayed in histogram
      */
-    private final Thread thread;
+    private final int[] data;
     
     /**
-     * Flag, whether histogram data should be smoothed or not
+     * Precomputed colours of all bars of histogram (as ARGB values)
      */
-    private final boolean smooth;
+    private final int[] gradient;
     
     /**
-     * Data displayed in histogram
+     * ARGB value of background of histogram
      */
-    private final int[] data;
+    private final int clear;
+    
+    /**
+     * Buffer into which histogram is drawn before it is written into resulting bitmap
+     */
+    private final int[] canvas;
+    
+    /**
+     * Data computed by histogram engine which has not been displayed yet
+     */
+    private final int[] pending;
+    
+    /**
+     * Flag, whether histogram is not displayed and its data are not computed
+     */
+    private volatile boolean suspended;
     
     /**
      * Creates new histogram
-     * @param function Function which computes value of histogram for pixel
+     * @param function Function which computes value of histogram from ARGB value of pixel
      * @param source Bitmap which histogram will be computed
      * @param result Bitmap to which results will be drawn into
      * @param startColor Starting color of histogram
@@ -112,7 +123,7 @@ public class Histogram implements Threadable
      * @param dataLength Length of data (i.e. number of possible values from function)
      */
     public Histogram(
-            Function<Pixel, Integer> function,
+            IntUnaryOperator function,
             Bitmap source,
             Bitmap result,
             Color startColor,
@@ -125,7 +136,7 @@ public class Histogram implements Threadable
     
     /**
      * Creates new histogram
-     * @param function Function which computes value of histogram for pixel
+     * @param function Function which computes value of histogram from ARGB value of pixel
      * @param source Bitmap which histogram will be computed
      * @param result Bitmap to which results will be drawn into
      * @param startColor Starting color of histogram
@@ -134,7 +145,7 @@ public class Histogram implements Threadable
      * @param smooth Flag, whether histogram data should be smoothed or not
      */
     public Histogram(
-            Function<Pixel, Integer> function,
+            IntUnaryOperator function,
             Bitmap source,
             Bitmap result,
             Color startColor,
@@ -148,18 +159,77 @@ public class Histogram implements Threadable
         this.result = result;
         this.startColor = startColor;
         this.finalColor = finalColor;
-        this.thread = new Thread(this, String.format("JSGMP:Histogram-%d", Histogram.counter));
-        Histogram.counter++;
+        this.task = ThreadManager.createTask(this);
         this.data = new int[dataLength];
+        this.pending = new int[dataLength];
+        this.gradient = new int[dataLength];
+        for (int i = 0; i < dataLength; i++)
+        {
+            this.gradient[i] = this.interpolateColor(startColor, finalColor, dataLength - 1, i).toARGB();
+        }
+        this.clear = Globals.HISTOGRAM_CLEAR.toARGB();
+        this.canvas = new int[result.getWidth() * result.getHeight()];
         this.smooth = true;
-        this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        this.suspended = true;
+    }
+    
+    /**
+     * Gets function which computes value of histogram from ARGB value of pixel
+     * @return Function which computes value of histogram
+     */
+    public IntUnaryOperator getFunction()
+    {
+        return this.histogramFunction;
+    }
+    
+    /**
+     * Gets length of data of histogram
+     * @return Number of possible values of histogram function
+     */
+    public int getDataLength()
+    {
+        return this.data.length;
+    }
+    
+    /**
+     * Sets new data displayed in histogram
+     * @param data New data displayed in histogram
+     */
+    public void setData(int[] data)
+    {
+        synchronized (this.pending)
+        {
+            System.arraycopy(data, 0, this.pending, 0, this.pending.length);
+        }
+        this.task.request();
+    }
+    
+    /**
+     * Checks, whether histogram is suspended (its data are not computed)
+     * @return TRUE if histogram is suspended, FALSE otherwise
+     */
+    public boolean isSuspended()
+    {
+        return this.suspended;
+    }
+
+    @Override
+    public void suspend()
+    {
+        this.suspended = true;
+    }
+
+    @Override
+    public void resume()
+    {
+        if (this.suspended == true)
         {
-            @Override
-            public void onChange(Bitmap bitmap)
+            this.suspended = false;
+            if (Objects.nonNull(this.engine))
             {
-                Histogram.this.refresh = true;
-            }        
-        });
+                this.engine.refresh();
+            }
+        }
     }
     
     /**
@@ -174,13 +244,17 @@ public class Histogram implements Threadable
     @Override
     public void start()
     {
-        this.running = true;
-        this.thread.start();
+        this.engine = ThreadManager.getHistogramEngine(this.source);
+        this.engine.register(this);
     }
 
     @Override
     public void stop() {
-        this.running = false;
+        this.task.cancel();
+        if (Objects.nonNull(this.engine))
+        {
+            this.engine.unregister(this);
+        }
         if (this.result instanceof ConcurrentBitmap)
         {
             ConcurrentBitmap concurrentResult = (ConcurrentBitmap)this.result;
@@ -227,75 +301,45 @@ public class Histogram implements Threadable
     @Override
     public void run()
     {
-        while (this.running == true)
+        synchronized (this.pending)
         {
-            if (this.refresh == true)
+            System.arraycopy(this.pending, 0, this.data, 0, this.data.length);
+        }
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < this.data.length; i++)
+        {
+            if (this.data[i] > max)
             {
-                // First, compute data
-                Arrays.fill(this.data, 0);
-                int max = Integer.MIN_VALUE;
-                for(Pixel px: this.source)
-                {
-                    if (px != null)
-                    {
-                        int val = this.histogramFunction.apply(px);
-                        if (val >= this.data.length)
-                        {
-                            val = this.data.length - 1;
-                        }
-                        if (val >= 0)
-                        {
-                            this.data[val]++;
-                            if (this.data[val] > max)
-                            {
-                                max = this.data[val];
-                            }
-                        }                                    
-                    }
-                }
-                
-                if (this.smooth == true)
-                {
-                    this.smooth();
-                }
-                
-                // Second, display data
-                double widthStep = (double)this.result.getWidth() / (double)this.data.length;
-                double heightStep = (double)this.result.getHeight() / (double)max;
-                Bitmap.BitmapTransaction transaction = new Bitmap.BitmapTransaction();
-                for (int i = 0; i < this.data.length; i++)
-                {
-                    int xStart = (int)Math.round((double)i * widthStep);
-                    int xEnd = (int)Math.round((double)xStart + widthStep);
-                    int height = (int)Math.round((double)this.data[i] * heightStep);
-                    for (int x = xStart; x <= xEnd; x++)
-                    {
-                        for (int y = this.result.getHeight() - 1; y >= 0; y--)
-                        {
-                            if (y > (this.result.getHeight() - height))
-                            {
-                                transaction.setPixel(x, y, this.interpolateColor(this.startColor, this.finalColor, this.data.length - 1, i));
-                            }
-                            else
-                            {
-                                transaction.setPixel(x, y, Globals.HISTOGRAM_CLEAR);
-                            }
-                        }
-                    }
-                }
-                this.result.processTransaction(transaction);
-                this.refresh = false;
+                max = this.data[i];
             }
-            try
+        }
+        
+        if (this.smooth == true)
+        {
+            this.smooth();
+        }
+        
+        // Display data
+        int width = this.result.getWidth();
+        int height = this.result.getHeight();
+        double widthStep = (double)width / (double)this.data.length;
+        double heightStep = (double)height / (double)max;
+        Arrays.fill(this.canvas, this.clear);
+        for (int i = 0; i < this.data.length; i++)
+        {
+            int xStart = (int)Math.round((double)i * widthStep);
+            int xEnd = Math.min((int)Math.round((double)xStart + widthStep), width - 1);
+            int barHeight = (int)Math.round((double)this.data[i] * heightStep);
+            if (xStart > xEnd)
             {
-                Thread.sleep(Histogram.SLEEP);
+                continue;
             }
-            catch (InterruptedException ex)
+            for (int y = Math.max(height - barHeight + 1, 0); y < height; y++)
             {
-                Logger.getLogger(Histogram.class.getName()).log(Level.SEVERE, null, ex);
+                Arrays.fill(this.canvas, y * width + xStart, y * width + xEnd + 1, this.gradient[i]);
             }
         }
-        this.thread.stop();
+        this.result.writeRegionNow(0, 0, width, height, this.canvas, 0, width);
     }
     
 }
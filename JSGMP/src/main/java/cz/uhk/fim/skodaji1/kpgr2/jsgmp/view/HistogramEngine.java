@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Binning;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.BitmapSnapshot;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Kernels;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Metrics;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.PixelKernels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class which computes data of all histograms of one bitmap in one pass over bitmap
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class HistogramEngine implements Threadable
+{
+    /**
+     * Maximal number of rows of bitmap processed by one task
+     */
+    private static final int CHUNK_ROWS = 64;
+    
+    /**
+     * Task which computes data of all histograms from range of rows of bitmap
+     */
+    private static class ChunkTask extends RecursiveTask<int[][]>
+    {
+        /**
+         * Identifier of version of serialized task
+         */
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Snapshot of bitmap which histograms will be computed
+         */
+        private final BitmapSnapshot source;
+        
+        /**
+         * Functions which compute value of histograms from ARGB value of pixel
+         */
+        private final IntUnaryOperator[] functions;
+        
+        /**
+         * Lengths of data of histograms
+         */
+        private final int[] lengths;
+        
+        /**
+         * First row processed by task
+         */
+        private final int from;
+        
+        /**
+         * First row which is not processed by task
+         */
+        private final int to;
+        
+        /**
+         * Creates new task which computes data of histograms from range of rows
+         * @param source Snapshot of bitmap which histograms will be computed
+         * @param functions Functions which compute value of histograms from ARGB value of pixel
+         * @param lengths Lengths of data of histograms
+         * @param from First row processed by task
+         * @param to First row which is not processed by task
+         */
+        public ChunkTask(BitmapSnapshot source, IntUnaryOperator[] functions, int[] lengths, int from, int to)
+        {
+            this.source = source;
+            this.functions = functions;
+            this.lengths = lengths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[][] compute()
+        {
+            if (this.to - this.from > HistogramEngine.CHUNK_ROWS)
+            {
+                int middle = (this.from + this.to) >>> 1;
+                ChunkTask first = new ChunkTask(this.source, this.functions, this.lengths, this.from, middle);
+                ChunkTask second = new ChunkTask(this.source, this.functions, this.lengths, middle, this.to);
+                first.fork();
+                int[][] reti = second.compute();
+                HistogramEngine.merge(reti, first.join());
+                return reti;
+            }
+            int[][] reti = new int[this.functions.length][];
+            for (int i = 0; i < this.functions.length; i++)
+            {
+                reti[i] = new int[this.lengths[i]];
+            }
+            int width = this.source.getWidth();
+            int[] pixels = new int[width * (this.to - this.from)];
+            this.source.readRegion(0, this.from, width, this.to - this.from, pixels, 0, width);
+            PixelKernels kernels = Kernels.get();
+            for (int i = 0; i < this.functions.length; i++)
+            {
+                HistogramEngine.bin(kernels, this.functions[i], pixels, reti[i]);
+            }
+            return reti;
+        }
+    }
+    
+    /**
+     * Bitmap which histograms will be computed
+     */
+    private final Bitmap source;
+    
+    /**
+     * List of all histograms which data are computed
+     */
+    private final List<Histogram> histograms;
+    
+    /**
+     * Task which handles computation of data of histograms
+     */
+    private final CoalescingTask task;
+    
+    /**
+     * Flag, whether data of histograms needs to be computed again from whole bitmap
+     */
+    private boolean refresh = false;
+    
+    /**
+     * Changes of bitmap which has not been added to data of histograms yet
+     */
+    private final List<Bitmap.BitmapChange> pending;
+    
+    /**
+     * Histograms for which data has been computed last time
+     */
+    private Histogram[] computed;
+    
+    /**
+     * Data of histograms computed last time
+     */
+    private int[][] data;
+    
+    /**
+     * Maximal intensity of bitmap when data has been computed from whole bitmap
+     * (some functions of histograms depend on range of intensity)
+     */
+    private int maxIntensity;
+    
+    /**
+     * Minimal intensity of bitmap when data has been computed from whole bitmap
+     * (some functions of histograms depend on range of intensity)
+     */
+    private int minIntensity;
+    
+    /**
+     * Version of snapshot of bitmap from which data has been computed last time
+     * (changes already contained in it are not added again)
+     */
+    private long version = 0;
+    
+    /**
+     * Creates new engine computing data of histograms
+     * @param source Bitmap which histograms will be computed
+     */
+    public HistogramEngine(Bitmap source)
+    {
+        this.source = source;
+        this.histograms = Collections.synchronizedList(new ArrayList<>());
+        this.pending = new ArrayList<>();
+        this.computed = new Histogram[0];
+        this.data = new int[0][];
+        this.task = ThreadManager.createTask(this);
+        this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        {
+            @Override
+            public void onChange(Bitmap bitmap)
+            {
+                HistogramEngine.this.refresh();
+            }
+            
+            @Override
+            public void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+            {
+                if (change.hasValues())
+                {
+                    HistogramEngine.this.addChange(change);
+                }
+                else
+                {
+                    HistogramEngine.this.refresh();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Registers histogram which data will be computed by engine
+     * @param histogram Histogram which data will be computed
+     */
+    public void register(Histogram histogram)
+    {
+        this.histograms.add(histogram);
+        this.refresh();
+    }
+    
+    /**
+     * Unregisters histogram (its data will not be computed anymore),
+     * when there is no histogram left, engine is stopped
+     * @param histogram Histogram which data will not be computed anymore
+     */
+    public void unregister(Histogram histogram)
+    {
+        this.histograms.remove(histogram);
+        if (this.histograms.isEmpty())
+        {
+            ThreadManager.stopOne(this);
+        }
+    }
+    
+    /**
+     * Marks data of all histograms to be computed again
+     */
+    synchronized void refresh()
+    {
+        this.refresh = true;
+        this.pending.clear();
+        this.task.request();
+    }
+    
+    /**
+     * Adds change of bitmap which will be added to data of histograms
+     * @param change Change of bitmap with values of pixels before and after change
+     */
+    private synchronized void addChange(Bitmap.BitmapChange change)
+    {
+        if (this.refresh == false && change.isContainedIn(this.version) == false)
+        {
+            this.pending.add(change);
+            this.task.request();
+        }
+    }
+    
+    /**
+     * Updates data of histograms by change of bitmap
+     * (subtracts values of pixels before change and adds values of pixels after change)
+     * @param functions Functions which compute value of histograms from ARGB value of pixel
+     * @param change Change of bitmap with values of pixels before and after change
+     */
+    private void update(IntUnaryOperator[] functions, Bitmap.BitmapChange change)
+    {
+        PixelKernels kernels = Kernels.get();
+        for (int i = 0; i < functions.length; i++)
+        {
+            int[] bins = this.data[i];
+            int[] removed = new int[bins.length];
+            HistogramEngine.bin(kernels, functions[i], change.getOldValues(), removed);
+            HistogramEngine.bin(kernels, functions[i], change.getNewValues(), bins);
+            for (int j = 0; j < bins.length; j++)
+            {
+                bins[j] -= removed[j];
+            }
+        }
+    }
+    
+    /**
+     * Counts values of histogram of pixels
+     * (both full pass and incremental updates use this method,
+     * so values of pixel are always counted into same bin)
+     * @param kernels Vectorized kernels (or NULL, if they are not available)
+     * @param function Function which computes value of histogram from ARGB value of pixel
+     * @param pixels Array with ARGB values of pixels
+     * @param bins Array with number of pixels with each value of histogram
+     */
+    private static void bin(PixelKernels kernels, IntUnaryOperator function, int[] pixels, int[] bins)
+    {
+        if (Objects.nonNull(kernels) && function instanceof Binning)
+        {
+            kernels.bin(pixels, 0, pixels.length, (Binning)function, bins);
+        }
+        else
+        {
+            for (int argb: pixels)
+            {
+                int val = Math.min(function.applyAsInt(argb), bins.length - 1);
+                if (val >= 0)
+                {
+                    bins[val]++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds data of histograms to another data of histograms
+     * @param target Data of histograms to which data will be added
+     * @param source Data of histograms which will be added
+     */
+    private static void merge(int[][] target, int[][] source)
+    {
+        for (int i = 0; i < target.length; i++)
+        {
+            for (int j = 0; j < target[i].length; j++)
+            {
+                target[i][j] += source[i][j];
+            }
+        }
+    }
+
+    @Override
+    public void start()
+    {
+        this.task.request();
+    }
+
+    @Override
+    public void stop()
+    {
+        this.task.cancel();
+    }
+
+    @Override
+    public void run()
+    {
+        boolean full;
+        Bitmap.BitmapChange[] changes;
+        synchronized (this)
+        {
+            full = this.refresh;
+            changes = this.pending.toArray(new Bitmap.BitmapChange[0]);
+            this.refresh = false;
+            this.pending.clear();
+        }
+        Histogram[] actual;
+        synchronized (this.histograms)
+        {
+            actual = this.histograms.stream().filter((Histogram h) -> {return h.isSuspended() == false;}).toArray(Histogram[]::new);
+        }
+        if (actual.length == 0)
+        {
+            synchronized (this)
+            {
+                this.refresh = true;
+                this.pending.clear();
+            }
+            this.computed = actual;
+            return;
+        }
+        IntUnaryOperator[] functions = new IntUnaryOperator[actual.length];
+        int[] lengths = new int[actual.length];
+        for (int i = 0; i < actual.length; i++)
+        {
+            functions[i] = actual[i].getFunction();
+            lengths[i] = actual[i].getDataLength();
+        }
+        if (full == false && (
+                Arrays.equals(actual, this.computed) == false ||
+                this.source.getMaxIntensity() != this.maxIntensity ||
+                this.source.getMinIntensity() != this.minIntensity))
+        {
+            full = true;
+        }
+        if (full == true)
+        {
+            this.maxIntensity = this.source.getMaxIntensity();
+            this.minIntensity = this.source.getMinIntensity();
+            Metrics.Sample sample = Metrics.startPass();
+            BitmapSnapshot snapshot;
+            synchronized (this)
+            {
+                snapshot = this.source.getSnapshot();
+                this.version = snapshot.getVersion();
+                this.pending.removeIf((Bitmap.BitmapChange change) -> {return change.isContainedIn(this.version);});
+            }
+            this.data = ForkJoinPool.commonPool().invoke(new ChunkTask(snapshot, functions, lengths, 0, snapshot.getHeight()));
+            this.computed = actual;
+            Metrics.record(Metrics.HISTOGRAM_FULL, sample, (long)this.source.getWidth() * (long)this.source.getHeight());
+        }
+        else
+        {
+            Metrics.Sample sample = Metrics.start();
+            long pixels = 0;
+            for (Bitmap.BitmapChange change: changes)
+            {
+                this.update(functions, change);
+                pixels += (long)change.getWidth() * (long)change.getHeight();
+            }
+            Metrics.record(Metrics.HISTOGRAM_UPDATE, sample, pixels);
+        }
+        for (int i = 0; i < actual.length; i++)
+        {
+            actual[i].setData(this.data[i]);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
+
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Class which holds image in multiple resolutions (each level has half size of previous one);
+ * levels are computed in background and only changed areas of bitmap are computed again
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class ImagePyramid implements Threadable
+{
+    /**
+     * Minimal size of longer side of smallest level (in pixels)
+     */
+    private static final int MIN_SIZE = 32;
+    
+    /**
+     * Bitmap which levels will be computed
+     */
+    private final Bitmap source;
+    
+    /**
+     * Widths of all levels (level 0 is bitmap itself)
+     */
+    private final int[] widths;
+    
+    /**
+     * Heights of all levels (level 0 is bitmap itself)
+     */
+    private final int[] heights;
+    
+    /**
+     * ARGB values of pixels of all levels (level 0 is not stored, other levels are allocated when they are requested first time)
+     */
+    private final int[][] data;
+    
+    /**
+     * Graphical representations of all levels (level 0 is not stored, other levels are allocated when they are requested first time)
+     */
+    private final WritableImage[] images;
+    
+    /**
+     * Bounds of area of bitmap changed since last computation [minX, minY, maxX, maxY]
+     */
+    private final int[] dirty;
+    
+    /**
+     * Buffer for two rows of bitmap from which first level is computed
+     */
+    private final int[] rows;
+    
+    /**
+     * Flag, whether any level other than bitmap itself is displayed
+     * (levels are computed only while it is set, changes are collected otherwise)
+     */
+    private volatile boolean active = false;
+    
+    /**
+     * Task which computes levels
+     */
+    private final CoalescingTask task;
+    
+    /**
+     * Creates new pyramid of images
+     * @param source Bitmap which levels will be computed
+     */
+    public ImagePyramid(Bitmap source)
+    {
+        this.source = source;
+        List<int[]> sizes = new ArrayList<>();
+        int w = source.getWidth();
+        int h = source.getHeight();
+        sizes.add(new int[]{w, h});
+        while (Math.max(w, h) / 2 >= ImagePyramid.MIN_SIZE)
+        {
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            sizes.add(new int[]{w, h});
+        }
+        this.widths = new int[sizes.size()];
+        this.heights = new int[sizes.size()];
+        this.data = new int[sizes.size()][];
+        this.images = new WritableImage[sizes.size()];
+        for (int i = 0; i < sizes.size(); i++)
+        {
+            this.widths[i] = sizes.get(i)[0];
+            this.heights[i] = sizes.get(i)[1];
+        }
+        this.dirty = new int[]{0, 0, source.getWidth() - 1, source.getHeight() - 1};
+        this.rows = new int[2 * source.getWidth()];
+        this.task = ThreadManager.createTask(this);
+        this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        {
+            @Override
+            public void onChange(Bitmap bitmap)
+            {
+                ImagePyramid.this.markDirty(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            }
+            
+            @Override
+            public void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+            {
+                ImagePyramid.this.markDirty(change.getX(), change.getY(), change.getWidth(), change.getHeight());
+            }
+        });
+    }
+    
+    /**
+     * Marks area of bitmap as changed and schedules computation of levels
+     * @param x X coordinate of top left pixel of changed area
+     * @param y Y coordinate of top left pixel of changed area
+     * @param width Width of changed area
+     * @param height Height of changed area
+     */
+    private void markDirty(int x, int y, int width, int height)
+    {
+        if (width > 0 && height > 0)
+        {
+            synchronized (this.dirty)
+            {
+                this.dirty[0] = Math.min(this.dirty[0], x);
+                this.dirty[1] = Math.min(this.dirty[1], y);
+                this.dirty[2] = Math.max(this.dirty[2], x + width - 1);
+                this.dirty[3] = Math.max(this.dirty[3], y + height - 1);
+            }
+            if (this.active == true)
+            {
+                this.task.request();
+            }
+        }
+    }
+    
+    /**
+     * Gets number of levels of pyramid (including bitmap itself)
+     * @return Number of levels of pyramid
+     */
+    public int getLevels()
+    {
+        return this.widths.length;
+    }
+    
+    /**
+     * Gets level of pyramid which best matches scale of displayed image
+     * (smallest level which has at least as many pixels as displayed image)
+     * @param scale Scale of displayed image (1 means original size)
+     * @return Index of level of pyramid
+     */
+    public int getLevel(double scale)
+    {
+        int reti = 0;
+        while (reti + 1 < this.widths.length && (double)this.widths[reti + 1] >= (double)this.widths[0] * scale)
+        {
+            reti++;
+        }
+        return reti;
+    }
+    
+    /**
+     * Allocates data and graphical representations of all levels of pyramid (if they are not allocated yet)
+     */
+    private void allocate()
+    {
+        if (Objects.isNull(this.images[1]))
+        {
+            for (int i = 1; i < this.widths.length; i++)
+            {
+                this.data[i] = new int[this.widths[i] * this.heights[i]];
+                this.images[i] = new WritableImage(this.widths[i], this.heights[i]);
+            }
+        }
+    }
+    
+    /**
+     * Gets graphical representation of level of pyramid
+     * (levels are computed only after any level other than bitmap itself is requested)
+     * @param level Index of level (0 is bitmap itself)
+     * @return Image containing level of pyramid
+     */
+    public Image getImage(int level)
+    {
+        Image reti = this.source.toImage();
+        if (level > 0)
+        {
+            this.allocate();
+        }
+        this.active = (level > 0);
+        if (level > 0)
+        {
+            reti = this.images[level];
+            this.task.request();
+        }
+        return reti;
+    }
+    
+    /**
+     * Computes area of level from previous level (each pixel is average of 2x2 pixels of previous level)
+     * @param level Index of computed level
+     * @param x X coordinate of top left pixel of area in computed level
+     * @param y Y coordinate of top left pixel of area in computed level
+     * @param width Width of area
+     * @param height Height of area
+     */
+    private void downsample(int level, int x, int y, int width, int height)
+    {
+        int parentWidth = this.widths[level - 1];
+        int parentHeight = this.heights[level - 1];
+        int fromX = 2 * x;
+        int fromY = 2 * y;
+        int w = Math.min(2 * width, parentWidth - fromX);
+        int h = Math.min(2 * height, parentHeight - fromY);
+        int[] parent = (level == 1) ? this.rows : this.data[level - 1];
+        int[] target = this.data[level];
+        int targetWidth = this.widths[level];
+        synchronized (target)
+        {
+            for (int row = 0; row < height; row++)
+            {
+                int top;
+                int stride;
+                int lines = Math.min(2, h - 2 * row);
+                if (level == 1)
+                {
+                    this.source.readRegion(fromX, fromY + 2 * row, w, lines, parent, 0, w);
+                    top = 0;
+                    stride = w;
+                }
+                else
+                {
+                    top = (fromY + 2 * row) * parentWidth + fromX;
+                    stride = parentWidth;
+                }
+                int bottom = (lines > 1) ? top + stride : top;
+                for (int col = 0; col < width; col++)
+                {
+                    int left = 2 * col;
+                    int right = (2 * col + 1 < w) ? left + 1 : left;
+                    int a = parent[top + left];
+                    int b = parent[top + right];
+                    int c = parent[bottom + left];
+                    int d = parent[bottom + right];
+                    target[(y + row) * targetWidth + x + col] = Pixel.argb(
+                            (Pixel.red(a) + Pixel.red(b) + Pixel.red(c) + Pixel.red(d) + 2) >> 2,
+                            (Pixel.green(a) + Pixel.green(b) + Pixel.green(c) + Pixel.green(d) + 2) >> 2,
+                            (Pixel.blue(a) + Pixel.blue(b) + Pixel.blue(c) + Pixel.blue(d) + 2) >> 2,
+                            (Pixel.alpha(a) + Pixel.alpha(b) + Pixel.alpha(c) + Pixel.alpha(d) + 2) >> 2
+                    );
+                }
+            }
+        }
+    }
+    
+    /**
+     * Uploads area of level into its graphical representation
+     * (must be called from JavaFX application thread)
+     * @param level Index of level
+     * @param x X coordinate of top left pixel of area
+     * @param y Y coordinate of top left pixel of area
+     * @param width Width of area
+     * @param height Height of area
+     */
+    private void upload(int level, int x, int y, int width, int height)
+    {
+        int[] levelData = this.data[level];
+        synchronized (levelData)
+        {
+            this.images[level].getPixelWriter().setPixels(
+                    x, y, width, height,
+                    PixelFormat.getIntArgbInstance(),
+                    levelData, y * this.widths[level] + x, this.widths[level]
+            );
+        }
+    }
+
+    @Override
+    public void start()
+    {
+        this.task.request();
+    }
+
+    @Override
+    public void stop()
+    {
+        this.task.cancel();
+    }
+
+    @Override
+    public void run()
+    {
+        if (this.active == false)
+        {
+            return;
+        }
+        int minX, minY, maxX, maxY;
+        synchronized (this.dirty)
+        {
+            minX = this.dirty[0];
+            minY = this.dirty[1];
+            maxX = this.dirty[2];
+            maxY = this.dirty[3];
+            this.dirty[0] = Integer.MAX_VALUE;
+            this.dirty[1] = Integer.MAX_VALUE;
+            this.dirty[2] = Integer.MIN_VALUE;
+            this.dirty[3] = Integer.MIN_VALUE;
+        }
+        if (minX > maxX || minY > maxY)
+        {
+            return;
+        }
+        for (int level = 1; level < this.widths.length && this.task.isCancelled() == false; level++)
+        {
+            minX = minX / 2;
+            minY = minY / 2;
+            maxX = Math.min(maxX / 2, this.widths[level] - 1);
+            maxY = Math.min(maxY / 2, this.heights[level] - 1);
+            final int lvl = level;
+            final int x = minX;
+            final int y = minY;
+            final int w = maxX - minX + 1;
+            final int h = maxY - minY + 1;
+            this.downsample(lvl, x, y, w, h);
+            Platform.runLater(() ->
+            {
+                this.upload(lvl, x, y, w, h);
+            });
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
 import java.util.Objects;
@@ -28,7 +29,7 @@ import javafx.scene.image.ImageView;
  * Class which handles zooming
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class Zoom
+public class Zoom implements Suspendable
 {
     /**
      * Source of data
@@ -49,6 +50,11 @@ public class Zoom
      * Diagram of actual level of zoom
      */
     private ZoomDiagram diagram = null;
+    
+    /**
+     * Image in multiple resolutions
+     */
+    private final ImagePyramid pyramid;
 
     /**
      * Default height of image
@@ -65,6 +71,11 @@ public class Zoom
      */
     private int level;
     
+    /**
+     * Downscaled preview displayed instead of image (NULL if image itself is displayed)
+     */
+    private Image preview;
+    
     /**
      * Creates new handler of zooming
      * @param source Source of image data
@@ -73,15 +84,8 @@ public class Zoom
     {
         this.source = source;
         this.level = 100;
-        this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener() {
-            @Override
-            public void onChange(Bitmap bitmap){
-                if (Objects.nonNull(Zoom.this.diagram))
-                {
-                    Zoom.this.diagram.refresh();
-                }                
-            }
-        });
+        this.preview = null;
+        this.pyramid = ThreadManager.createImagePyramid(source);
     }
     
     /**
@@ -95,6 +99,28 @@ public class Zoom
         double newHeight = this.defaultHeight * ((double)this.level / 100f);
         this.imageView.setFitWidth(newWidth);
         this.imageView.setFitHeight(newHeight);
+        Image image = this.preview;
+        if (Objects.isNull(image))
+        {
+            image = this.pyramid.getImage(this.pyramid.getLevel((double)this.level / 100f));
+        }
+        if (this.imageView.getImage() != image)
+        {
+            this.imageView.setImage(image);
+        }
+    }
+    
+    /**
+     * Sets preview which is displayed instead of image (it is scaled to actual size of image)
+     * @param preview Downscaled preview of image, or NULL if image itself should be displayed
+     */
+    public void setPreview(Image preview)
+    {
+        this.preview = preview;
+        if (Objects.nonNull(this.imageView))
+        {
+            this.setZoomLevel(this.level);
+        }
     }
     
     /**
@@ -145,9 +171,28 @@ public class Zoom
     public void stop()
     {
         ThreadManager.stopOne(this.diagram);
+        ThreadManager.stopOne(this.pyramid);
         this.diagram = null;
     }
     
+    @Override
+    public void suspend()
+    {
+        if (Objects.nonNull(this.diagram))
+        {
+            this.diagram.suspend();
+        }
+    }
+
+    @Override
+    public void resume()
+    {
+        if (Objects.nonNull(this.diagram))
+        {
+            this.diagram.resume();
+        }
+    }
+    
     /**
      * Gets diagram of actual level of zoom
      * @return Image containing diagram of actual level of zoom
@@ -17,16 +17,16 @@
  */
 package cz.uhk.fim.skodaji1.kpgr2.jsgmp.view;
 
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.CoalescingTask;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ConcurrentBitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Suspendable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.ThreadManager;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.concurrency.Threadable;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Bitmap;
+import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.BitmapSnapshot;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Globals;
 import cz.uhk.fim.skodaji1.kpgr2.jsgmp.model.Pixel;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Arrays;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.image.Image;
@@ -36,23 +36,13 @@ import javafx.scene.paint.Color;
  * Class representing diagram of zoom
  * @author Jiri Skoda <jiri.skoda@uhk.cz>
  */
-public class ZoomDiagram implements Threadable
+public class ZoomDiagram implements Threadable, Suspendable
 {
-    /**
-     * Interval between checking, whether diagram should be refreshed (in miliseconds)
-     */
-    private static final int SLEEP = 200;
-    
     /**
      * Padding of diagram in bitmap
      */
     private static final int PADDING = 10;
     
-    /**
-     * Counter of created diagrams
-     */
-    private static long counter = 0;
-    
     /**
      * Actual width of view
      */
@@ -84,29 +74,59 @@ public class ZoomDiagram implements Threadable
     private double scrollLeft;
     
     /**
-     * Thread which manages refresh of diagram
+     * Task which manages refresh of diagram
      */
-    private final Thread thread;
+    private final CoalescingTask task;
     
     /**
-     * Flag, whether thread is running
+     * Bitmap to which diagram will be drawn
      */
-    private boolean running;
+    private final Bitmap bitmap;
     
     /**
-     * Flag, whether diagram should be refreshed
+     * Source of image data
      */
-    private boolean refresh;
+    private final Bitmap source;
     
     /**
-     * Bitmap to which diagram will be drawn
+     * Buffer with pixels of diagram
      */
-    private final Bitmap bitmap;
+    private final int[] canvas;
     
     /**
-     * Source of image data
+     * Background colour of diagram
      */
-    private final Bitmap source;
+    private final int clear;
+    
+    /**
+     * Colour of rectangle showing visible part of image
+     */
+    private final int highlight;
+    
+    /**
+     * Cached downscaled copy of source image
+     */
+    private int[] thumbnail;
+    
+    /**
+     * Width of cached thumbnail
+     */
+    private int thumbnailWidth;
+    
+    /**
+     * Height of cached thumbnail
+     */
+    private int thumbnailHeight;
+    
+    /**
+     * Bounds of area of source image changed since thumbnail has been computed [minX, minY, maxX, maxY]
+     */
+    private final int[] dirty;
+    
+    /**
+     * Flag, whether diagram is not displayed and it is not drawn
+     */
+    private volatile boolean suspended = true;
     
     /**
      * Creates new diagram of zoom
@@ -128,41 +148,59 @@ public class ZoomDiagram implements Threadable
             Bitmap source
     )
     {
-        this.thread = new Thread(this, String.format("JSGMP:ZoomDiagram-%d", ZoomDiagram.counter));
-        ZoomDiagram.counter++;
+        this.task = ThreadManager.createTask(this);
         this.source = source;
-        this.running = false;
-        this.refresh = false;
         this.bitmap = ThreadManager.createBitmap(Globals.HISTOGRAM_WIDTH, Globals.HISTOGRAM_HEIGHT);
+        this.canvas = new int[this.bitmap.getWidth() * this.bitmap.getHeight()];
+        this.clear = Globals.HISTOGRAM_CLEAR.toARGB();
+        this.highlight = new Pixel(Color.WHITE).toARGB();
+        this.thumbnail = new int[0];
+        this.thumbnailWidth = 0;
+        this.thumbnailHeight = 0;
+        this.dirty = new int[]{0, 0, source.getWidth() - 1, source.getHeight() - 1};
+        this.source.addChangeActionListener(new Bitmap.BitmapChangedActionListener()
+        {
+            @Override
+            public void onChange(Bitmap bitmap)
+            {
+                ZoomDiagram.this.markDirty(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            }
+            
+            @Override
+            public void onChange(Bitmap bitmap, Bitmap.BitmapChange change)
+            {
+                ZoomDiagram.this.markDirty(change.getX(), change.getY(), change.getWidth(), change.getHeight());
+            }
+        });
         viewWidthProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.viewWidth = (int)Math.round((Double)t1);
-            this.refresh = true;
+            this.request();
         });
         viewHeightProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.viewHeight = (int)Math.round((Double)t1);
-            this.refresh = true;
+            this.request();
         });
         imageWidthProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.imageWidth = (int)Math.round((Double)t1);
-            this.refresh = true;
+            this.request();
         });
         imageHeightProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.imageHeight = (int)Math.round((Double)t1);
-            this.refresh = true;
+            this.request();
         });
         scrollTopProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.scrollTop = (Double)t1;
-            this.refresh = true;
+            this.request();
         });
         scrollLeftProperty.addListener((ObservableValue<? extends Number> ov, Number t, Number t1) ->
         {
             this.scrollLeft = (Double)t1;
-            this.refresh = true;
+            this.request();
         });
         this.viewWidth = (int)Math.round(viewWidthProperty.doubleValue());
         this.viewHeight = (int)Math.round(viewHeightProperty.doubleValue());
@@ -182,146 +220,171 @@ public class ZoomDiagram implements Threadable
     }
 
     /**
-     * Interpolates integer
-     * @param i1 First integer
-     * @param i2 Second integer
-     * @param step Actual number of step between first and second integer
-     * @param steps Number of all steps between first and second integer
-     * @return 
+     * Marks area of source image as changed (its part of thumbnail will be computed again)
+     * @param x X coordinate of top left pixel of changed area
+     * @param y Y coordinate of top left pixel of changed area
+     * @param width Width of changed area
+     * @param height Height of changed area
      */
-    private int interpolateInt(int i1, int i2, int step, int steps)
+    private void markDirty(int x, int y, int width, int height)
     {
-        int reti = i1;
-        double delta = (double)i2 - (double)i1;
-        double stepDelta = (double)steps / delta;
-        reti = reti + (int)Math.round((double)step * stepDelta);
-        return reti;
+        if (width > 0 && height > 0)
+        {
+            synchronized (this.dirty)
+            {
+                this.dirty[0] = Math.min(this.dirty[0], x);
+                this.dirty[1] = Math.min(this.dirty[1], y);
+                this.dirty[2] = Math.max(this.dirty[2], x + width - 1);
+                this.dirty[3] = Math.max(this.dirty[3], y + height - 1);
+            }
+            this.request();
+        }
     }
     
     /**
-     * Draws line
-     * @param x1 X coordinate of starting point
-     * @param y1 Y coordinate of starting point
-     * @param x2 X coordinate of ending point
-     * @param y2 Y coordinate of ending point
-     * @param transaction Transaction in which line will be drawn 
-     * @param color Color of the line
+     * Updates cached thumbnail of source image
+     * (thumbnail is computed again only in changed area or when its size changes)
+     * @param width Required width of thumbnail
+     * @param height Required height of thumbnail
      */
-    private void drawLine(int x1, int y1, int x2, int y2, Bitmap.BitmapTransaction transaction, Pixel color)
+    private void updateThumbnail(int width, int height)
     {
-        int dX = Math.abs(x2 - x1);
-        int dY = Math.abs(y2 - y1);
-        if (dX > dY)
+        int minX, minY, maxX, maxY;
+        synchronized (this.dirty)
         {
-            int startX = x1;
-            int startY = y1;
-            int endX = x2;
-            int endY = y2;
-            if (endX < startX)
-            {
-                int tmp = startX;
-                startX = endX;
-                endX = tmp;
-                tmp = startY;
-                startY = endY;
-                endY = tmp;
-            }
-            for (int x = startX; x < endX; x++)
-            {
-                transaction.setPixel(x, this.interpolateInt(startY, endY, x - startX, dX), color);
-            }
+            minX = this.dirty[0];
+            minY = this.dirty[1];
+            maxX = this.dirty[2];
+            maxY = this.dirty[3];
+            this.dirty[0] = Integer.MAX_VALUE;
+            this.dirty[1] = Integer.MAX_VALUE;
+            this.dirty[2] = Integer.MIN_VALUE;
+            this.dirty[3] = Integer.MIN_VALUE;
+        }
+        int sourceWidth = this.source.getWidth();
+        int sourceHeight = this.source.getHeight();
+        double pxWidth = (double)sourceWidth / (double)width;
+        double pxHeight = (double)sourceHeight / (double)height;
+        int fromX = 0, toX = width, fromY = 0, toY = height;
+        if (width != this.thumbnailWidth || height != this.thumbnailHeight)
+        {
+            this.thumbnail = new int[width * height];
+            this.thumbnailWidth = width;
+            this.thumbnailHeight = height;
+        }
+        else if (minX > maxX || minY > maxY)
+        {
+            return;
         }
         else
         {
-            int startX = x1;
-            int startY = y1;
-            int endX = x2;
-            int endY = y2;
-            if (endY < startY)
+            fromX = Math.max(0, (int)Math.floor((double)minX / pxWidth) - 1);
+            toX = Math.min(width, (int)Math.ceil((double)maxX / pxWidth) + 2);
+            fromY = Math.max(0, (int)Math.floor((double)minY / pxHeight) - 1);
+            toY = Math.min(height, (int)Math.ceil((double)maxY / pxHeight) + 2);
+        }
+        if (fromX >= toX || fromY >= toY)
+        {
+            return;
+        }
+        int[] columns = new int[toX - fromX];
+        for (int deltaX = fromX; deltaX < toX; deltaX++)
+        {
+            columns[deltaX - fromX] = Math.min(Math.max((int)Math.round((double)deltaX * pxWidth), 0), sourceWidth - 1);
+        }
+        BitmapSnapshot snapshot = this.source.getSnapshot();
+        int first = columns[0];
+        int[] row = new int[columns[columns.length - 1] - first + 1];
+        for (int deltaY = fromY; deltaY < toY; deltaY++)
+        {
+            int realY = Math.min(Math.max((int)Math.round((double)deltaY * pxHeight), 0), sourceHeight - 1);
+            snapshot.readRegion(first, realY, row.length, 1, row, 0, row.length);
+            for (int deltaX = fromX; deltaX < toX; deltaX++)
             {
-                int tmp = startX;
-                startX = endX;
-                endX = tmp;
-                tmp = startY;
-                startY = endY;
-                endY = tmp;
+                this.thumbnail[deltaY * width + deltaX] = row[columns[deltaX - fromX] - first];
             }
-            for (int y = startY; y < endY; y++)
+        }
+    }
+    
+    /**
+     * Fills rectangular area of canvas (area is clipped to canvas)
+     * @param x X coordinate of top left pixel of area
+     * @param y Y coordinate of top left pixel of area
+     * @param width Width of area
+     * @param height Height of area
+     * @param argb Integer containing red, green, blue and alpha values of colour of area
+     */
+    private void fillRectangle(int x, int y, int width, int height, int argb)
+    {
+        int canvasWidth = this.bitmap.getWidth();
+        int fromX = Math.max(x, 0);
+        int toX = Math.min(x + width, canvasWidth);
+        int fromY = Math.max(y, 0);
+        int toY = Math.min(y + height, this.bitmap.getHeight());
+        if (fromX < toX)
+        {
+            for (int row = fromY; row < toY; row++)
             {
-                transaction.setPixel(this.interpolateInt(startX, endX, y - startY, dY), y, color);
+                Arrays.fill(this.canvas, row * canvasWidth + fromX, row * canvasWidth + toX, argb);
             }
         }
     }
     
     /**
-     * Draws rectangle
-     * @param x X coordinate of starting point of rectangle
-     * @param y Y coordinate of starting point of rectangle
+     * Draws outline of rectangle into canvas
+     * @param x X coordinate of top left pixel of rectangle
+     * @param y Y coordinate of top left pixel of rectangle
      * @param width Width of rectangle
      * @param height Height of rectangle
-     * @param color Color of rectangle
-     * @param transaction Transaction in which rectangle will be drawn
+     * @param thickness Thickness of outline
+     * @param argb Integer containing red, green, blue and alpha values of colour of outline
      */
-    private void drawRectangle(int x, int y, int width, int height, Pixel color, Bitmap.BitmapTransaction transaction)
+    private void drawOutline(int x, int y, int width, int height, int thickness, int argb)
     {
-        Function<Integer, Function<Integer, Function<Integer, Function<Integer, Function<Pixel, Consumer<Bitmap.BitmapTransaction>>>>>> rectangleDrawer = 
-        _x -> _y -> _width -> _height -> _color -> _transaction ->
-        {
-            this.drawLine(_x, _y, _x + _width, _y, _transaction, _color);
-            this.drawLine(_x + _width, _y, _x + _width, _y + _height, _transaction, _color);
-            this.drawLine(_x + _width, _y + _height, _x, _y + _height, _transaction, _color);
-            this.drawLine(_x, _y + _height, _x, _y, _transaction, _color);
-        };
-        
-        // Draw rectangle
-        rectangleDrawer.apply(x).apply(y).apply(width).apply(height).apply(color).accept(transaction);
-        rectangleDrawer.apply(x + 1).apply(y + 1).apply(width - 2).apply(height - 2).apply(color).accept(transaction);
-        rectangleDrawer.apply(x - 1).apply(y - 1).apply(width + 2).apply(height + 2).apply(color).accept(transaction);
-        
-        // Draw border
-        rectangleDrawer.apply(x + 2).apply(y + 2).apply(width - 4).apply(height - 4).apply(Globals.HISTOGRAM_CLEAR).accept(transaction);
-        rectangleDrawer.apply(x - 2).apply(y - 2).apply(width + 4).apply(height + 4).apply(Globals.HISTOGRAM_CLEAR).accept(transaction);
+        this.fillRectangle(x, y, width, thickness, argb);
+        this.fillRectangle(x, y + height - thickness, width, thickness, argb);
+        this.fillRectangle(x, y, thickness, height, argb);
+        this.fillRectangle(x + width - thickness, y, thickness, height, argb);
     }
     
     /**
-     * Clears all data in diagram bitmap
-     * @param transaction Transaction in which data will be cleared
+     * Draws rectangle showing visible part of image over thumbnail
+     * @param x X coordinate of starting point of rectangle
+     * @param y Y coordinate of starting point of rectangle
+     * @param width Width of rectangle
+     * @param height Height of rectangle
+     * @param argb Integer containing red, green, blue and alpha values of colour of rectangle
      */
-    private void clearBitmap(Bitmap.BitmapTransaction transaction)
+    private void drawRectangle(int x, int y, int width, int height, int argb)
     {
-        for (int y = 0; y < this.bitmap.getHeight(); y++)
-        {
-            for (int x = 0; x < this.bitmap.getWidth(); x++)
-            {
-                transaction.setPixel(x, y, Globals.HISTOGRAM_CLEAR);
-            }
-        }
+        this.drawOutline(x - 2, y - 2, width + 5, height + 5, 1, this.clear);
+        this.drawOutline(x + 2, y + 2, width - 3, height - 3, 1, this.clear);
+        this.drawOutline(x - 1, y - 1, width + 3, height + 3, 3, argb);
     }
     
     /**
-     * Draws resized version of image
-     * @param x X coordinate of top left pixel of image
-     * @param y Y coordinate of top left pixel of image
-     * @param width Required width of image
-     * @param height Required height of image
-     * @param transaction Transaction in which image will be drawn
+     * Draws cached thumbnail of image into canvas
+     * @param x X coordinate of top left pixel of thumbnail
+     * @param y Y coordinate of top left pixel of thumbnail
      */
-    private void drawImage(int x, int y, int width, int height, Bitmap.BitmapTransaction transaction)
+    private void drawThumbnail(int x, int y)
     {
-        double pxWidth = (double)this.source.getWidth() / (double)width;
-        double pxHeight = (double)this.source.getHeight() / (double)height;
-        for (int deltaY = 0; deltaY < height; deltaY++)
+        int canvasWidth = this.bitmap.getWidth();
+        int fromX = Math.max(x, 0);
+        int toX = Math.min(x + this.thumbnailWidth, canvasWidth);
+        int fromY = Math.max(y, 0);
+        int toY = Math.min(y + this.thumbnailHeight, this.bitmap.getHeight());
+        if (fromX < toX)
         {
-            for(int deltaX = 0; deltaX < width; deltaX++)
+            for (int row = fromY; row < toY; row++)
             {
-                int realX = (int)Math.round((double)deltaX * pxWidth);
-                int realY = (int)Math.round((double)deltaY * pxHeight);
-                if (realX < 0) realX = 0; if (realX >= this.source.getWidth()) realX = this.source.getWidth() - 1;
-                if (realY < 0) realY = 0; if (realY >= this.source.getHeight()) realY = this.source.getHeight() - 1;
-                transaction.setPixel(x + deltaX, y + deltaY, this.source.getPixel(realX, realY));
+                System.arraycopy(
+                        this.thumbnail, (row - y) * this.thumbnailWidth + (fromX - x),
+                        this.canvas, row * canvasWidth + fromX,
+                        toX - fromX
+                );
             }
         }
-        
     }
     
     /**
@@ -329,145 +392,162 @@ public class ZoomDiagram implements Threadable
      */
     public void refresh()
     {
-        this.refresh = true;
+        this.request();
+    }
+    
+    /**
+     * Requests drawing of diagram (only if diagram is not suspended)
+     */
+    private void request()
+    {
+        if (this.suspended == false)
+        {
+            this.task.request();
+        }
+    }
+
+    @Override
+    public void suspend()
+    {
+        this.suspended = true;
+    }
+
+    @Override
+    public void resume()
+    {
+        if (this.suspended == true)
+        {
+            this.suspended = false;
+            this.task.request();
+        }
     }
     
     @Override
     public void start()
     {
-        this.running = true;
-        this.thread.start();
+        this.request();
     }
 
     @Override
     public void stop()
     {
-        this.running = false;
+        this.task.cancel();
+        if (this.bitmap instanceof ConcurrentBitmap)
+        {
+            ThreadManager.stopOne((ConcurrentBitmap)this.bitmap);
+        }
     }
 
     @Override
     public void run()
     {
-        while (this.running == true)
+        int diagramViewWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
+        int diagramViewHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);
+        Arrays.fill(this.canvas, this.clear);
+        double diagramAspectRatio = (double)this.bitmap.getWidth() / (double)this.bitmap.getHeight();
+        double viewAspectRatio = (double)this.viewWidth / (double)this.viewHeight;                
+        double viewHeightAspectRatio = (double)this.viewHeight / (double)this.viewWidth;
+        if (viewAspectRatio <= diagramAspectRatio)
         {
-            if (this.refresh == true)
-            {
-                this.refresh = false;
-                ConcurrentBitmap.ConcurrentBitmapTransaction transaction = new ConcurrentBitmap.ConcurrentBitmapTransaction();
-                int diagramViewWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
-                int diagramViewHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);
-                this.clearBitmap(transaction);     
-                double diagramAspectRatio = (double)this.bitmap.getWidth() / (double)this.bitmap.getHeight();
-                double viewAspectRatio = (double)this.viewWidth / (double)this.viewHeight;                
-                double viewHeightAspectRatio = (double)this.viewHeight / (double)this.viewWidth;
-                if (viewAspectRatio <= diagramAspectRatio)
-                {
-                    diagramViewHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);                
-                    diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
-                }
-                else
-                {
-                    diagramViewWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
-                    diagramViewHeight = (int)Math.round((double)diagramViewWidth * viewHeightAspectRatio);
-                }
-                
-                
-                
-                
-                int diagramImageHeight = (int)Math.round(((double)this.imageHeight / (double)this.viewHeight) * diagramViewHeight);
-                int diagramImageWidth = (int)Math.round(((double)this.imageWidth / (double)this.viewWidth) * diagramViewWidth);
-                
-                double imageAspectRatio = (double)this.imageWidth / (double)this.imageHeight;
-                double imageHeightAspectRatio = (double)this.imageHeight / (double)this.imageWidth;
-                if (diagramImageHeight > diagramViewHeight || diagramImageWidth > diagramViewWidth)
-                {                    
-                    if(imageAspectRatio <= diagramAspectRatio)
-                    {
-                        diagramImageHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);
-                        diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
-                        diagramViewHeight = (int)Math.round(((double)this.viewHeight / (double)this.imageHeight) * (double)diagramImageHeight);
-                        diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
-                    }
-                    else
-                    {                        
-                        diagramImageWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
-                        diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
-                        diagramViewWidth = (int)Math.round(((double)this.viewWidth / (double)this.imageWidth) * (double)diagramImageWidth);
-                        diagramViewHeight = (int)Math.round((double)diagramViewWidth * viewHeightAspectRatio);
-                    }
-                }
-                
-                if (diagramImageHeight > (this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING)))
-                {
-                    double ratio = ((double)this.bitmap.getHeight() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramImageHeight;
-                    diagramImageHeight = (int)Math.round((double)diagramImageHeight * ratio);
-                    diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
-                    diagramViewHeight = (int)Math.round((double)diagramViewHeight * ratio);
-                    diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
-                }
-                if (diagramViewHeight > (this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING)))
-                {
-                    double ratio = ((double)this.bitmap.getHeight() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramViewHeight;
-                    diagramImageHeight = (int)Math.round((double)diagramImageHeight * ratio);
-                    diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
-                    diagramViewHeight = (int)Math.round((double)diagramViewHeight * ratio);
-                    diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
-                }
-                if (diagramImageWidth > (this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING)))
-                {
-                    double ratio = ((double)this.bitmap.getWidth() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramImageWidth;
-                    diagramImageWidth = (int)Math.round((double)diagramImageWidth * ratio);
-                    diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
-                    diagramViewWidth = (int)Math.round((double)diagramViewWidth * ratio);
-                    diagramViewHeight = (int)Math.round((double)diagramViewHeight * viewHeightAspectRatio);
-                }
-                if (diagramViewWidth > (this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING)))
-                {
-                    double ratio = ((double)this.bitmap.getWidth() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramViewWidth;
-                    diagramImageWidth = (int)Math.round((double)diagramImageWidth * ratio);
-                    diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
-                    diagramViewWidth = (int)Math.round((double)diagramViewWidth * ratio);
-                    diagramViewHeight = (int)Math.round((double)diagramViewHeight * viewHeightAspectRatio);
-                }
-                
-                int diagramViewTop = (this.bitmap.getHeight() / 2) - (diagramViewHeight / 2);
-                int diagramViewLeft = (this.bitmap.getWidth() / 2) - (diagramViewWidth / 2);
-                
-                int diagramImageTop = (this.bitmap.getHeight() / 2) - (diagramImageHeight / 2);
-                int diagramImageLeft = (this.bitmap.getWidth() / 2) - (diagramImageWidth / 2);
-                
-                double minLeft = diagramImageLeft;
-                double maxLeft = diagramImageLeft + diagramImageWidth - diagramViewWidth;
-                double deltaLeft = maxLeft - minLeft;
-                
-                double minTop = diagramImageTop;
-                double maxTop = diagramImageTop + diagramImageHeight - diagramViewHeight;
-                double deltaTop = maxTop - minTop;
-                
-                if (this.imageHeight > this.viewHeight)
-                {
-                    diagramViewTop = (int)Math.round((double)diagramImageTop + (this.scrollTop * deltaTop));
-                }
-                if (this.imageWidth > this.viewWidth)
-                {
-                    diagramViewLeft = (int)Math.round((double)diagramImageLeft + (this.scrollLeft * deltaLeft));
-                }
-                
-                
-                this.drawImage(diagramImageLeft, diagramImageTop, diagramImageWidth, diagramImageHeight, transaction);
-                this.drawRectangle(diagramViewLeft, diagramViewTop, diagramViewWidth, diagramViewHeight, new Pixel(Color.WHITE), transaction);
-                
-                this.bitmap.processTransaction(transaction);
-            }
-            try
+            diagramViewHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);                
+            diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
+        }
+        else
+        {
+            diagramViewWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
+            diagramViewHeight = (int)Math.round((double)diagramViewWidth * viewHeightAspectRatio);
+        }
+        
+        
+        
+        
+        int diagramImageHeight = (int)Math.round(((double)this.imageHeight / (double)this.viewHeight) * diagramViewHeight);
+        int diagramImageWidth = (int)Math.round(((double)this.imageWidth / (double)this.viewWidth) * diagramViewWidth);
+        
+        double imageAspectRatio = (double)this.imageWidth / (double)this.imageHeight;
+        double imageHeightAspectRatio = (double)this.imageHeight / (double)this.imageWidth;
+        if (diagramImageHeight > diagramViewHeight || diagramImageWidth > diagramViewWidth)
+        {                    
+            if(imageAspectRatio <= diagramAspectRatio)
             {
-                Thread.sleep(ZoomDiagram.SLEEP);
+                diagramImageHeight = this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING);
+                diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
+                diagramViewHeight = (int)Math.round(((double)this.viewHeight / (double)this.imageHeight) * (double)diagramImageHeight);
+                diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
             }
-            catch (InterruptedException ex)
-            {
-                Logger.getLogger(ZoomDiagram.class.getName()).log(Level.SEVERE, null, ex);
+            else
+            {                        
+                diagramImageWidth = this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING);
+                diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
+                diagramViewWidth = (int)Math.round(((double)this.viewWidth / (double)this.imageWidth) * (double)diagramImageWidth);
+                diagramViewHeight = (int)Math.round((double)diagramViewWidth * viewHeightAspectRatio);
             }
         }
-        this.thread.stop();
+        
+        if (diagramImageHeight > (this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING)))
+        {
+            double ratio = ((double)this.bitmap.getHeight() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramImageHeight;
+            diagramImageHeight = (int)Math.round((double)diagramImageHeight * ratio);
+            diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
+            diagramViewHeight = (int)Math.round((double)diagramViewHeight * ratio);
+            diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
+        }
+        if (diagramViewHeight > (this.bitmap.getHeight() - (2 * ZoomDiagram.PADDING)))
+        {
+            double ratio = ((double)this.bitmap.getHeight() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramViewHeight;
+            diagramImageHeight = (int)Math.round((double)diagramImageHeight * ratio);
+            diagramImageWidth = (int)Math.round((double)diagramImageHeight * imageAspectRatio);
+            diagramViewHeight = (int)Math.round((double)diagramViewHeight * ratio);
+            diagramViewWidth = (int)Math.round((double)diagramViewHeight * viewAspectRatio);
+        }
+        if (diagramImageWidth > (this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING)))
+        {
+            double ratio = ((double)this.bitmap.getWidth() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramImageWidth;
+            diagramImageWidth = (int)Math.round((double)diagramImageWidth * ratio);
+            diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
+            diagramViewWidth = (int)Math.round((double)diagramViewWidth * ratio);
+            diagramViewHeight = (int)Math.round((double)diagramViewHeight * viewHeightAspectRatio);
+        }
+        if (diagramViewWidth > (this.bitmap.getWidth() - (2 * ZoomDiagram.PADDING)))
+        {
+            double ratio = ((double)this.bitmap.getWidth() - (double)(2 * ZoomDiagram.PADDING)) / (double)diagramViewWidth;
+            diagramImageWidth = (int)Math.round((double)diagramImageWidth * ratio);
+            diagramImageHeight = (int)Math.round((double)diagramImageWidth * imageHeightAspectRatio);
+            diagramViewWidth = (int)Math.round((double)diagramViewWidth * ratio);
+            diagramViewHeight = (int)Math.round((double)diagramViewHeight * viewHeightAspectRatio);
+        }
+        
+        int diagramViewTop = (this.bitmap.getHeight() / 2) - (diagramViewHeight / 2);
+        int diagramViewLeft = (this.bitmap.getWidth() / 2) - (diagramViewWidth / 2);
+        
+        int diagramImageTop = (this.bitmap.getHeight() / 2) - (diagramImageHeight / 2);
+        int diagramImageLeft = (this.bitmap.getWidth() / 2) - (diagramImageWidth / 2);
+        
+        double minLeft = diagramImageLeft;
+        double maxLeft = diagramImageLeft + diagramImageWidth - diagramViewWidth;
+        double deltaLeft = maxLeft - minLeft;
+        
+        double minTop = diagramImageTop;
+        double maxTop = diagramImageTop + diagramImageHeight - diagramViewHeight;
+        double deltaTop = maxTop - minTop;
+        
+        if (this.imageHeight > this.viewHeight)
+        {
+            diagramViewTop = (int)Math.round((double)diagramImageTop + (this.scrollTop * deltaTop));
+        }
+        if (this.imageWidth > this.viewWidth)
+        {
+            diagramViewLeft = (int)Math.round((double)diagramImageLeft + (this.scrollLeft * deltaLeft));
+        }
+        
+        
+        if (diagramImageWidth > 0 && diagramImageHeight > 0)
+        {
+            this.updateThumbnail(diagramImageWidth, diagramImageHeight);
+            this.drawThumbnail(diagramImageLeft, diagramImageTop);
+        }
+        this.drawRectangle(diagramViewLeft, diagramViewTop, diagramViewWidth, diagramViewHeight, this.highlight);
+        
+        this.bitmap.writeRegionNow(0, 0, this.bitmap.getWidth(), this.bitmap.getHeight(), this.canvas, 0, this.bitmap.getWidth());
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2023 Jiri Skoda <jiri.skoda@uhk.cz>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package cz.uhk.fim.skodaji1.kpgr2.jsgmp.model;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class implementing SIMD kernels by JDK Vector API
+ * (each vector holds ARGB values of several pixels which are unpacked into colour channels, changed and packed back;
+ * multiplications are computed in fixed point arithmetic and last incomplete vector is processed in padded buffer,
+ * so only integer operations without masks are needed)
+ * @author Jiri Skoda <jiri.skoda@uhk.cz>
+ */
+public class VectorPixelKernels implements PixelKernels
+{
+    /**
+     * Shape of vectors
+     * (256 bits, wider vectors are not reliably compiled by JDK 17)
+     */
+    private static final VectorSpecies<Integer> INT = IntVector.SPECIES_256;
+    
+    /**
+     * Number of fractional bits of fixed point numbers
+     */
+    private static final int FRACTION = 20;
+    
+    /**
+     * One half in fixed point arithmetic (added before rounding)
+     */
+    private static final int HALF = 1 << (VectorPixelKernels.FRACTION - 1);
+    
+    /**
+     * Maximal absolute value of weight of colour channel which can be expressed in fixed point arithmetic
+     */
+    private static final double MAX_WEIGHT = 2f;
+    
+    /**
+     * Weight of red channel in target value of grayscale (in fixed point arithmetic)
+     */
+    private static final int GRAY_RED = VectorPixelKernels.fixed(0.299f);
+    
+    /**
+     * Weight of green channel in target value of grayscale (in fixed point arithmetic)
+     */
+    private static final int GRAY_GREEN = VectorPixelKernels.fixed(0.7152);
+    
+    /**
+     * Weight of blue channel in target value of grayscale (in fixed point arithmetic)
+     */
+    private static final int GRAY_BLUE = VectorPixelKernels.fixed(0.0722);
+    
+    /**
+     * Converts number into fixed point arithmetic
+     * @param value Number which will be converted
+     * @return Number in fixed point arithmetic
+     */
+    private static int fixed(double value)
+    {
+        return (int)Math.round(value * (double)(1 << VectorPixelKernels.FRACTION));
+    }
+    
+    /**
+     * Gets one colour channel from ARGB values
+     * @param argb Vector with ARGB values of pixels
+     * @param shift Position of channel in ARGB value (in bits)
+     * @return Vector with values of channel
+     */
+    private static IntVector channel(IntVector argb, int shift)
+    {
+        return argb.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+    }
+    
+    /**
+     * Rounds fixed point numbers to nearest integers (halves are rounded up like by Math.round)
+     * @param values Vector of fixed point numbers
+     * @return Vector of rounded numbers
+     */
+    private static IntVector round(IntVector values)
+    {
+        return values.add(VectorPixelKernels.HALF).lanewise(VectorOperators.ASHR, VectorPixelKernels.FRACTION);
+    }
+    
+    /**
+     * Reads values from lookup table
+     * @param table Lookup table
+     * @param values Vector with indexes into table
+     * @param index Array used to pass indexes into table (at least as long as number of lanes)
+     * @return Vector with values from lookup table
+     */
+    private static IntVector gather(int[] table, IntVector values, int[] index)
+    {
+        values.intoArray(index, 0);
+        return IntVector.fromArray(VectorPixelKernels.INT, table, 0, index, 0);
+    }
+    
+    /**
+     * Clamps values of colour channel into interval [0 255]
+     * @param values Vector with values of colour channel
+     * @return Vector with clamped values
+     */
+    private static IntVector clamp(IntVector values)
+    {
+        return values.max(0).min(255);
+    }
+    
+    /**
+     * Adds changes of colour channels and changes made by grayscale to ARGB values of pixels in one vector
+     * @param argb Vector with original ARGB values of pixels
+     * @param red Changes of red channel (indexed by original value)
+     * @param green Changes of green channel (indexed by original value)
+     * @param blue Changes of blue channel (indexed by original value)
+     * @param step Part of difference between value of channel and target value of grayscale which is added (in fixed point arithmetic, 0 if grayscale is not applied)
+     * @param index Array used to pass indexes into lookup tables (at least as long as number of lanes)
+     * @return Vector with ARGB values of pixels after all changes has been applied
+     */
+    private static IntVector apply(IntVector argb, int[] red, int[] green, int[] blue, int step, int[] index)
+    {
+        IntVector r = VectorPixelKernels.channel(argb, 16);
+        IntVector g = VectorPixelKernels.channel(argb, 8);
+        IntVector b = VectorPixelKernels.channel(argb, 0);
+        IntVector nr = r.add(VectorPixelKernels.gather(red, r, index));
+        IntVector ng = g.add(VectorPixelKernels.gather(green, g, index));
+        IntVector nb = b.add(VectorPixelKernels.gather(blue, b, index));
+        if (step != 0)
+        {
+            IntVector target = VectorPixelKernels.clamp(VectorPixelKernels.round(
+                    r.mul(VectorPixelKernels.GRAY_RED).add(g.mul(VectorPixelKernels.GRAY_GREEN)).add(b.mul(VectorPixelKernels.GRAY_BLUE))
+            ));
+            nr = nr.add(VectorPixelKernels.round(target.sub(r).mul(step)));
+            ng = ng.add(VectorPixelKernels.round(target.sub(g).mul(step)));
+            nb = nb.add(VectorPixelKernels.round(target.sub(b).mul(step)));
+        }
+        return argb.and(0xFF000000)
+                .or(VectorPixelKernels.clamp(nr).lanewise(VectorOperators.LSHL, 16))
+                .or(VectorPixelKernels.clamp(ng).lanewise(VectorOperators.LSHL, 8))
+                .or(VectorPixelKernels.clamp(nb));
+    }
+    
+    /**
+     * Adds changes of colour channels and changes made by grayscale to sequence of pixels
+     * @param src Array with original ARGB values of pixels
+     * @param srcOffset Index of first pixel in source array
+     * @param dst Array into which results will be stored
+     * @param dstOffset Index in destination array where result for first pixel will be stored
+     * @param length Number of processed pixels
+     * @param red Changes of red channel (indexed by original value)
+     * @param green Changes of green channel (indexed by original value)
+     * @param blue Changes of blue channel (indexed by original value)
+     * @param step Part of difference between value of channel and target value of grayscale which is added (in fixed point arithmetic, 0 if grayscale is not applied)
+     */
+    private static void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int[] red, int[] green, int[] blue, int step)
+    {
+        int lanes = VectorPixelKernels.INT.length();
+        int[] index = new int[lanes];
+        int bound = VectorPixelKernels.INT.loopBound(length);
+        for (int i = 0; i < bound; i += lanes)
+        {
+            IntVector argb = IntVector.fromArray(VectorPixelKernels.INT, src, srcOffset + i);
+            VectorPixelKernels.apply(argb, red, green, blue, step, index).intoArray(dst, dstOffset + i);
+        }
+        if (bound < length)
+        {
+            int[] rest = new int[lanes];
+            System.arraycopy(src, srcOffset + bound, rest, 0, length - bound);
+            IntVector argb = IntVector.fromArray(VectorPixelKernels.INT, rest, 0);
+            VectorPixelKernels.apply(argb, red, green, blue, step, index).intoArray(rest, 0);
+            System.arraycopy(rest, 0, dst, dstOffset + bound, length - bound);
+        }
+    }
+
+    @Override
+    public void applyDeltas(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int[] red, int[] green, int[] blue, double grayscale)
+    {
+        VectorPixelKernels.apply(src, srcOffset, dst, dstOffset, length, red, green, blue, VectorPixelKernels.fixed(grayscale / 100f));
+    }
+
+    @Override
+    public void bin(int[] pixels, int offset, int length, Binning binning, int[] bins)
+    {
+        if (Math.abs(binning.getRed()) > VectorPixelKernels.MAX_WEIGHT
+                || Math.abs(binning.getGreen()) > VectorPixelKernels.MAX_WEIGHT
+                || Math.abs(binning.getBlue()) > VectorPixelKernels.MAX_WEIGHT)
+        {
+            for (int i = offset; i < offset + length; i++)
+            {
+                int value = Math.min(binning.applyAsInt(pixels[i]), bins.length - 1);
+                if (value >= 0)
+                {
+                    bins[value]++;
+                }
+            }
+            return;
+        }
+        int lanes = VectorPixelKernels.INT.length();
+        int wr = VectorPixelKernels.fixed(binning.getRed());
+        int wg = VectorPixelKernels.fixed(binning.getGreen());
+        int wb = VectorPixelKernels.fixed(binning.getBlue());
+        int[] values = new int[VectorPixelKernels.INT.loopBound(length + lanes - 1)];
+        int[] rest = new int[lanes];
+        for (int i = 0; i < length; i += lanes)
+        {
+            IntVector argb;
+            if (i + lanes <= length)
+            {
+                argb = IntVector.fromArray(VectorPixelKernels.INT, pixels, offset + i);
+            }
+            else
+            {
+                System.arraycopy(pixels, offset + i, rest, 0, length - i);
+                argb = IntVector.fromArray(VectorPixelKernels.INT, rest, 0);
+            }
+            IntVector sum = VectorPixelKernels.channel(argb, 16).mul(wr)
+                    .add(VectorPixelKernels.channel(argb, 8).mul(wg))
+                    .add(VectorPixelKernels.channel(argb, 0).mul(wb));
+            VectorPixelKernels.round(sum).add(binning.getOffset()).min(bins.length - 1).intoArray(values, i);
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (values[i] >= 0)
+            {
+                bins[values[i]]++;
+            }
+        }
+    }
+}